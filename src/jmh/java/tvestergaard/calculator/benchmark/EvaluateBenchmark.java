@@ -0,0 +1,69 @@
+package tvestergaard.calculator.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import tvestergaard.calculator.antlr.CalculatorParser.ExpressionContext;
+import tvestergaard.calculator.logic.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the evaluation of deep arithmetic expressions by {@link ExpressionVisitor}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark
+{
+
+    /**
+     * The shape of the evaluated expression.
+     */
+    @Param({"sum", "nested"})
+    public String shape;
+
+    /**
+     * The number of operators in the evaluated expression.
+     */
+    @Param({"100"})
+    public int size;
+
+    /**
+     * The visitor evaluating the expression.
+     */
+    private ExpressionVisitor visitor;
+
+    /**
+     * The parsed expression.
+     */
+    private ExpressionContext expression;
+
+    /**
+     * The lowered expression.
+     */
+    private ExpressionNode node;
+
+    @Setup public void setup()
+    {
+        String source = shape.equals("sum") ? Programs.sum(size + 1) : Programs.nested(size);
+
+        visitor = new ExpressionVisitor(
+                new CalculatorMemory(StandardLibrary.LIBRARY),
+                new FunctionCollection(StandardLibrary.LIBRARY)
+        );
+        expression = ProgramParser.get().parse(source + '\n', new NullCalculatorOutput()).statement(0).expression();
+        node = visitor.getLowerer().lower(expression);
+    }
+
+    @Benchmark public ExpressionResult visit()
+    {
+        return visitor.visitExpression(expression);
+    }
+
+    @Benchmark public double evaluate()
+    {
+        return visitor.getEvaluator().evaluate(node);
+    }
+}
@@ -0,0 +1,50 @@
+package tvestergaard.calculator.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import tvestergaard.calculator.logic.Calculator;
+import tvestergaard.calculator.logic.ProgramCache;
+import tvestergaard.calculator.logic.ProgramException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Calculator#execute(String)} on a representative program, with and without the program cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecuteBenchmark
+{
+
+    /**
+     * Whether or not the parsed program is cached.
+     */
+    @Param({"true", "false"})
+    public boolean cached;
+
+    /**
+     * The calculator executing the program.
+     */
+    private Calculator calculator;
+
+    @Setup public void setup() throws ProgramException
+    {
+        NullCalculatorOutput output = new NullCalculatorOutput();
+        calculator = new Calculator(output);
+        calculator.execute(Programs.DECLARATIONS);
+        calculator.setProgramCache(cached ? new ProgramCache(1024, 1 << 20) : null);
+        calculator.execute(Programs.REPRESENTATIVE);
+
+        if (output.getErrors() > 0) {
+            throw new IllegalStateException("The benchmarked program does not execute without errors.");
+        }
+    }
+
+    @Benchmark public void execute() throws ProgramException
+    {
+        calculator.execute(Programs.REPRESENTATIVE);
+    }
+}
@@ -0,0 +1,112 @@
+package tvestergaard.calculator.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import tvestergaard.calculator.logic.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calls to custom functions, function lookups and variable reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionBenchmark
+{
+
+    /**
+     * Whether or not the custom functions are compiled.
+     */
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    /**
+     * The memory containing the read variables.
+     */
+    private CalculatorMemory memory;
+
+    /**
+     * The functions containing the called custom function.
+     */
+    private FunctionCollection functions;
+
+    /**
+     * The evaluator calling the custom function.
+     */
+    private DoubleEvaluator evaluator;
+
+    /**
+     * The called custom function.
+     */
+    private Function function;
+
+    /**
+     * The identifier of the looked up function.
+     */
+    private FunctionIdentifier identifier;
+
+    /**
+     * The arguments passed to the custom function.
+     */
+    private double[] arguments = {3, 4};
+
+    @Setup public void setup()
+    {
+        memory = new CalculatorMemory(StandardLibrary.LIBRARY);
+        functions = new FunctionCollection(StandardLibrary.LIBRARY);
+        evaluator = new DoubleEvaluator(memory, functions);
+        if (compiled) {
+            evaluator.setCompiler(new FunctionCompiler(memory, functions));
+        }
+
+        ExpressionLowerer lowerer = new ExpressionLowerer();
+        declare(lowerer, "square", "x * x", "x");
+        declare(lowerer, "hypot", "sqrt(square(x) + square(y))", "x", "y");
+
+        memory.addVariable("rate", 3.5);
+        identifier = ConcreteFunctionIdentifier.of("hypot", 2);
+        function = functions.get(identifier);
+    }
+
+    /**
+     * Declares a custom function.
+     *
+     * @param lowerer    The lowerer used to lower the body of the function.
+     * @param name       The name of the function.
+     * @param body       The body of the function.
+     * @param parameters The parameters of the function.
+     */
+    private void declare(ExpressionLowerer lowerer, String name, String body, String... parameters)
+    {
+        ExpressionNode node = lowerer.lower(
+                ProgramParser.get().parse(body + '\n', new NullCalculatorOutput()).statement(0).expression()
+        );
+
+        functions.add(new ConcreteCustomFunction(
+                name,
+                Arrays.asList(parameters),
+                String.format("%s(%s)", name, String.join(",", parameters)),
+                node,
+                true
+        ));
+    }
+
+    @Benchmark public double call()
+    {
+        return function.call(evaluator, arguments, 0);
+    }
+
+    @Benchmark public Function lookup()
+    {
+        return functions.get(identifier);
+    }
+
+    @Benchmark public Double readVariable()
+    {
+        return memory.getValue("rate");
+    }
+}
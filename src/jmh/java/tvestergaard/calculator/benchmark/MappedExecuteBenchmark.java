@@ -0,0 +1,85 @@
+package tvestergaard.calculator.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import tvestergaard.calculator.logic.Calculator;
+import tvestergaard.calculator.logic.ProgramException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of executing a large program file using {@link Calculator#execute(Path)}, that lexes the
+ * statements directly from the memory mapped file, against reading the file into a string and executing the string
+ * using {@link Calculator#execute(String)}. The program cache is disabled, so both paths parse every statement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedExecuteBenchmark
+{
+
+    /**
+     * The number of times {@link Programs#REPRESENTATIVE} is repeated in the program file.
+     */
+    @Param({"25000"})
+    public int repetitions;
+
+    /**
+     * The output of the calculator.
+     */
+    private NullCalculatorOutput output;
+
+    /**
+     * The calculator executing the program.
+     */
+    private Calculator calculator;
+
+    /**
+     * The program file.
+     */
+    private Path file;
+
+    @Setup(Level.Trial) public void setup() throws IOException, ProgramException
+    {
+        file = Files.createTempFile("calculator", ".calc");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int x = 0; x < repetitions; x++) {
+                writer.write(Programs.REPRESENTATIVE);
+                writer.write("total + " + x + "\n");
+            }
+        }
+
+        output = new NullCalculatorOutput();
+        calculator = new Calculator(output);
+        calculator.execute(Programs.DECLARATIONS);
+        calculator.setProgramCache(null);
+        calculator.execute(file);
+        calculator.execute(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+        if (output.getErrors() > 0) {
+            throw new IllegalStateException("The benchmarked program does not execute without errors.");
+        }
+    }
+
+    @TearDown(Level.Trial) public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark public void executeMapped() throws IOException, ProgramException
+    {
+        calculator.execute(file);
+    }
+
+    @Benchmark public void executeString() throws IOException, ProgramException
+    {
+        calculator.execute(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,76 @@
+package tvestergaard.calculator.benchmark;
+
+import tvestergaard.calculator.logic.CalculatorOutput;
+import tvestergaard.calculator.logic.Function;
+import tvestergaard.calculator.logic.FunctionCache;
+import tvestergaard.calculator.logic.FunctionProfile;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Discards all output, so that the benchmarks only measure the calculator.
+ */
+public class NullCalculatorOutput implements CalculatorOutput
+{
+
+    /**
+     * The number of errors reported. Used to verify that the benchmarked programs execute without errors.
+     */
+    private int errors;
+
+    /**
+     * Returns the number of errors reported.
+     *
+     * @return The number of errors reported.
+     */
+    public int getErrors()
+    {
+        return errors;
+    }
+
+    @Override public void error(String error)
+    {
+        errors++;
+    }
+
+    @Override public void result(Double value)
+    {
+
+    }
+
+    @Override public void printFunctions(Collection<Function> functions)
+    {
+
+    }
+
+    @Override public void printVariables(Map<String, Double> variables)
+    {
+
+    }
+
+    @Override public void printConstants(Map<String, Double> constants)
+    {
+
+    }
+
+    @Override public void printValues(Double value)
+    {
+
+    }
+
+    @Override public void printExplanation(String expression, String explanation)
+    {
+
+    }
+
+    @Override public void printCache(String signature, FunctionCache cache)
+    {
+
+    }
+
+    @Override public void printProfile(String signature, FunctionProfile profile)
+    {
+
+    }
+}
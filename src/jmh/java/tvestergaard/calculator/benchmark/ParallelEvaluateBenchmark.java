@@ -0,0 +1,123 @@
+package tvestergaard.calculator.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tvestergaard.calculator.logic.BatchResult;
+import tvestergaard.calculator.logic.Calculator;
+import tvestergaard.calculator.logic.ProgramException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Calculator#evaluateParallel(String, Map, int, java.util.concurrent.Executor)} over a few million
+ * rows, using fork join pools of increasing size, so that the speedup over a single thread can be read from the
+ * results. Pools larger than the number of available processors measure the cost of oversubscription; run the
+ * benchmark using its main method to only measure the pool sizes up to the number of available processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelEvaluateBenchmark
+{
+
+    /**
+     * The evaluated expression.
+     */
+    private static final String EXPRESSION = "hypot(x, y) * sin(x) + y / rate";
+
+    /**
+     * The number of threads in the fork join pool evaluating the rows.
+     */
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    public int parallelism;
+
+    /**
+     * The number of evaluated rows.
+     */
+    @Param({"4194304"})
+    public int rows;
+
+    /**
+     * The calculator evaluating the rows.
+     */
+    private Calculator calculator;
+
+    /**
+     * The columns containing the values of the variables.
+     */
+    private Map<String, double[]> columns;
+
+    /**
+     * The pool evaluating the rows.
+     */
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial) public void setup() throws ProgramException
+    {
+        NullCalculatorOutput output = new NullCalculatorOutput();
+        calculator = new Calculator(output);
+        calculator.execute(Programs.DECLARATIONS);
+        if (output.getErrors() > 0) {
+            throw new IllegalStateException("The declarations do not execute without errors.");
+        }
+
+        Random   random = new Random(42);
+        double[] x      = new double[rows];
+        double[] y      = new double[rows];
+        for (int row = 0; row < rows; row++) {
+            x[row] = random.nextDouble() * 100;
+            y[row] = random.nextDouble() * 100;
+        }
+
+        columns = new HashMap<>();
+        columns.put("x", x);
+        columns.put("y", y);
+        pool = new ForkJoinPool(parallelism);
+
+        if (evaluate().getErrorCount() > 0) {
+            throw new IllegalStateException("The benchmarked expression does not evaluate without errors.");
+        }
+    }
+
+    @TearDown(Level.Trial) public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark public BatchResult evaluate()
+    {
+        return calculator.evaluateParallel(EXPRESSION, columns, rows, pool);
+    }
+
+    /**
+     * Runs the benchmark using the pool sizes 1, 2, 4 and so on, up to the number of available processors.
+     *
+     * @param args Unused.
+     * @throws RunnerException When the benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException
+    {
+        int          processors = Runtime.getRuntime().availableProcessors();
+        List<String> sizes      = new ArrayList<>();
+        for (int size = 1; size < processors; size *= 2)
+            sizes.add(Integer.toString(size));
+        sizes.add(Integer.toString(processors));
+
+        new Runner(new OptionsBuilder()
+                .include(ParallelEvaluateBenchmark.class.getSimpleName())
+                .param("parallelism", sizes.toArray(new String[sizes.size()]))
+                .build()
+        ).run();
+    }
+}
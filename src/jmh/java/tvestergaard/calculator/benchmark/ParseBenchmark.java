@@ -0,0 +1,117 @@
+package tvestergaard.calculator.benchmark;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.openjdk.jmh.annotations.*;
+import tvestergaard.calculator.antlr.CalculatorLexer;
+import tvestergaard.calculator.antlr.CalculatorParser;
+import tvestergaard.calculator.antlr.CalculatorParser.ProgramContext;
+import tvestergaard.calculator.logic.ProgramParser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lexing and parsing alone, without executing the parsed program. The two stage parser is compared against
+ * parsing using full LL prediction only, on a corpus of valid programs and on a corpus also containing syntax errors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark
+{
+
+    /**
+     * The corpus to parse. The invalid corpus contains the same valid statements, interleaved with statements
+     * containing syntax errors.
+     */
+    @Param({"valid", "invalid"})
+    public String corpus;
+
+    /**
+     * The program to lex and parse.
+     */
+    private String program;
+
+    /**
+     * The lexer reused between the invocations.
+     */
+    private CalculatorLexer lexer;
+
+    /**
+     * The token stream reused between the invocations of the LL only parser.
+     */
+    private CommonTokenStream tokens;
+
+    /**
+     * The parser using full LL prediction only, reporting syntax errors like the two stage parser.
+     */
+    private CalculatorParser parser;
+
+    /**
+     * The output the syntax errors are reported to.
+     */
+    private NullCalculatorOutput output;
+
+    @Setup public void setup()
+    {
+        StringBuilder builder = new StringBuilder(Programs.DECLARATIONS);
+        for (int x = 0; x < 20; x++) {
+            builder.append(Programs.REPRESENTATIVE).append(Programs.sum(50)).append('\n');
+            if (corpus.equals("invalid"))
+                builder.append(Programs.INVALID);
+        }
+
+        program = builder.toString();
+        lexer = new CalculatorLexer(CharStreams.fromString(""));
+        tokens = new CommonTokenStream(lexer);
+        parser = new CalculatorParser(tokens);
+        output = new NullCalculatorOutput();
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.removeErrorListeners();
+        parser.addErrorListener(new BaseErrorListener()
+        {
+            @Override public void syntaxError(
+                    Recognizer<?, ?> recognizer,
+                    Object offendingSymbol,
+                    int line,
+                    int charPositionInLine,
+                    String msg,
+                    RecognitionException e)
+            {
+                output.error(msg);
+            }
+        });
+
+        ProgramParser.get().parse(program, output);
+        int errors = ProgramParser.get().getNumberOfSyntaxErrors();
+        if (corpus.equals("valid") == errors > 0)
+            throw new IllegalStateException(String.format("%d syntax errors in the %s corpus.", errors, corpus));
+    }
+
+    @Benchmark public int lex()
+    {
+        lexer.setInputStream(CharStreams.fromString(program));
+
+        int count = 0;
+        while (lexer.nextToken().getType() != Token.EOF)
+            count++;
+
+        return count;
+    }
+
+    @Benchmark public ProgramContext parse()
+    {
+        return ProgramParser.get().parse(program, output);
+    }
+
+    @Benchmark public ProgramContext parseLL()
+    {
+        lexer.setInputStream(CharStreams.fromString(program));
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+        return parser.program();
+    }
+}
@@ -0,0 +1,88 @@
+package tvestergaard.calculator.benchmark;
+
+/**
+ * The programs used by the benchmarks.
+ */
+public final class Programs
+{
+
+    /**
+     * Declares the custom functions and variables used by the other programs.
+     */
+    public static final String DECLARATIONS = "" +
+            "func square(x) = x * x\n" +
+            "func hypot(x, y) = sqrt(square(x) + square(y))\n" +
+            "func area(r) = PI * square(r)\n" +
+            "func interest(p, r, n) = p * pow(r / 100 + 1, n)\n" +
+            "const G = 9.81\n" +
+            "rate = 3.5\n" +
+            "years = 10\n";
+
+    /**
+     * A representative program, mixing arithmetic, built in functions, custom functions and variables.
+     */
+    public static final String REPRESENTATIVE = "" +
+            "1 + 2 * 3 - 4 / 5\n" +
+            "hypot(3, 4)\n" +
+            "area(2.5) / 2\n" +
+            "interest(1000, rate, years)\n" +
+            "sin(PI / 4) * cos(PI / 4)\n" +
+            "total = area(1) + area(2) + area(3)\n" +
+            "total * G / max(rate, years)\n" +
+            "round(log(total, 10), 4)\n";
+
+    /**
+     * A program where every statement contains a syntax error, such as a missing operand, an unbalanced parenthesis
+     * or a negative literal directly following a variable.
+     */
+    public static final String INVALID = "" +
+            "1 + * 2\n" +
+            "hypot(3, 4\n" +
+            "area(2.5)) / 2\n" +
+            "func cube(x = x * x * x\n" +
+            "const = 5\n" +
+            "rate -2\n" +
+            "round(total, )\n";
+
+    /**
+     * Prevents instantiation.
+     */
+    private Programs()
+    {
+
+    }
+
+    /**
+     * Returns an expression adding the provided number of terms.
+     *
+     * @param terms The number of terms.
+     * @return The expression.
+     */
+    public static String sum(int terms)
+    {
+        StringBuilder builder = new StringBuilder("1");
+        for (int x = 2; x <= terms; x++)
+            builder.append(x % 2 == 0 ? " + " : " - ").append(x);
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns an expression nesting the provided number of parenthesized expressions.
+     *
+     * @param depth The depth of the expression.
+     * @return The expression.
+     */
+    public static String nested(int depth)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int x = 0; x < depth; x++)
+            builder.append("(").append(x + 1).append(x % 2 == 0 ? " * " : " / ");
+
+        builder.append("1");
+        for (int x = 0; x < depth; x++)
+            builder.append(")");
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,234 @@
+package tvestergaard.calculator.benchmark;
+
+import tvestergaard.calculator.logic.Calculator;
+import tvestergaard.calculator.view.CalculatorServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the throughput and latency of a {@link CalculatorServer}. Every connection declares the functions in
+ * {@link Programs#DECLARATIONS}, and then sends expressions in pipelined batches, waiting for the results of a batch
+ * before sending the next. The latency of a request is the time from sending its batch until its result and status
+ * line are received.
+ *
+ * Usage: ServerLoadTest [host:port] [connections] [requests per connection] [pipeline depth]. A server is started on
+ * a free port on localhost when no address, or '-', is provided.
+ */
+public final class ServerLoadTest
+{
+
+    /**
+     * The expressions sent to the server. Every expression outputs a single line.
+     */
+    private static final String[] EXPRESSIONS = {
+            "1 + 2 * 3 - 4 / 5",
+            "hypot(3, 4)",
+            "area(2.5) / 2",
+            "interest(1000, rate, years)",
+            "sin(PI / 4) * cos(PI / 4)",
+            "square(years) * G / max(rate, years)",
+            "round(log(area(3), 10), 4)",
+            "hypot(area(1), interest(100, 5, 2))"
+    };
+
+    /**
+     * The number of requests sent by every connection before the latencies are recorded.
+     */
+    private static final int WARMUP_REQUESTS = 2000;
+
+    /**
+     * Prevents instantiation.
+     */
+    private ServerLoadTest()
+    {
+
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args The address of the server, the number of connections, the number of requests per connection and
+     *             the pipeline depth.
+     * @throws Exception When the load test fails.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String address     = args.length > 0 ? args[0] : "-";
+        int    connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int    requests    = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        int    depth       = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+        CalculatorServer server = null;
+        SocketAddress    target;
+        if (address.equals("-")) {
+            InetSocketAddress local = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+            server = new CalculatorServer(
+                    CalculatorServer.openTcp(local),
+                    new Calculator(new NullCalculatorOutput()),
+                    CalculatorServer.newDefaultExecutor()
+            );
+            server.start();
+            target = server.getAddress();
+        } else {
+            int    separator = address.lastIndexOf(':');
+            String host      = address.substring(0, separator);
+            target = new InetSocketAddress(host, Integer.parseInt(address.substring(separator + 1)));
+        }
+
+        try {
+            run(target, connections, requests, depth);
+        } finally {
+            if (server != null)
+                server.close();
+        }
+    }
+
+    /**
+     * Runs the load test, and prints the results.
+     *
+     * @param target      The address of the server.
+     * @param connections The number of concurrent connections.
+     * @param requests    The number of requests recorded per connection.
+     * @param depth       The number of requests sent per batch.
+     * @throws Exception When a connection fails.
+     */
+    private static void run(SocketAddress target, int connections, int requests, int depth) throws Exception
+    {
+        ExecutorService        executor = Executors.newFixedThreadPool(connections);
+        List<Future<long[]>>   futures  = new ArrayList<>();
+        List<Callable<long[]>> clients  = new ArrayList<>();
+        for (int x = 0; x < connections; x++)
+            clients.add(() -> connect(target, requests, depth));
+
+        long start = System.nanoTime();
+        for (Callable<long[]> client : clients)
+            futures.add(executor.submit(client));
+
+        long[][] results = new long[connections][];
+        for (int x = 0; x < connections; x++)
+            results[x] = futures.get(x).get();
+
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        long[] latencies = new long[connections * requests];
+        for (int x = 0; x < connections; x++)
+            System.arraycopy(results[x], 0, latencies, x * requests, requests);
+
+        Arrays.sort(latencies);
+        long total = (long) connections * (requests + WARMUP_REQUESTS);
+        System.out.println(String.format(
+                "%d connections, pipeline depth %d: %d requests in %.2f s, %.0f requests/s",
+                connections,
+                depth,
+                total,
+                elapsed / 1e9,
+                total / (elapsed / 1e9)
+        ));
+        System.out.println(String.format(
+                "latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                percentile(latencies, 50) / 1e3,
+                percentile(latencies, 99) / 1e3,
+                percentile(latencies, 99.9) / 1e3,
+                latencies[latencies.length - 1] / 1e3
+        ));
+    }
+
+    /**
+     * Sends the requests of a single connection.
+     *
+     * @param target   The address of the server.
+     * @param requests The number of requests to record.
+     * @param depth    The number of requests sent per batch.
+     * @return The latencies of the recorded requests in nanoseconds.
+     * @throws IOException When the connection fails, or the server reports an error.
+     */
+    private static long[] connect(SocketAddress target, int requests, int depth) throws IOException
+    {
+        try (SocketChannel channel = SocketChannel.open(target)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            OutputStream output = Channels.newOutputStream(channel);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8)
+            );
+
+            output.write(Programs.DECLARATIONS.getBytes(StandardCharsets.UTF_8));
+            for (String declaration : Programs.DECLARATIONS.split("\n"))
+                expectStatus(reader, declaration);
+
+            long[]        latencies = new long[requests];
+            StringBuilder batch     = new StringBuilder();
+            int           sent      = 0;
+            int           total     = WARMUP_REQUESTS + requests;
+            while (sent < total) {
+                int size = Math.min(depth, total - sent);
+                batch.setLength(0);
+                for (int x = 0; x < size; x++)
+                    batch.append(EXPRESSIONS[(sent + x) % EXPRESSIONS.length]).append('\n');
+
+                long start = System.nanoTime();
+                output.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+                for (int x = 0; x < size; x++) {
+                    String line = reader.readLine();
+                    if (line == null || line.startsWith("Error: ")) {
+                        throw new IOException("Unexpected response: " + line);
+                    }
+
+                    expectStatus(reader, EXPRESSIONS[(sent + x) % EXPRESSIONS.length]);
+                    int recorded = sent + x - WARMUP_REQUESTS;
+                    if (recorded >= 0)
+                        latencies[recorded] = System.nanoTime() - start;
+                }
+
+                sent += size;
+            }
+
+            return latencies;
+        }
+    }
+
+    /**
+     * Reads the status line terminating the output of a request, and checks that the request succeeded.
+     *
+     * @param reader  The reader of the connection.
+     * @param request The request the status line belongs to.
+     * @throws IOException When the connection fails, or the request did not succeed.
+     */
+    private static void expectStatus(BufferedReader reader, String request) throws IOException
+    {
+        String status = reader.readLine();
+        if (!CalculatorServer.STATUS_OK.equals(status)) {
+            throw new IOException("Unexpected status of '" + request + "': " + status);
+        }
+    }
+
+    /**
+     * Returns the provided percentile of the sorted latencies.
+     *
+     * @param latencies  The sorted latencies.
+     * @param percentile The percentile to return.
+     * @return The provided percentile of the latencies.
+     */
+    private static long percentile(long[] latencies, double percentile)
+    {
+        int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+    }
+}
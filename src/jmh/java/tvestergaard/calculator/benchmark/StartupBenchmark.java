@@ -0,0 +1,99 @@
+package tvestergaard.calculator.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import tvestergaard.calculator.logic.Calculator;
+import tvestergaard.calculator.logic.ProgramException;
+import tvestergaard.calculator.logic.WarmUp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of the first programs executed in a fresh JVM, with and without executing {@link WarmUp}
+ * first. Every measurement is taken once in a new JVM, so the prediction caches of the parser are empty unless the
+ * JVM has been warmed up. Executing a single program measures the time to the first result, executing more programs
+ * measures the total latency of the first executions.
+ *
+ * The warm up is done in the setup, and is not part of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark
+{
+
+    /**
+     * Whether or not the JVM is warmed up before the programs are executed.
+     */
+    @Param({"false", "true"})
+    public boolean warmUp;
+
+    /**
+     * The number of programs to execute.
+     */
+    @Param({"1", "10", "100", "1000"})
+    public int executions;
+
+    /**
+     * The output of the calculator.
+     */
+    private NullCalculatorOutput output;
+
+    /**
+     * The calculator executing the programs.
+     */
+    private Calculator calculator;
+
+    /**
+     * The programs to execute. The programs are distinct, so that they are not found in the program cache.
+     */
+    private String[] programs;
+
+    @Setup public void setup()
+    {
+        if (warmUp)
+            WarmUp.run();
+
+        output = new NullCalculatorOutput();
+        calculator = new Calculator(output);
+        programs = programs(executions);
+    }
+
+    @TearDown public void tearDown()
+    {
+        if (output.getErrors() > 0) {
+            throw new IllegalStateException("The benchmarked programs do not execute without errors.");
+        }
+    }
+
+    @Benchmark public void execute() throws ProgramException
+    {
+        for (String program : programs)
+            calculator.execute(program);
+    }
+
+    /**
+     * Returns the provided number of distinct programs, starting with an expression outputting a result, followed by
+     * the declarations used by the other programs, and variations of the statements in {@link Programs#REPRESENTATIVE}.
+     *
+     * @param count The number of programs to return.
+     * @return The programs.
+     */
+    private static String[] programs(int count)
+    {
+        String[]     representative = Programs.REPRESENTATIVE.split("\n");
+        List<String> statements     = new ArrayList<>();
+        statements.add(representative[0] + '\n');
+        for (String declaration : Programs.DECLARATIONS.split("\n"))
+            statements.add(declaration + '\n');
+
+        for (int x = 1; statements.size() < count; x++)
+            statements.add(representative[x % representative.length] + " + " + x + '\n');
+
+        return statements.subList(0, count).toArray(new String[count]);
+    }
+}
@@ -13,12 +13,13 @@ statement
     :   command
     |   functionDeclaration
     |   variableDeclaration
+    |   bindingDeclaration
     |   constantDeclaration
     |   expression
     ;
 
 command
-    :   '!' IDENTIFIER functionArguments?
+    :   '!' IDENTIFIER (functionArguments | STRING)?
     ;
 
 
@@ -42,11 +43,16 @@ variableDeclaration
     :   IDENTIFIER EQUALS expression
     ;
 
+bindingDeclaration
+    :   IDENTIFIER BIND expression
+    ;
+
 constantDeclaration
     :   CONST IDENTIFIER EQUALS expression
     ;
 
 expression
+    locals [tvestergaard.calculator.logic.ExpressionNode node]
     :   multiplicativeExpression
     ;
 
@@ -112,6 +118,10 @@ EQUALS
     :   '='
     ;
 
+BIND
+    :   ':='
+    ;
+
 ADD_OP
     :   '+'
     ;
@@ -160,6 +170,10 @@ IDENTIFIER
     :   [a-zA-Z_]+
     ;
 
+STRING
+    :   '"' ~["\r\n]* '"'
+    ;
+
 WHITESPACE
     :   [ \t\r\n]+ -> skip
     ;
\ No newline at end of file
@@ -1,5 +1,7 @@
 package tvestergaard.calculator.logic;
 
+import java.util.List;
+
 public abstract class AbstractFunction implements Function
 {
 
@@ -56,4 +58,33 @@ public abstract class AbstractFunction implements Function
         result = 31 * result + parameterCount;
         return result;
     }
+
+    /**
+     * Calls the function.
+     *
+     * @param visitor   The visitor that is used when executing the function.
+     * @param memory    The memory of the calculator.
+     * @param arguments The arguments to pass to the function.
+     * @return The result of the function call.
+     */
+    @Override public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
+    {
+        if (arguments.size() != this.getParameterCount()) {
+            throw new RuntimeException(String.format("Function '%s' takes %d arguments, %d provided.", getSignature(), this.getParameterCount(), arguments.size()));
+        }
+
+        double[] values = new double[arguments.size()];
+        for (int x = 0; x < values.length; x++)
+            values[x] = arguments.get(x);
+
+        DoubleEvaluator evaluator = visitor.getEvaluator();
+        double          value     = call(evaluator, values, 0);
+        if (evaluator.hasError()) {
+            String error = evaluator.getError();
+            evaluator.clearError();
+            return ExpressionResult.error(error);
+        }
+
+        return ExpressionResult.success(value);
+    }
 }
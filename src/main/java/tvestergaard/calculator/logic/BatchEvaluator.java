@@ -0,0 +1,427 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates an expression over a batch of rows, where the values of the variables or parameters are provided as
+ * columns. The batch is processed in blocks of {@link #BLOCK_SIZE} rows, and every node of the expression is evaluated
+ * for the entire block before its parent, so that the arithmetic is performed in tight loops over arrays that the
+ * JVM can unroll and vectorize. Calls to custom functions are evaluated the same way, by evaluating the body of the
+ * function over the block of arguments.
+ *
+ * The results are identical to the results of evaluating the expression one row at a time, since the same
+ * operations are performed on every row. Errors are reported by throwing a {@link RuntimeException}.
+ */
+public class BatchEvaluator implements NodeVisitor<double[]>
+{
+
+    /**
+     * The number of rows evaluated at a time.
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    /**
+     * The memory of the calculator.
+     */
+    private final CalculatorMemory memory;
+
+    /**
+     * The functions that can be called during the evaluation.
+     */
+    private final FunctionCollection functions;
+
+    /**
+     * The evaluator used to call the functions that cannot be evaluated a block at a time.
+     */
+    private final DoubleEvaluator evaluator;
+
+    /**
+     * The buffers holding the intermediate results, used as a stack.
+     */
+    private final List<double[]> buffers = new ArrayList<>();
+
+    /**
+     * The number of buffers in use.
+     */
+    private int depth;
+
+    /**
+     * The columns containing the values of the variables. Is empty when evaluating the body of a function.
+     */
+    private Map<String, double[]> columns = Collections.emptyMap();
+
+    /**
+     * The columns containing the arguments of the function being evaluated. Is null outside functions.
+     */
+    private double[][] frame;
+
+    /**
+     * The index of the first row of the current block in the columns of the frame.
+     */
+    private int frameOffset;
+
+    /**
+     * The index of the first row of the current block.
+     */
+    private int from;
+
+    /**
+     * The number of rows in the current block.
+     */
+    private int length;
+
+    /**
+     * The arguments passed when calling a function one row at a time.
+     */
+    private double[] row = new double[8];
+
+    /**
+     * Creates a new {@link BatchEvaluator}.
+     *
+     * @param memory    The memory of the calculator.
+     * @param functions The functions that can be called during the evaluation.
+     * @param evaluator The evaluator used to call the functions that cannot be evaluated a block at a time.
+     */
+    public BatchEvaluator(CalculatorMemory memory, FunctionCollection functions, DoubleEvaluator evaluator)
+    {
+        this.memory = memory;
+        this.functions = functions;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Evaluates the provided expression for every row in the batch. Variables are read from the column with the same
+     * name, or from the memory of the calculator when no such column exists. Constants take precedence over columns.
+     *
+     * @param node    The expression to evaluate.
+     * @param columns The columns containing the values of the variables.
+     * @param results The array the results are written to. The length of the array is the number of rows.
+     */
+    public void evaluate(ExpressionNode node, Map<String, double[]> columns, double[] results)
+    {
+        evaluate(node, columns, results, 0, results.length);
+    }
+
+    /**
+     * Evaluates the provided expression for a range of rows in the batch.
+     *
+     * @param node    The expression to evaluate.
+     * @param columns The columns containing the values of the variables.
+     * @param results The array the results are written to.
+     * @param start   The index of the first row to evaluate.
+     * @param end     The index after the last row to evaluate.
+     */
+    public void evaluate(ExpressionNode node, Map<String, double[]> columns, double[] results, int start, int end)
+    {
+        validate(results, end);
+        for (double[] column : columns.values())
+            validate(column, end);
+
+        this.columns = columns;
+        try {
+            run(node, null, results, start, end);
+        } finally {
+            this.columns = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Calls the provided function for every row in the batch.
+     *
+     * @param function  The function to call.
+     * @param arguments The columns containing the arguments to the function, one column per parameter.
+     * @param results   The array the results are written to. The length of the array is the number of rows.
+     */
+    public void call(Function function, double[][] arguments, double[] results)
+    {
+        call(function, arguments, results, 0, results.length);
+    }
+
+    /**
+     * Calls the provided function for a range of rows in the batch.
+     *
+     * @param function  The function to call.
+     * @param arguments The columns containing the arguments to the function, one column per parameter.
+     * @param results   The array the results are written to.
+     * @param start     The index of the first row to evaluate.
+     * @param end       The index after the last row to evaluate.
+     */
+    public void call(Function function, double[][] arguments, double[] results, int start, int end)
+    {
+        if (arguments.length != function.getParameterCount()) {
+            throw new IllegalArgumentException(String.format(
+                    "Function '%s' accepts %d arguments, %d columns provided.",
+                    function.getSignature(),
+                    function.getParameterCount(),
+                    arguments.length
+            ));
+        }
+
+        validate(results, end);
+        for (double[] column : arguments)
+            validate(column, end);
+
+        List<ExpressionNode> parameters = new ArrayList<>(arguments.length);
+        for (int x = 0; x < arguments.length; x++)
+            parameters.add(new ParameterNode(Integer.toString(x), x));
+
+        run(new CallNode(function.getName(), parameters), arguments, results, start, end);
+    }
+
+    /**
+     * Evaluates the provided expression block by block.
+     *
+     * @param node    The expression to evaluate.
+     * @param frame   The columns containing the arguments referenced by the expression.
+     * @param results The array the results are written to.
+     * @param start   The index of the first row to evaluate.
+     * @param end     The index after the last row to evaluate.
+     */
+    private void run(ExpressionNode node, double[][] frame, double[] results, int start, int end)
+    {
+        try {
+            for (from = start; from < end; from += BLOCK_SIZE) {
+                length = Math.min(BLOCK_SIZE, end - from);
+                depth = 0;
+                this.frame = frame;
+                this.frameOffset = from;
+                System.arraycopy(node.accept(this), 0, results, from, length);
+            }
+        } finally {
+            this.frame = null;
+            this.depth = 0;
+        }
+    }
+
+    /**
+     * Validates that the provided column contains a value for every row.
+     *
+     * @param column The column to validate.
+     * @param rows   The number of rows.
+     */
+    private static void validate(double[] column, int rows)
+    {
+        if (column.length < rows) {
+            throw new IllegalArgumentException(String.format("A column contains %d of %d rows.", column.length, rows));
+        }
+    }
+
+    /**
+     * Pushes a buffer on the stack of intermediate results.
+     *
+     * @return The pushed buffer.
+     */
+    private double[] push()
+    {
+        if (depth == buffers.size()) {
+            buffers.add(new double[BLOCK_SIZE]);
+        }
+
+        return buffers.get(depth++);
+    }
+
+    @Override public double[] visitLiteral(LiteralNode node)
+    {
+        double[] result = push();
+        double   value  = node.getValue();
+        for (int x = 0; x < length; x++)
+            result[x] = value;
+
+        return result;
+    }
+
+    @Override public double[] visitVariable(VariableNode node)
+    {
+        String name     = node.getName();
+        Double constant = memory.getConstant(name);
+        if (constant == null && frame == null) {
+            double[] column = columns.get(name);
+            if (column != null) {
+                double[] result = push();
+                System.arraycopy(column, from, result, 0, length);
+                return result;
+            }
+
+            if (memory.hasValue(name)) {
+                constant = memory.getValue(name);
+            }
+        }
+
+        if (constant == null) {
+            throw new RuntimeException(String.format("No variable with name '%s'.", name));
+        }
+
+        double[] result = push();
+        double   value  = constant;
+        for (int x = 0; x < length; x++)
+            result[x] = value;
+
+        return result;
+    }
+
+    @Override public double[] visitParameter(ParameterNode node)
+    {
+        double[] result = push();
+        System.arraycopy(frame[node.getIndex()], frameOffset, result, 0, length);
+        return result;
+    }
+
+    @Override public double[] visitBinary(BinaryNode node)
+    {
+        BinaryNode[] chain = node.getChain();
+        double[]     left  = chain[0].getLeft().accept(this);
+        for (BinaryNode operation : chain) {
+            double[] right = operation.getRight().accept(this);
+            depth--;
+            apply(operation.getOperator(), left, right);
+        }
+
+        return left;
+    }
+
+    /**
+     * Applies the provided operator to the current block of the provided operands.
+     *
+     * @param operator The operator to apply.
+     * @param left     The buffer containing the left operands, to which the results are written.
+     * @param right    The buffer containing the right operands.
+     */
+    private void apply(BinaryNode.Operator operator, double[] left, double[] right)
+    {
+        switch (operator) {
+            case ADD:
+                for (int x = 0; x < length; x++)
+                    left[x] = left[x] + right[x];
+                break;
+            case SUBTRACT:
+                for (int x = 0; x < length; x++)
+                    left[x] = left[x] - right[x];
+                break;
+            case MULTIPLY:
+                for (int x = 0; x < length; x++)
+                    left[x] = left[x] * right[x];
+                break;
+            case DIVIDE:
+                for (int x = 0; x < length; x++) {
+                    if (right[x] == 0) {
+                        throw new RuntimeException("You cannot divide by 0.");
+                    }
+
+                    left[x] = left[x] / right[x];
+                }
+                break;
+        }
+    }
+
+    @Override public double[] visitCall(CallNode node)
+    {
+        int        argumentCount = node.getArgumentCount();
+        int        base          = depth;
+        double[][] arguments     = new double[argumentCount][];
+        for (int x = 0; x < argumentCount; x++)
+            arguments[x] = node.getArgument(x).accept(this);
+
+        Function function = node.resolve(functions);
+        if (function == null) {
+            throw new RuntimeException(String.format("No such function '%s'.", node.getName()));
+        }
+
+        double[] result = argumentCount > 0 ? arguments[0] : push();
+        if (function instanceof ConcreteCustomFunction) {
+            callCustom((ConcreteCustomFunction) function, arguments, result);
+        } else if (function == StandardLibrary.LIBRARY.getFunction(node.getIdentifier())) {
+            callStandard(function, arguments, result);
+        } else {
+            callRows(function, arguments, result);
+        }
+
+        depth = base + 1;
+        return result;
+    }
+
+    /**
+     * Evaluates the body of the provided custom function over the block of arguments.
+     *
+     * @param function  The function to evaluate.
+     * @param arguments The buffers containing the arguments.
+     * @param result    The buffer the results are written to.
+     */
+    private void callCustom(ConcreteCustomFunction function, double[][] arguments, double[] result)
+    {
+        double[][] previousFrame  = frame;
+        int        previousOffset = frameOffset;
+        frame = arguments;
+        frameOffset = 0;
+
+        try {
+            double[] body = function.resolve(memory).accept(this);
+            System.arraycopy(body, 0, result, 0, length);
+        } finally {
+            frame = previousFrame;
+            frameOffset = previousOffset;
+        }
+    }
+
+    /**
+     * Calls the provided built in function over the block of arguments. The most common functions are computed in
+     * loops over the block, the rest are called one row at a time.
+     *
+     * @param function  The function to call.
+     * @param arguments The buffers containing the arguments.
+     * @param result    The buffer the results are written to.
+     */
+    private void callStandard(Function function, double[][] arguments, double[] result)
+    {
+        switch (function.getName() + "/" + arguments.length) {
+            case "abs/1":
+                for (int x = 0; x < length; x++)
+                    result[x] = Math.abs(arguments[0][x]);
+                return;
+            case "sqrt/1":
+                for (int x = 0; x < length; x++)
+                    result[x] = Math.sqrt(arguments[0][x]);
+                return;
+            case "max/2":
+                for (int x = 0; x < length; x++)
+                    result[x] = Math.max(arguments[0][x], arguments[1][x]);
+                return;
+            case "min/2":
+                for (int x = 0; x < length; x++)
+                    result[x] = Math.min(arguments[0][x], arguments[1][x]);
+                return;
+        }
+
+        callRows(function, arguments, result);
+    }
+
+    /**
+     * Calls the provided function one row at a time.
+     *
+     * @param function  The function to call.
+     * @param arguments The buffers containing the arguments.
+     * @param result    The buffer the results are written to.
+     */
+    private void callRows(Function function, double[][] arguments, double[] result)
+    {
+        if (row.length < arguments.length) {
+            row = new double[arguments.length];
+        }
+
+        for (int x = 0; x < length; x++) {
+            for (int y = 0; y < arguments.length; y++)
+                row[y] = arguments[y][x];
+
+            double value = function.call(evaluator, row, 0);
+            if (evaluator.hasError()) {
+                String error = evaluator.getError();
+                evaluator.clearError();
+                throw new RuntimeException(error);
+            }
+
+            result[x] = value;
+        }
+    }
+}
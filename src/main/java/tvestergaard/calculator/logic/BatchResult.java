@@ -0,0 +1,101 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * The results of evaluating an expression over a batch of rows. The results are in the same order as the rows, and
+ * rows that failed have an error instead of a value.
+ */
+public class BatchResult
+{
+
+    /**
+     * The values of the rows. The value of a row that failed is {@link Double#NaN}.
+     */
+    private final double[] values;
+
+    /**
+     * The errors of the rows. The error of a row that succeeded is null.
+     */
+    private final String[] errors;
+
+    /**
+     * Creates a new {@link BatchResult}.
+     *
+     * @param values The values of the rows.
+     * @param errors The errors of the rows.
+     */
+    public BatchResult(double[] values, String[] errors)
+    {
+        assert values.length == errors.length;
+
+        this.values = values;
+        this.errors = errors;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return The number of rows.
+     */
+    public int size()
+    {
+        return values.length;
+    }
+
+    /**
+     * Returns the value of the provided row.
+     *
+     * @param row The index of the row.
+     * @return The value of the row. Returns {@link Double#NaN} when the row failed.
+     */
+    public double getValue(int row)
+    {
+        return values[row];
+    }
+
+    /**
+     * Returns true if the provided row failed.
+     *
+     * @param row The index of the row.
+     * @return true if the row failed.
+     */
+    public boolean isError(int row)
+    {
+        return errors[row] != null;
+    }
+
+    /**
+     * Returns the error of the provided row.
+     *
+     * @param row The index of the row.
+     * @return The error of the row. Returns null when the row succeeded.
+     */
+    public String getError(int row)
+    {
+        return errors[row];
+    }
+
+    /**
+     * Returns the number of rows that failed.
+     *
+     * @return The number of rows that failed.
+     */
+    public int getErrorCount()
+    {
+        int count = 0;
+        for (String error : errors)
+            if (error != null)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * Returns the values of the rows. The returned array is not copied.
+     *
+     * @return The values of the rows.
+     */
+    public double[] getValues()
+    {
+        return values;
+    }
+}
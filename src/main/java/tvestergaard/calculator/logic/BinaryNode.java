@@ -0,0 +1,169 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * A binary operation in the lowered expression tree. The operator is resolved once, when the tree is lowered.
+ */
+public class BinaryNode implements ExpressionNode
+{
+
+    /**
+     * The operators that can be used in a binary operation.
+     */
+    public enum Operator
+    {
+        ADD("+"),
+        SUBTRACT("-"),
+        MULTIPLY("*"),
+        DIVIDE("/");
+
+        /**
+         * The symbol representing the operator in source code.
+         */
+        private final String symbol;
+
+        /**
+         * Creates a new {@link Operator}.
+         *
+         * @param symbol The symbol representing the operator in source code.
+         */
+        Operator(String symbol)
+        {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Returns the symbol representing the operator in source code.
+         *
+         * @return The symbol representing the operator in source code.
+         */
+        public String getSymbol()
+        {
+            return symbol;
+        }
+
+        /**
+         * Returns the operator represented by the provided symbol.
+         *
+         * @param symbol The symbol representing the operator in source code.
+         * @return The operator represented by the provided symbol.
+         */
+        public static Operator of(String symbol)
+        {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+
+            throw new RuntimeException(String.format("Unknown operator '%s'.", symbol));
+        }
+    }
+
+    /**
+     * The operator of the operation.
+     */
+    private final Operator operator;
+
+    /**
+     * The left operand of the operation.
+     */
+    private final ExpressionNode left;
+
+    /**
+     * The right operand of the operation.
+     */
+    private final ExpressionNode right;
+
+    /**
+     * The chain of operations ending with this operation. Is null until first requested.
+     */
+    private volatile BinaryNode[] chain;
+
+    /**
+     * Creates a new {@link BinaryNode}.
+     *
+     * @param operator The operator of the operation.
+     * @param left     The left operand of the operation.
+     * @param right    The right operand of the operation.
+     */
+    public BinaryNode(Operator operator, ExpressionNode left, ExpressionNode right)
+    {
+        assert operator != null;
+        assert left != null;
+        assert right != null;
+
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Returns the operator of the operation.
+     *
+     * @return The operator of the operation.
+     */
+    public Operator getOperator()
+    {
+        return operator;
+    }
+
+    /**
+     * Returns the left operand of the operation.
+     *
+     * @return The left operand of the operation.
+     */
+    public ExpressionNode getLeft()
+    {
+        return left;
+    }
+
+    /**
+     * Returns the right operand of the operation.
+     *
+     * @return The right operand of the operation.
+     */
+    public ExpressionNode getRight()
+    {
+        return right;
+    }
+
+    /**
+     * Returns the chain of operations formed by this operation and the operations that are the left operand of an
+     * operation in the chain, starting with the innermost operation. Chains like 1 + 2 + ... + n are lowered into
+     * left-deep trees, so visitors iterate the chain instead of recursing into the left operands, which handles
+     * chains of any length in linear time without growing the JVM stack.
+     *
+     * @return The chain of operations ending with this operation. The returned array must not be modified.
+     */
+    public BinaryNode[] getChain()
+    {
+        BinaryNode[] chain = this.chain;
+        if (chain == null) {
+            int length = 1;
+            for (ExpressionNode node = left; node instanceof BinaryNode; node = ((BinaryNode) node).left)
+                length++;
+
+            chain = new BinaryNode[length];
+            BinaryNode node = this;
+            for (int x = length - 1; x >= 0; x--) {
+                chain[x] = node;
+                if (x > 0)
+                    node = (BinaryNode) node.left;
+            }
+
+            this.chain = chain;
+        }
+
+        return chain;
+    }
+
+    @Override public <T> T accept(NodeVisitor<T> visitor)
+    {
+        return visitor.visitBinary(this);
+    }
+
+    @Override public double accept(DoubleNodeVisitor visitor)
+    {
+        return visitor.visitBinary(this);
+    }
+}
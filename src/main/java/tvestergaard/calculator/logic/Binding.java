@@ -0,0 +1,76 @@
+package tvestergaard.calculator.logic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A reactive variable, declared using 'name := expression'. The binding keeps the expression defining the variable,
+ * so that the variable is recomputed when one of the variables it depends on changes.
+ */
+public class Binding
+{
+
+    /**
+     * The name of the bound variable.
+     */
+    private final String name;
+
+    /**
+     * The expression defining the variable.
+     */
+    private final ExpressionNode expression;
+
+    /**
+     * The names of the variables referenced by the expression.
+     */
+    private final String[] dependencies;
+
+    /**
+     * Creates a new {@link Binding}.
+     *
+     * @param name         The name of the bound variable.
+     * @param expression   The expression defining the variable.
+     * @param dependencies The names of the variables referenced by the expression.
+     */
+    public Binding(String name, ExpressionNode expression, List<String> dependencies)
+    {
+        assert name != null;
+        assert expression != null;
+        assert dependencies != null;
+
+        this.name = name;
+        this.expression = expression;
+        this.dependencies = dependencies.toArray(new String[dependencies.size()]);
+    }
+
+    /**
+     * Returns the name of the bound variable.
+     *
+     * @return The name of the bound variable.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the expression defining the variable.
+     *
+     * @return The expression defining the variable.
+     */
+    public ExpressionNode getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * Returns the names of the variables referenced by the expression.
+     *
+     * @return The names of the variables referenced by the expression.
+     */
+    public List<String> getDependencies()
+    {
+        return Collections.unmodifiableList(Arrays.asList(dependencies));
+    }
+}
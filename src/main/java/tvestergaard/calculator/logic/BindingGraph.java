@@ -0,0 +1,261 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dependency graph of the reactive variables in a memory. The graph contains the bindings, and for every variable
+ * the bindings depending on it, so that the bindings affected by a change are found without visiting the rest of the
+ * graph. The graph never contains a cycle.
+ *
+ * The bindings and the edges are kept in persistent maps, so the graph is copied in constant time.
+ */
+public class BindingGraph
+{
+
+    /**
+     * The dependents of a variable no binding depends on.
+     */
+    private static final String[] NONE = new String[0];
+
+    /**
+     * The bindings, by the name of the bound variable.
+     */
+    private PersistentMap<String, Binding> bindings = PersistentMap.empty();
+
+    /**
+     * The names of the bindings depending on a variable, by the name of the variable.
+     */
+    private PersistentMap<String, String[]> dependents = PersistentMap.empty();
+
+    /**
+     * Returns a copy of the graph, which is not affected by later changes to the graph, nor is the graph affected by
+     * changes to the copy. The copy is created in constant time.
+     *
+     * @return The copy of the graph.
+     */
+    public BindingGraph snapshot()
+    {
+        BindingGraph snapshot = new BindingGraph();
+        snapshot.bindings = bindings;
+        snapshot.dependents = dependents;
+        return snapshot;
+    }
+
+    /**
+     * Returns the binding of the variable with the provided name.
+     *
+     * @param name The name of the variable.
+     * @return The binding of the variable. Returns null if the variable is not bound.
+     */
+    public Binding get(String name)
+    {
+        return bindings.get(name);
+    }
+
+    /**
+     * Returns the bindings in the graph.
+     *
+     * @return The bindings in the graph.
+     */
+    public Collection<Binding> getBindings()
+    {
+        return bindings.values();
+    }
+
+    /**
+     * Returns true if a binding depends on the variable with the provided name.
+     *
+     * @param name The name of the variable.
+     * @return true if a binding depends on the variable with the provided name.
+     */
+    public boolean hasDependents(String name)
+    {
+        return dependents.containsKey(name);
+    }
+
+    /**
+     * Adds the provided binding to the graph, replacing the previous binding of the variable. The binding must not
+     * create a cycle, see {@link #findCycle(String, List)}.
+     *
+     * @param binding The binding to add.
+     */
+    public void bind(Binding binding)
+    {
+        String name = binding.getName();
+        unbind(name);
+        bindings = bindings.with(name, binding);
+        for (String dependency : binding.getDependencies()) {
+            String[] previous = dependents.getOrDefault(dependency, NONE);
+            String[] updated  = Arrays.copyOf(previous, previous.length + 1);
+            updated[previous.length] = name;
+            dependents = dependents.with(dependency, updated);
+        }
+    }
+
+    /**
+     * Removes the binding of the variable with the provided name from the graph. The bindings depending on the
+     * variable are kept.
+     *
+     * @param name The name of the variable.
+     */
+    public void unbind(String name)
+    {
+        Binding binding = bindings.get(name);
+        if (binding == null)
+            return;
+
+        bindings = bindings.without(name);
+        for (String dependency : binding.getDependencies()) {
+            String[] previous = dependents.get(dependency);
+            if (previous.length == 1) {
+                dependents = dependents.without(dependency);
+                continue;
+            }
+
+            String[] updated = new String[previous.length - 1];
+            int      index   = 0;
+            for (String dependent : previous)
+                if (!dependent.equals(name))
+                    updated[index++] = dependent;
+            dependents = dependents.with(dependency, updated);
+        }
+    }
+
+    /**
+     * Returns true if the graph contains no cycle. Bindings added using {@link #bind(Binding)} after checking
+     * {@link #findCycle(String, List)} never create a cycle, so this is only needed when a graph is restored.
+     *
+     * @return true if the graph contains no cycle.
+     */
+    public boolean isAcyclic()
+    {
+        Map<String, Integer> remaining = new HashMap<>();
+        Deque<String>        pending   = new ArrayDeque<>();
+        for (Binding binding : bindings.values()) {
+            int count = 0;
+            for (String dependency : binding.getDependencies())
+                if (bindings.containsKey(dependency))
+                    count++;
+
+            if (count == 0)
+                pending.add(binding.getName());
+            else
+                remaining.put(binding.getName(), count);
+        }
+
+        int visited = 0;
+        while (!pending.isEmpty()) {
+            visited++;
+            for (String dependent : dependents.getOrDefault(pending.poll(), NONE))
+                if (remaining.merge(dependent, -1, Integer::sum) == 0)
+                    pending.add(dependent);
+        }
+
+        return visited == bindings.size();
+    }
+
+    /**
+     * Returns the cycle that binding the variable with the provided name to an expression depending on the provided
+     * variables would create. The cycle is returned as the names of the variables along the cycle, starting and
+     * ending with the provided name, where every variable depends on the next.
+     *
+     * @param name         The name of the variable to bind.
+     * @param dependencies The names of the variables the expression depends on.
+     * @return The cycle the binding would create. Returns null if the binding would not create a cycle.
+     */
+    public List<String> findCycle(String name, List<String> dependencies)
+    {
+        Set<String> targets = new HashSet<>(dependencies);
+        if (targets.contains(name))
+            return Arrays.asList(name, name);
+
+        Map<String, String> parents = new HashMap<>();
+        Deque<String>       pending = new ArrayDeque<>();
+        parents.put(name, null);
+        pending.add(name);
+        while (!pending.isEmpty()) {
+            String current = pending.poll();
+            for (String dependent : dependents.getOrDefault(current, NONE)) {
+                if (parents.containsKey(dependent))
+                    continue;
+
+                parents.put(dependent, current);
+                if (targets.contains(dependent)) {
+                    List<String> cycle = new ArrayList<>();
+                    cycle.add(name);
+                    for (String node = dependent; node != null; node = parents.get(node))
+                        cycle.add(node);
+                    return cycle;
+                }
+
+                pending.add(dependent);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the bindings affected by a change to the variable with the provided name, directly or through other
+     * bindings, grouped in levels. The bindings in a level only depend on the changed variable, on bindings in earlier
+     * levels and on variables that are not affected, so the levels can be recomputed in order, and the bindings in a
+     * level can be recomputed in any order. Every affected binding is returned once, and bindings that are not
+     * affected are not visited.
+     *
+     * @param name The name of the changed variable.
+     * @return The affected bindings, grouped in levels.
+     */
+    public List<List<Binding>> schedule(String name)
+    {
+        Set<String>   affected = new LinkedHashSet<>();
+        Deque<String> pending  = new ArrayDeque<>();
+        pending.add(name);
+        while (!pending.isEmpty()) {
+            for (String dependent : dependents.getOrDefault(pending.poll(), NONE))
+                if (affected.add(dependent))
+                    pending.add(dependent);
+        }
+
+        Map<String, Integer> remaining = new HashMap<>();
+        List<Binding>        level     = new ArrayList<>();
+        for (String dependent : affected) {
+            Binding binding = bindings.get(dependent);
+            int     count   = 0;
+            for (String dependency : binding.getDependencies())
+                if (affected.contains(dependency))
+                    count++;
+
+            if (count == 0)
+                level.add(binding);
+            else
+                remaining.put(dependent, count);
+        }
+
+        List<List<Binding>> levels = new ArrayList<>();
+        while (!level.isEmpty()) {
+            levels.add(level);
+            List<Binding> next = new ArrayList<>();
+            for (Binding binding : level) {
+                for (String dependent : dependents.getOrDefault(binding.getName(), NONE)) {
+                    int count = remaining.merge(dependent, -1, Integer::sum);
+                    if (count == 0)
+                        next.add(bindings.get(dependent));
+                }
+            }
+
+            level = next;
+        }
+
+        return levels;
+    }
+}
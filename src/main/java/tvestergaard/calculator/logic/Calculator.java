@@ -1,23 +1,45 @@
 package tvestergaard.calculator.logic;
 
-import org.antlr.v4.runtime.*;
-import tvestergaard.calculator.antlr.CalculatorLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
 import tvestergaard.calculator.antlr.CalculatorParser;
 
-import java.util.List;
-
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A calculator session. Each calculator has its own variables, constants and custom functions, while the built in
+ * functions and constants are shared through an immutable {@link Library}. Different calculators can execute programs
+ * in parallel on any thread, and a {@link ProgramCache} may be shared between them.
+ */
 public class Calculator
 {
 
+    /**
+     * The error reported when a statement is nested too deeply to be parsed or executed. Chains of operators are
+     * handled without growing the JVM stack, but parentheses and function calls are parsed recursively.
+     */
+    private static final String NESTING_ERROR = "The statement contains too deeply nested parentheses or calls.";
+
     /**
      * The memory of the calculator, contains the defined variables and constants.
      */
-    private final CalculatorMemory   memory    = new CalculatorMemory();
+    private final CalculatorMemory   memory;
 
     /**
      * The functions defined in the calculator.
      */
-    private final FunctionCollection functions = new FunctionCollection();
+    private final FunctionCollection functions;
 
     /**
      * The object used to output to the caller.
@@ -30,326 +52,483 @@ public class Calculator
     private final StatementListener listener;
 
     /**
-     * The visitor used to walk the program expression when executing the provided program.
+     * The evaluator used to evaluate expressions over batches of rows.
      */
-    private final ExpressionVisitor visitor = new ExpressionVisitor(memory, functions);
+    private final BatchEvaluator batchEvaluator;
 
     /**
-     * Creates a new {@link Calculator}.
+     * The cache of parsed programs. Programs are not cached when null.
+     */
+    private volatile ProgramCache programCache = new ProgramCache(1024, 1 << 20);
+
+    /**
+     * Creates a new {@link Calculator} using the built in functions and constants.
      *
      * @param output The object use for output.
      */
     public Calculator(CalculatorOutput output)
+    {
+        this(output, StandardLibrary.LIBRARY);
+    }
+
+    /**
+     * Creates a new {@link Calculator}.
+     *
+     * @param output  The object use for output.
+     * @param library The functions and constants available in the calculator, in addition to the ones defined by the
+     *                executed programs. The library is shared, not copied.
+     */
+    public Calculator(CalculatorOutput output, Library library)
+    {
+        this(output, new CalculatorMemory(library), new FunctionCollection(library));
+    }
+
+    /**
+     * Creates a new {@link Calculator} using the provided memory and functions.
+     *
+     * @param output    The object use for output.
+     * @param memory    The memory of the calculator.
+     * @param functions The functions defined in the calculator.
+     */
+    private Calculator(CalculatorOutput output, CalculatorMemory memory, FunctionCollection functions)
     {
         this.output = output;
+        this.memory = memory;
+        this.functions = functions;
         this.listener = new StatementListener(output, memory, functions);
-        addConstants();
-        addFunctions();
+        this.batchEvaluator = new BatchEvaluator(memory, functions, listener.visitor.getEvaluator());
+    }
+
+    /**
+     * Returns a copy of the calculator, writing to the same output. See {@link #fork(CalculatorOutput)}.
+     *
+     * @return The copy of the calculator.
+     */
+    public Calculator fork()
+    {
+        return fork(output);
     }
 
     /**
-     * Executes the provided code.
+     * Returns a copy of the calculator, containing the variables, constants and functions defined in the calculator.
+     * The copy and the calculator are independent: definitions in one are not visible in the other. The definitions
+     * are shared until they change, so the copy is created in constant time regardless of the number of definitions,
+     * and changing a definition only copies the part of the definitions containing it.
+     *
+     * The copy uses the same program cache, compilation, memoization, monitor and file command settings as the
+     * calculator. The calculator and the copy can be used from different threads.
+     *
+     * @param output The object used for output by the copy.
+     * @return The copy of the calculator.
+     */
+    public synchronized Calculator fork(CalculatorOutput output)
+    {
+        DoubleEvaluator evaluator = listener.visitor.getEvaluator();
+        Calculator      fork      = new Calculator(output, memory.snapshot(), functions.snapshot());
+        fork.programCache = programCache;
+
+        DoubleEvaluator forkEvaluator = fork.listener.visitor.getEvaluator();
+        if (evaluator.getCompiler() != null)
+            forkEvaluator.setCompiler(new FunctionCompiler(fork.memory, fork.functions));
+        forkEvaluator.setMemoizationEnabled(evaluator.isMemoizationEnabled());
+        forkEvaluator.setMonitor(evaluator.getMonitor());
+        fork.listener.setFileCommandsEnabled(listener.isFileCommandsEnabled());
+
+        return fork;
+    }
+
+    /**
+     * Executes the provided code. Programs executed concurrently on the same calculator are executed one at a time.
      *
      * @param program The program to execute.
      * @throws ProgramException When an exception occurs while executing the code.
      */
-    public void execute(String program) throws ProgramException
+    public synchronized void execute(String program) throws ProgramException
     {
         try {
-            CharStream        charStream = CharStreams.fromString(program);
-            CalculatorLexer   lexer      = new CalculatorLexer(charStream);
-            CommonTokenStream tokens     = new CommonTokenStream(lexer);
-            CalculatorParser  parser     = new CalculatorParser(tokens);
-            parser.removeErrorListeners();
-            parser.addErrorListener(new BaseErrorListener()
-            {
-                @Override public void syntaxError(
-                        Recognizer<?, ?> recognizer,
-                        Object offendingSymbol,
-                        int line,
-                        int charPositionInLine,
-                        String msg,
-                        RecognitionException e)
-                {
-                    output.error(msg);
-                }
-            });
-
-            CalculatorParser.ProgramContext programContext = parser.program();
+            CalculatorParser.ProgramContext programContext = parse(program);
             listener.enterProgram(programContext);
 
         } catch (Exception e) {
             output.error(e.getMessage());
+        } catch (StackOverflowError e) {
+            output.error(NESTING_ERROR);
         }
     }
 
     /**
-     * Adds the built in constants to the calculator.
+     * Executes the program read from the provided reader, one statement at a time. Each statement is parsed and
+     * executed as soon as its line has been read, and is discarded afterwards, so the results are output while the
+     * program is being read, and the memory used does not depend on the size of the program. The statements are not
+     * stored in the program cache, so that streaming a large program does not evict the programs of other sessions
+     * sharing the cache. Blank lines are ignored.
+     *
+     * Other programs may be executed on the calculator between the statements of the program.
+     *
+     * @param program The reader to read the program from. The reader is not closed.
+     * @throws IOException      When the program cannot be read.
+     * @throws ProgramException When an exception occurs while executing the code.
      */
-    public void addConstants()
+    public void execute(Reader program) throws IOException, ProgramException
     {
-        this.memory.addConstant("PI", Math.PI);
-        this.memory.addConstant("E", Math.E);
+        BufferedReader reader = program instanceof BufferedReader
+                ? (BufferedReader) program
+                : new BufferedReader(program, 1 << 16);
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty())
+                continue;
+
+            execute(CharStreams.fromString(line + '\n'));
+        }
     }
 
     /**
-     * Adds the built in functions to the calculator.
+     * Executes the UTF-8 encoded program read from the provided stream, one statement at a time.
+     *
+     * @param program The stream to read the program from. The stream is not closed.
+     * @throws IOException      When the program cannot be read.
+     * @throws ProgramException When an exception occurs while executing the code.
+     * @see #execute(Reader)
      */
-    public void addFunctions()
+    public void execute(InputStream program) throws IOException, ProgramException
     {
+        execute(new InputStreamReader(program, StandardCharsets.UTF_8));
+    }
 
-        this.functions.add(new PredefinedFunction("abs", 1, "abs(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.abs(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("acos", 1, "acos(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.acos(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("asin", 1, "asin(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.asin(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("atan", 1, "atan(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.atan(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("cbrt", 1, "cbrt(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.cbrt(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("ceil", 1, "ceil(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.ceil(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("cos", 1, "cos(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.cos(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("cosh", 1, "cosh(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.cosh(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("exp", 1, "exp(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.exp(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("floor", 1, "floor(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.floor(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("log", 1, "log(number)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.log(arguments.get(0)) / Math.E);
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("log", 2, "log(number,base)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.log(arguments.get(0)) / Math.log(arguments.get(1)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("max", 2, "max(a,b)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.max(arguments.get(0), arguments.get(1)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("min", 2, "min(a,b)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.min(arguments.get(0), arguments.get(1)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("pow", 2, "pow(a,b)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.pow(arguments.get(0), arguments.get(1)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("random", 0, "random()")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.random());
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("rint", 1, "rint(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.rint(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("root", 2, "root(a,b)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.pow(Math.E, Math.log(arguments.get(0)) / arguments.get(1)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("round", 1, "round(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success((double) Math.round(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("round", 2, "round(a,decimals)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                long   roundedFactor = Math.round(arguments.get(1));
-                double factor        = Math.pow((double) 10, (double) roundedFactor);
-                return ExpressionResult.success((double) Math.round(arguments.get(0) * factor) / factor);
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("signum", 1, "signum(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.signum(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("sin", 1, "sin(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.sin(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("sinh", 1, "sinh(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.sinh(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("sqrt", 1, "sqrt(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.sqrt(arguments.get(0)));
-            }
-        });
-
-        this.functions.add(new PredefinedFunction("tan", 1, "tan(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.tan(arguments.get(0)));
+    /**
+     * Executes the UTF-8 encoded program read from the provided channel, one statement at a time.
+     *
+     * @param program The channel to read the program from. The channel is not closed.
+     * @throws IOException      When the program cannot be read.
+     * @throws ProgramException When an exception occurs while executing the code.
+     * @see #execute(Reader)
+     */
+    public void execute(ReadableByteChannel program) throws IOException, ProgramException
+    {
+        execute(Channels.newReader(program, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    /**
+     * Executes the program in the provided file, one statement at a time. The file is memory mapped, and the
+     * statements are lexed directly from the mapped bytes, without decoding the file into a string first. The file
+     * may be larger than 2 GB. Blank lines are ignored.
+     *
+     * @param file The file containing the program.
+     * @throws IOException      When the file cannot be read.
+     * @throws ProgramException When an exception occurs while executing the code.
+     */
+    public void execute(Path file) throws IOException, ProgramException
+    {
+        new MappedProgram(MappedProgram.DEFAULT_WINDOW_SIZE).forEachLine(file, this::execute);
+    }
+
+    /**
+     * Executes the statement read from the provided stream, that ends with a line feed. Statements are not stored in
+     * the program cache, since they are only executed once, and the stream may only be valid during the execution.
+     *
+     * @param statement The stream to read the statement from.
+     */
+    private synchronized void execute(CharStream statement)
+    {
+        try {
+            ExecutionMonitor monitor = listener.visitor.getEvaluator().getMonitor();
+            long             start   = monitor == null ? 0 : System.nanoTime();
+            CalculatorParser.ProgramContext programContext = ProgramParser.get().parse(statement, output);
+            if (monitor != null) {
+                monitor.programParsed(statement.size() - 1, false, start, System.nanoTime());
             }
-        });
-
-        this.functions.add(new PredefinedFunction("tanh", 1, "tanh(a)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.tanh(arguments.get(0)));
+
+            listener.enterProgram(programContext);
+        } catch (Exception e) {
+            output.error(e.getMessage());
+        } catch (StackOverflowError e) {
+            output.error(NESTING_ERROR);
+        }
+    }
+
+    /**
+     * Parses the provided code. Programs without syntax errors are stored in the program cache, so that they are not
+     * parsed again when executed repeatedly.
+     *
+     * @param program The program to parse.
+     * @return The parsed program.
+     */
+    private CalculatorParser.ProgramContext parse(String program)
+    {
+        ExecutionMonitor monitor = listener.visitor.getEvaluator().getMonitor();
+        long             start   = monitor == null ? 0 : System.nanoTime();
+        ProgramCache     cache   = programCache;
+        if (cache != null) {
+            CalculatorParser.ProgramContext programContext = cache.get(program);
+            if (programContext != null) {
+                if (monitor != null) {
+                    monitor.programParsed(program.length(), true, start, System.nanoTime());
+                }
+
+                return programContext;
             }
-        });
-
-        this.functions.add(new PredefinedFunction("toDegrees", 1, "toDegrees(radians)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.toDegrees(arguments.get(0)));
+        }
+
+        ProgramParser                   parser         = ProgramParser.get();
+        CalculatorParser.ProgramContext programContext = parser.parse(program, output);
+        if (cache != null && parser.getNumberOfSyntaxErrors() == 0) {
+            cache.put(program, programContext);
+        }
+
+        if (monitor != null) {
+            monitor.programParsed(program.length(), false, start, System.nanoTime());
+        }
+
+        return programContext;
+    }
+
+    /**
+     * Saves the constants, variables and custom functions of the calculator to the provided file. The functions are
+     * saved in their parsed form, see {@link SessionSnapshot}.
+     *
+     * @param file The file to save the snapshot to.
+     * @throws IOException When the file cannot be written.
+     */
+    public synchronized void save(Path file) throws IOException
+    {
+        SessionSnapshot.save(memory, functions, file);
+    }
+
+    /**
+     * Restores the constants, variables and custom functions saved to the provided file using {@link #save(Path)},
+     * replacing the constants, variables and custom functions of the calculator. Restoring does not parse any source
+     * code. The calculator is left unchanged when the snapshot cannot be read.
+     *
+     * @param file The file containing the snapshot.
+     * @throws IOException      When the file cannot be read, or does not contain a valid snapshot.
+     * @throws RuntimeException When a constant or function in the snapshot is also defined by the library of the
+     *                          calculator.
+     */
+    public synchronized void load(Path file) throws IOException
+    {
+        SessionSnapshot.load(memory, functions, file);
+    }
+
+    /**
+     * Enables or disables the '!save' and '!load' commands, which read and write files on behalf of the executed
+     * programs. The commands are enabled by default. The Java API is not affected.
+     *
+     * @param enabled Whether or not the commands reading and writing files are enabled.
+     */
+    public synchronized void setFileCommandsEnabled(boolean enabled)
+    {
+        listener.setFileCommandsEnabled(enabled);
+    }
+
+    /**
+     * Evaluates the provided expression for every row in a batch. Variables are read from the column with the same
+     * name, or from the variables defined in the calculator when no such column exists.
+     *
+     * @param expression The expression to evaluate.
+     * @param columns    The columns containing the values of the variables.
+     * @param results    The array the results are written to. The length of the array is the number of rows.
+     * @throws RuntimeException When the expression cannot be parsed, or an error occurs during the evaluation.
+     */
+    public synchronized void evaluate(String expression, Map<String, double[]> columns, double[] results)
+    {
+        batchEvaluator.evaluate(parseExpression(expression), columns, results);
+    }
+
+    /**
+     * Calls the function with the provided name for every row in a batch.
+     *
+     * @param function  The name of the function to call.
+     * @param arguments The columns containing the arguments to the function, one column per parameter.
+     * @param results   The array the results are written to. The length of the array is the number of rows.
+     * @throws RuntimeException When no such function exists, or an error occurs during the evaluation.
+     */
+    public synchronized void call(String function, double[][] arguments, double[] results)
+    {
+        Function target = functions.get(ConcreteFunctionIdentifier.of(function, arguments.length));
+        if (target == null) {
+            throw new RuntimeException(String.format("No such function '%s'.", function));
+        }
+
+        batchEvaluator.call(target, arguments, results);
+    }
+
+    /**
+     * Evaluates the provided expression for every row in a batch in parallel, using the common fork join pool.
+     *
+     * @param expression The expression to evaluate.
+     * @param columns    The columns containing the values of the variables.
+     * @param rows       The number of rows.
+     * @return The results of the rows, in the same order as the rows.
+     * @throws RuntimeException When the expression cannot be parsed.
+     * @see #evaluateParallel(String, Map, int, Executor)
+     */
+    public BatchResult evaluateParallel(String expression, Map<String, double[]> columns, int rows)
+    {
+        return evaluateParallel(expression, columns, rows, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Evaluates the provided expression for every row in a batch in parallel. The rows are evaluated against a
+     * snapshot of the variables, constants and functions of the calculator, so that the calculator can be used while
+     * the rows are evaluated. Errors are reported for every row that fails.
+     *
+     * @param expression The expression to evaluate.
+     * @param columns    The columns containing the values of the variables.
+     * @param rows       The number of rows.
+     * @param executor   The executor evaluating the chunks of rows.
+     * @return The results of the rows, in the same order as the rows.
+     * @throws RuntimeException When the expression cannot be parsed.
+     */
+    public BatchResult evaluateParallel(String expression, Map<String, double[]> columns, int rows, Executor executor)
+    {
+        ExpressionNode     node;
+        CalculatorMemory   memorySnapshot;
+        FunctionCollection functionsSnapshot;
+        synchronized (this) {
+            node = parseExpression(expression);
+            memorySnapshot = memory.snapshot();
+            functionsSnapshot = functions.snapshot();
+        }
+
+        return new ParallelEvaluator(executor, ParallelEvaluator.DEFAULT_CHUNK_SIZE)
+                .evaluate(memorySnapshot, functionsSnapshot, node, columns, rows);
+    }
+
+    /**
+     * Calls the function with the provided name for every row in a batch in parallel, using the common fork join
+     * pool.
+     *
+     * @param function  The name of the function to call.
+     * @param arguments The columns containing the arguments to the function, one column per parameter.
+     * @param rows      The number of rows.
+     * @return The results of the rows, in the same order as the rows.
+     * @throws RuntimeException When no such function exists.
+     * @see #callParallel(String, double[][], int, Executor)
+     */
+    public BatchResult callParallel(String function, double[][] arguments, int rows)
+    {
+        return callParallel(function, arguments, rows, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Calls the function with the provided name for every row in a batch in parallel. The rows are evaluated against a
+     * snapshot of the constants and functions of the calculator. Errors are reported for every row that fails.
+     *
+     * @param function  The name of the function to call.
+     * @param arguments The columns containing the arguments to the function, one column per parameter.
+     * @param rows      The number of rows.
+     * @param executor  The executor evaluating the chunks of rows.
+     * @return The results of the rows, in the same order as the rows.
+     * @throws RuntimeException When no such function exists.
+     */
+    public BatchResult callParallel(String function, double[][] arguments, int rows, Executor executor)
+    {
+        Function           target;
+        CalculatorMemory   memorySnapshot;
+        FunctionCollection functionsSnapshot;
+        synchronized (this) {
+            target = functions.get(ConcreteFunctionIdentifier.of(function, arguments.length));
+            if (target == null) {
+                throw new RuntimeException(String.format("No such function '%s'.", function));
             }
-        });
-
-        this.functions.add(new PredefinedFunction("toRadians", 1, "toRadians(degrees)")
-        {
-            @Override
-            public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
-            {
-                return ExpressionResult.success(Math.toRadians(arguments.get(0)));
+
+            memorySnapshot = memory.snapshot();
+            functionsSnapshot = functions.snapshot();
+        }
+
+        return new ParallelEvaluator(executor, ParallelEvaluator.DEFAULT_CHUNK_SIZE)
+                .call(memorySnapshot, functionsSnapshot, target, arguments, rows);
+    }
+
+    /**
+     * Parses, lowers and folds the provided expression.
+     *
+     * @param expression The expression to parse.
+     * @return The lowered expression.
+     * @throws RuntimeException When the provided code is not a single expression.
+     */
+    private ExpressionNode parseExpression(String expression)
+    {
+        try {
+            ProgramParser                   parser         = ProgramParser.get();
+            CalculatorParser.ProgramContext programContext = parser.parse(expression + '\n', output);
+            if (parser.getNumberOfSyntaxErrors() > 0
+                    || programContext.statement().size() != 1
+                    || programContext.statement(0).expression() == null) {
+                throw new RuntimeException(String.format("'%s' is not an expression.", expression));
             }
-        });
+
+            ExpressionNode node = listener.visitor.getLowerer().lower(programContext.statement(0).expression());
+            return listener.folder.fold(node);
+        } catch (StackOverflowError e) {
+            throw new RuntimeException(NESTING_ERROR);
+        }
+    }
+
+    /**
+     * Returns the cache of parsed programs.
+     *
+     * @return The cache of parsed programs. Returns null when programs are not cached.
+     */
+    public ProgramCache getProgramCache()
+    {
+        return programCache;
+    }
+
+    /**
+     * Sets the cache of parsed programs.
+     *
+     * @param programCache The cache of parsed programs. Programs are not cached when null.
+     */
+    public void setProgramCache(ProgramCache programCache)
+    {
+        this.programCache = programCache;
+    }
+
+    /**
+     * Enables or disables the compilation of custom functions into classes. Custom functions that cannot be compiled
+     * are interpreted.
+     *
+     * @param enabled Whether or not custom functions should be compiled.
+     */
+    public synchronized void setCompilationEnabled(boolean enabled)
+    {
+        listener.visitor.getEvaluator().setCompiler(enabled ? new FunctionCompiler(memory, functions) : null);
+    }
+
+    /**
+     * Enables or disables the caching of the results of pure custom functions. Custom functions are pure when they
+     * do not call impure functions like random(), directly or through other functions.
+     *
+     * @param enabled Whether or not the results of pure custom functions should be cached.
+     */
+    public synchronized void setMemoizationEnabled(boolean enabled)
+    {
+        listener.visitor.getEvaluator().setMemoizationEnabled(enabled);
+    }
+
+    /**
+     * Returns the monitor notified of the parsing of programs, the execution of statements and the calls to custom
+     * functions.
+     *
+     * @return The installed monitor. Returns null when the execution is not monitored.
+     */
+    public synchronized ExecutionMonitor getMonitor()
+    {
+        return listener.visitor.getEvaluator().getMonitor();
+    }
+
+    /**
+     * Installs a monitor notified of the parsing of programs, the execution of statements and the calls to custom
+     * functions. Use {@link CalculatorMetrics} to collect metrics, and {@link FlightRecorderMonitor} to emit Flight
+     * Recorder events. When no monitor is installed, no timings are taken.
+     *
+     * @param monitor The monitor to install. Removes the installed monitor when null.
+     */
+    public synchronized void setMonitor(ExecutionMonitor monitor)
+    {
+        listener.visitor.getEvaluator().setMonitor(monitor);
     }
 }
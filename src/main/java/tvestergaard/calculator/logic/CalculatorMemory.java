@@ -1,34 +1,111 @@
 package tvestergaard.calculator.logic;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CalculatorMemory
 {
 
     /**
-     * The stacks of memory in the calculator.
+     * The source of the versions of the constants. Versions are unique across all memories, so that two memories
+     * have the same version only when they share the same constants.
      */
-    private final Stack<Map<String, Double>> stack = new Stack<>();
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+
+    /**
+     * The local scopes entered on top of the global scope.
+     */
+    private final Deque<Map<String, Double>> stack = new ArrayDeque<>();
+
+    /**
+     * The variables in the global scope.
+     */
+    private PersistentMap<String, Double> variables = PersistentMap.empty();
 
     /**
      * The constants in the memory.
      */
-    private final Map<String, Double> constants = new HashMap<>();
+    private PersistentMap<String, Double> constants = PersistentMap.empty();
+
+    /**
+     * The dependency graph of the reactive variables in the global scope.
+     */
+    private BindingGraph bindings = new BindingGraph();
+
+    /**
+     * The version of the constants. The version changes every time a constant is added to the memory.
+     */
+    private int version = VERSIONS.incrementAndGet();
 
     /**
-     * The number of scopes in the calculator.
+     * The library containing the constants available in addition to the constants in the memory.
      */
-    private int scopeCount = 1;
+    private final Library library;
 
     /**
      * Initializes the global scope.
      */
     public CalculatorMemory()
     {
-        this.stack.add(new HashMap<>());
+        this(Library.EMPTY);
+    }
+
+    /**
+     * Initializes the global scope.
+     *
+     * @param library The library containing the constants available in addition to the constants in the memory.
+     */
+    public CalculatorMemory(Library library)
+    {
+        this.library = library;
+    }
+
+    /**
+     * Returns a copy of the memory, containing the constants, the variables in the global scope and their bindings.
+     * The copy shares the library of the memory, and is not affected by later changes to the memory, nor is the
+     * memory affected by changes to the copy. The constants and variables are shared until they are changed, so the
+     * copy is created in constant time.
+     *
+     * @return The copy of the memory.
+     */
+    public CalculatorMemory snapshot()
+    {
+        CalculatorMemory snapshot = new CalculatorMemory(library);
+        snapshot.variables = variables;
+        snapshot.constants = constants;
+        snapshot.bindings = bindings.snapshot();
+        snapshot.version = version;
+        return snapshot;
+    }
+
+    /**
+     * Replaces the constants, variables and bindings in the memory. Used when restoring a {@link SessionSnapshot}.
+     *
+     * @param constants The new constants.
+     * @param variables The new variables in the global scope.
+     * @param scopes    The new local scopes, starting with the outermost scope.
+     * @param bindings  The new bindings of the variables in the global scope.
+     */
+    void restore(
+            PersistentMap<String, Double> constants,
+            PersistentMap<String, Double> variables,
+            List<Map<String, Double>> scopes,
+            BindingGraph bindings)
+    {
+        this.constants = constants;
+        this.variables = variables;
+        this.bindings = bindings;
+        this.version = VERSIONS.incrementAndGet();
+        this.stack.clear();
+        for (Map<String, Double> scope : scopes)
+            this.stack.push(new HashMap<>(scope));
     }
 
     /**
@@ -39,7 +116,6 @@ public class CalculatorMemory
     public void enterScope(Map<String, Double> variables)
     {
         this.stack.push(variables);
-        this.scopeCount++;
     }
 
     /**
@@ -47,12 +123,11 @@ public class CalculatorMemory
      */
     public void exitScope()
     {
-        if (this.stack.size() == 1) {
+        if (this.stack.isEmpty()) {
             throw new RuntimeException("Attempted to exit global scope.");
         }
 
         this.stack.pop();
-        this.scopeCount--;
     }
 
     /**
@@ -63,11 +138,12 @@ public class CalculatorMemory
      */
     public void addConstant(String name, Double value)
     {
-        if (this.constants.containsKey(name)) {
+        if (this.constants.containsKey(name) || library.getConstant(name) != null) {
             throw new RuntimeException(String.format("Constant '%s' already exists.", name));
         }
 
-        this.constants.put(name, value);
+        this.constants = constants.with(name, value);
+        this.version = VERSIONS.incrementAndGet();
     }
 
     /**
@@ -78,11 +154,17 @@ public class CalculatorMemory
      */
     public void addVariable(String name, Double value)
     {
-        if (this.constants.containsKey(name)) {
+        if (this.constants.containsKey(name) || library.getConstant(name) != null) {
             throw new RuntimeException(String.format("A constant with the name '%s' already exists.", name));
         }
 
-        this.stack.peek().put(name, value);
+        Map<String, Double> scope = this.stack.peek();
+        if (scope == null) {
+            this.variables = variables.with(name, value);
+            return;
+        }
+
+        scope.put(name, value);
     }
 
     /**
@@ -93,11 +175,16 @@ public class CalculatorMemory
      */
     public Double getValue(String name)
     {
+        Double constant = library.getConstant(name);
+        if (constant != null) {
+            return constant;
+        }
+
         if (this.constants.containsKey(name)) {
             return this.constants.get(name);
         }
 
-        Map<String, Double> scope = this.stack.peek();
+        Map<String, Double> scope = getScope();
         if (!scope.containsKey(name)) {
             throw new RuntimeException(String.format("No variable with name '%s'.", name));
         }
@@ -105,6 +192,22 @@ public class CalculatorMemory
         return scope.get(name);
     }
 
+    /**
+     * Returns the value of the constant with the provided name.
+     *
+     * @param name The name of the constant.
+     * @return The value of the constant. Returns null if no such constant exists.
+     */
+    public Double getConstant(String name)
+    {
+        Double constant = library.getConstant(name);
+        if (constant != null) {
+            return constant;
+        }
+
+        return this.constants.get(name);
+    }
+
     /**
      * Checks if a memory location with the given name exists.
      *
@@ -113,11 +216,11 @@ public class CalculatorMemory
      */
     public boolean hasValue(String name)
     {
-        if (this.constants.containsKey(name)) {
+        if (this.constants.containsKey(name) || library.getConstant(name) != null) {
             return true;
         }
 
-        return this.stack.peek().containsKey(name);
+        return getScope().containsKey(name);
     }
 
     /**
@@ -127,7 +230,85 @@ public class CalculatorMemory
      */
     public Map<String, Double> getVariables()
     {
-        return Collections.unmodifiableMap(stack.peek());
+        return Collections.unmodifiableMap(getScope());
+    }
+
+    /**
+     * Returns the variables in the current scope.
+     *
+     * @return The variables in the current scope.
+     */
+    private Map<String, Double> getScope()
+    {
+        Map<String, Double> scope = stack.peek();
+        return scope == null ? variables : scope;
+    }
+
+    /**
+     * Returns the number of constants defined in memory.
+     *
+     * @return The number of constants defined in memory.
+     */
+    public int getConstantCount()
+    {
+        return library.getConstants().size() + constants.size();
+    }
+
+    /**
+     * Returns the dependency graph of the reactive variables in the global scope.
+     *
+     * @return The dependency graph of the reactive variables.
+     */
+    public BindingGraph getBindings()
+    {
+        return bindings;
+    }
+
+    /**
+     * Returns the version of the constants in memory. The version changes every time a constant is added, and is
+     * unique across all memories, except the copies created using {@link #snapshot()} that have not been changed
+     * since, which contain the same constants. Values depending on the constants can therefore be cached using the
+     * version, also when the cache is shared between memories.
+     *
+     * @return The version of the constants in memory.
+     */
+    public int getConstantsVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns the constants defined in memory, excluding the constants in the library.
+     *
+     * @return The constants defined in memory.
+     */
+    Map<String, Double> getDefinedConstants()
+    {
+        return constants;
+    }
+
+    /**
+     * Returns the library containing the constants available in addition to the constants in the memory.
+     *
+     * @return The library of the memory.
+     */
+    Library getLibrary()
+    {
+        return library;
+    }
+
+    /**
+     * Returns the global scope followed by the local scopes, starting with the outermost scope.
+     *
+     * @return The scopes in memory.
+     */
+    List<Map<String, Double>> getScopes()
+    {
+        List<Map<String, Double>> scopes = new ArrayList<>(stack.size() + 1);
+        scopes.add(variables);
+        for (Iterator<Map<String, Double>> iterator = stack.descendingIterator(); iterator.hasNext(); )
+            scopes.add(iterator.next());
+        return scopes;
     }
 
     /**
@@ -137,6 +318,8 @@ public class CalculatorMemory
      */
     public Map<String, Double> getConstants()
     {
-        return Collections.unmodifiableMap(constants);
+        Map<String, Double> result = new HashMap<>(library.getConstants());
+        result.putAll(constants);
+        return Collections.unmodifiableMap(result);
     }
 }
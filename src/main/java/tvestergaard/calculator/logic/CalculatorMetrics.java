@@ -0,0 +1,200 @@
+package tvestergaard.calculator.logic;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects counters and latency histograms of the parsing of programs, the execution of statements by their type,
+ * and the calls to custom functions by their signature. The metrics are readable from Java, and over JMX once
+ * registered using {@link #register(String)}. The same metrics can be installed on multiple calculators.
+ */
+public class CalculatorMetrics implements ExecutionMonitor, CalculatorMetricsMXBean
+{
+
+    /**
+     * The latencies of the parsing of programs.
+     */
+    private volatile LatencyHistogram parses = new LatencyHistogram();
+
+    /**
+     * The number of programs found in the program cache.
+     */
+    private volatile LongAdder cachedParses = new LongAdder();
+
+    /**
+     * The latencies of the execution of statements, indexed by the ordinal of their type.
+     */
+    private volatile LatencyHistogram[] statements = createStatementHistograms();
+
+    /**
+     * The latencies of the calls to custom functions by the signature of the functions.
+     */
+    private volatile ConcurrentMap<String, LatencyHistogram> functions = new ConcurrentHashMap<>();
+
+    @Override public void programParsed(int length, boolean cached, long start, long end)
+    {
+        parses.record(end - start);
+        if (cached) {
+            cachedParses.increment();
+        }
+    }
+
+    @Override public void statementExecuted(StatementType type, long start, long end)
+    {
+        statements[type.ordinal()].record(end - start);
+    }
+
+    @Override public void functionCalled(Function function, int depth, long start, long end)
+    {
+        ConcurrentMap<String, LatencyHistogram> functions = this.functions;
+        LatencyHistogram                        histogram = functions.get(function.getSignature());
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = functions.putIfAbsent(function.getSignature(), created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+
+        histogram.record(end - start);
+    }
+
+    /**
+     * Returns the latencies of the parsing of programs.
+     *
+     * @return The latencies of the parsing of programs.
+     */
+    public LatencyHistogram getParseHistogram()
+    {
+        return parses;
+    }
+
+    /**
+     * Returns the latencies of the execution of statements of the provided type.
+     *
+     * @param type The type of the statements.
+     * @return The latencies of the execution of statements of the provided type.
+     */
+    public LatencyHistogram getStatementHistogram(StatementType type)
+    {
+        return statements[type.ordinal()];
+    }
+
+    /**
+     * Returns the latencies of the calls to custom functions by the signature of the functions.
+     *
+     * @return The latencies of the calls to custom functions by the signature of the functions.
+     */
+    public Map<String, LatencyHistogram> getFunctionHistograms()
+    {
+        return Collections.unmodifiableMap(functions);
+    }
+
+    @Override public long getParseCount()
+    {
+        return parses.getCount();
+    }
+
+    @Override public long getCachedParseCount()
+    {
+        return cachedParses.sum();
+    }
+
+    @Override public double getParseMeanNanos()
+    {
+        return parses.getMeanNanos();
+    }
+
+    @Override public long getParseP99Nanos()
+    {
+        return parses.getPercentileNanos(99);
+    }
+
+    @Override public Map<String, Long> getStatementCounts()
+    {
+        Map<String, Long> counts = new TreeMap<>();
+        for (StatementType type : StatementType.values())
+            counts.put(type.name(), statements[type.ordinal()].getCount());
+
+        return counts;
+    }
+
+    @Override public Map<String, Double> getStatementMeanNanos()
+    {
+        Map<String, Double> means = new TreeMap<>();
+        for (StatementType type : StatementType.values())
+            means.put(type.name(), statements[type.ordinal()].getMeanNanos());
+
+        return means;
+    }
+
+    @Override public Map<String, Long> getFunctionCallCounts()
+    {
+        Map<String, Long> counts = new TreeMap<>();
+        functions.forEach((signature, histogram) -> counts.put(signature, histogram.getCount()));
+        return counts;
+    }
+
+    @Override public Map<String, Double> getFunctionMeanNanos()
+    {
+        Map<String, Double> means = new TreeMap<>();
+        functions.forEach((signature, histogram) -> means.put(signature, histogram.getMeanNanos()));
+        return means;
+    }
+
+    @Override public Map<String, Long> getFunctionP99Nanos()
+    {
+        Map<String, Long> percentiles = new TreeMap<>();
+        functions.forEach((signature, histogram) -> percentiles.put(signature, histogram.getPercentileNanos(99)));
+        return percentiles;
+    }
+
+    @Override public void reset()
+    {
+        parses = new LatencyHistogram();
+        cachedParses = new LongAdder();
+        statements = createStatementHistograms();
+        functions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @param name The value of the name key of the registered object name.
+     * @return The object name the metrics were registered under.
+     * @throws RuntimeException When the metrics could not be registered.
+     */
+    public ObjectName register(String name)
+    {
+        try {
+            ObjectName objectName = new ObjectName(
+                    "tvestergaard.calculator:type=CalculatorMetrics,name=" + ObjectName.quote(name)
+            );
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Could not register the calculator metrics.", e);
+        }
+    }
+
+    /**
+     * Creates the latency histograms of the execution of statements.
+     *
+     * @return The latency histograms, indexed by the ordinal of the type of the statements.
+     */
+    private static LatencyHistogram[] createStatementHistograms()
+    {
+        LatencyHistogram[] histograms = new LatencyHistogram[StatementType.values().length];
+        for (int x = 0; x < histograms.length; x++)
+            histograms[x] = new LatencyHistogram();
+
+        return histograms;
+    }
+}
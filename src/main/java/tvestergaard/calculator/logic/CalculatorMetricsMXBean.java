@@ -0,0 +1,78 @@
+package tvestergaard.calculator.logic;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link CalculatorMetrics}, exposing the metrics over JMX.
+ */
+public interface CalculatorMetricsMXBean
+{
+
+    /**
+     * Returns the number of parsed programs, including the programs found in the program cache.
+     *
+     * @return The number of parsed programs.
+     */
+    long getParseCount();
+
+    /**
+     * Returns the number of programs found in the program cache.
+     *
+     * @return The number of programs found in the program cache.
+     */
+    long getCachedParseCount();
+
+    /**
+     * Returns the mean time spent parsing a program.
+     *
+     * @return The mean time spent parsing a program in nanoseconds.
+     */
+    double getParseMeanNanos();
+
+    /**
+     * Returns the 99th percentile of the time spent parsing a program.
+     *
+     * @return The 99th percentile of the time spent parsing a program in nanoseconds.
+     */
+    long getParseP99Nanos();
+
+    /**
+     * Returns the number of executed statements by the type of the statements.
+     *
+     * @return The number of executed statements by the type of the statements.
+     */
+    Map<String, Long> getStatementCounts();
+
+    /**
+     * Returns the mean time spent executing a statement by the type of the statements.
+     *
+     * @return The mean time spent executing a statement in nanoseconds by the type of the statements.
+     */
+    Map<String, Double> getStatementMeanNanos();
+
+    /**
+     * Returns the number of calls to custom functions by the signature of the functions.
+     *
+     * @return The number of calls to custom functions by the signature of the functions.
+     */
+    Map<String, Long> getFunctionCallCounts();
+
+    /**
+     * Returns the mean time spent in a call to a custom function by the signature of the functions.
+     *
+     * @return The mean time spent in a call in nanoseconds by the signature of the functions.
+     */
+    Map<String, Double> getFunctionMeanNanos();
+
+    /**
+     * Returns the 99th percentile of the time spent in a call to a custom function by the signature of the functions.
+     *
+     * @return The 99th percentile of the time spent in a call in nanoseconds by the signature of the functions.
+     */
+    Map<String, Long> getFunctionP99Nanos();
+
+    /**
+     * Discards all recorded metrics.
+     */
+    void reset();
+}
@@ -49,4 +49,31 @@ public interface CalculatorOutput
      * @param value The value of the argument provided to the command.
      */
     void printValues(Double value);
+
+    /**
+     * Called when the 'explain' command is called. This handle is called once for every explained expression or
+     * custom function.
+     *
+     * @param expression  The explained expression, or the signature of the explained function.
+     * @param explanation The expression with the constant subtrees folded.
+     */
+    void printExplanation(String expression, String explanation);
+
+    /**
+     * Called when the 'caches' command is called. This handle is called once for every custom function whose results
+     * can be cached.
+     *
+     * @param signature The signature of the function.
+     * @param cache     The cache of the results of the function.
+     */
+    void printCache(String signature, FunctionCache cache);
+
+    /**
+     * Called when the 'profile' command ends profiling. This handle is called once for every function called while
+     * profiling, starting with the function with the most time spent in its body.
+     *
+     * @param signature The signature of the function.
+     * @param profile   The time spent calling the function.
+     */
+    void printProfile(String signature, FunctionProfile profile);
 }
@@ -0,0 +1,177 @@
+package tvestergaard.calculator.logic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A function call in the lowered expression tree. The identifier of the called function is resolved once, when the
+ * tree is lowered.
+ *
+ * The node caches the functions it resolves to. The cache is keyed on the version of the collection the function
+ * was resolved in, which is unique across collections that contain different functions, so the cache is invalidated
+ * when functions are added to the collection. Parsed programs are shared by calculators with different functions, so
+ * the resolutions of the most recently used versions are kept. Apart from the cache, the node is immutable.
+ */
+public class CallNode implements ExpressionNode
+{
+
+    /**
+     * The maximum number of versions of the functions the called function is kept for.
+     */
+    private static final int MAXIMUM_SITES = 4;
+
+    /**
+     * The resolutions of a node that has not been evaluated.
+     */
+    private static final CallSite[] NO_SITES = new CallSite[0];
+
+    /**
+     * The name of the called function.
+     */
+    private final String name;
+
+    /**
+     * The expressions that are evaluated as arguments to the function.
+     */
+    private final ExpressionNode[] arguments;
+
+    /**
+     * The identifier of the called function.
+     */
+    private final ConcreteFunctionIdentifier identifier;
+
+    /**
+     * The resolutions of the called function for the most recently used versions of the functions, most recently
+     * resolved first.
+     */
+    private volatile CallSite[] sites = NO_SITES;
+
+    /**
+     * Creates a new {@link CallNode}.
+     *
+     * @param name      The name of the called function.
+     * @param arguments The expressions that are evaluated as arguments to the function.
+     */
+    public CallNode(String name, List<ExpressionNode> arguments)
+    {
+        assert name != null;
+        assert arguments != null;
+
+        this.name = name;
+        this.arguments = arguments.toArray(new ExpressionNode[arguments.size()]);
+        this.identifier = new ConcreteFunctionIdentifier(name, this.arguments.length);
+    }
+
+    /**
+     * Returns the name of the called function.
+     *
+     * @return The name of the called function.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the identifier of the called function.
+     *
+     * @return The identifier of the called function.
+     */
+    public ConcreteFunctionIdentifier getIdentifier()
+    {
+        return identifier;
+    }
+
+    /**
+     * Returns the called function.
+     *
+     * @param functions The functions that can be called.
+     * @return The called function. Returns null if no such function exists.
+     */
+    public Function resolve(FunctionCollection functions)
+    {
+        int        version = functions.getVersion();
+        CallSite[] sites   = this.sites;
+        for (CallSite site : sites)
+            if (site.version == version)
+                return site.target;
+
+        Function   target  = functions.get(identifier);
+        CallSite[] updated = new CallSite[Math.min(sites.length + 1, MAXIMUM_SITES)];
+        updated[0] = new CallSite(version, target);
+        System.arraycopy(sites, 0, updated, 1, updated.length - 1);
+        this.sites = updated;
+        return target;
+    }
+
+    /**
+     * Returns the number of arguments passed to the function.
+     *
+     * @return The number of arguments passed to the function.
+     */
+    public int getArgumentCount()
+    {
+        return arguments.length;
+    }
+
+    /**
+     * Returns the argument at the provided index.
+     *
+     * @param index The index of the argument to return.
+     * @return The argument at the provided index.
+     */
+    public ExpressionNode getArgument(int index)
+    {
+        return arguments[index];
+    }
+
+    /**
+     * Returns the expressions that are evaluated as arguments to the function.
+     *
+     * @return The expressions that are evaluated as arguments to the function.
+     */
+    public List<ExpressionNode> getArguments()
+    {
+        return Collections.unmodifiableList(Arrays.asList(arguments));
+    }
+
+    @Override public <T> T accept(NodeVisitor<T> visitor)
+    {
+        return visitor.visitCall(this);
+    }
+
+    @Override public double accept(DoubleNodeVisitor visitor)
+    {
+        return visitor.visitCall(this);
+    }
+
+    /**
+     * The resolution of the called function in a version of the functions.
+     */
+    private static class CallSite
+    {
+
+        /**
+         * The version of the collection, when the function was resolved.
+         */
+        private final int version;
+
+        /**
+         * The resolved function. Is null when no such function exists.
+         */
+        private final Function target;
+
+        /**
+         * Creates a new {@link CallSite}.
+         *
+         * @param version The version of the collection, when the function was resolved.
+         * @param target  The resolved function.
+         */
+        CallSite(int version, Function target)
+        {
+            this.version = version;
+            this.target = target;
+        }
+    }
+}
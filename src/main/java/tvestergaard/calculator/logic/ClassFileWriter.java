@@ -0,0 +1,257 @@
+package tvestergaard.calculator.logic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the bytes of a minimal class file. The writer supports the constant pool entries and the attributes needed
+ * by the {@link FunctionCompiler}, and nothing more. Methods must not contain branches, since no stack map frames are
+ * written.
+ */
+public class ClassFileWriter
+{
+
+    /**
+     * The version of the written class files (Java 8).
+     */
+    private static final int MAJOR_VERSION = 52;
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_FINAL  = 0x0010;
+    public static final int ACC_SUPER  = 0x0020;
+
+    /**
+     * The constant pool of the class file.
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /**
+     * The entries in the constant pool, mapped to their index.
+     */
+    private final Map<String, Integer> entries = new HashMap<>();
+
+    /**
+     * The methods in the class file.
+     */
+    private final List<byte[]> methods = new ArrayList<>();
+
+    /**
+     * The index of the next constant pool entry.
+     */
+    private int next = 1;
+
+    /**
+     * The index of the class being written.
+     */
+    private final int thisClass;
+
+    /**
+     * The index of the super class of the class being written.
+     */
+    private final int superClass;
+
+    /**
+     * Creates a new {@link ClassFileWriter}.
+     *
+     * @param name       The internal name of the class to write.
+     * @param superClass The internal name of the super class of the class to write.
+     */
+    public ClassFileWriter(String name, String superClass)
+    {
+        this.thisClass = classEntry(name);
+        this.superClass = classEntry(superClass);
+    }
+
+    /**
+     * Returns the index of the utf8 entry with the provided value.
+     *
+     * @param value The value of the entry.
+     * @return The index of the entry.
+     */
+    public int utf8Entry(String value)
+    {
+        return entry("utf8:" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    /**
+     * Returns the index of the class entry with the provided internal name.
+     *
+     * @param name The internal name of the class.
+     * @return The index of the entry.
+     */
+    public int classEntry(String name)
+    {
+        int nameIndex = utf8Entry(name);
+        return entry("class:" + name, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    /**
+     * Returns the index of the double entry with the provided value.
+     *
+     * @param value The value of the entry.
+     * @return The index of the entry.
+     */
+    public int doubleEntry(double value)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        return entry("double:" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    /**
+     * Returns the index of the method reference entry with the provided owner, name and descriptor.
+     *
+     * @param owner      The internal name of the class declaring the method.
+     * @param name       The name of the method.
+     * @param descriptor The descriptor of the method.
+     * @return The index of the entry.
+     */
+    public int methodEntry(String owner, String name, String descriptor)
+    {
+        int ownerIndex       = classEntry(owner);
+        int nameIndex        = utf8Entry(name);
+        int descriptorIndex  = utf8Entry(descriptor);
+        int nameAndTypeIndex = entry("nameAndType:" + name + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+
+        return entry("method:" + owner + "." + name + descriptor, 1, out -> {
+            out.writeByte(10);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    /**
+     * Adds a method to the class file.
+     *
+     * @param access     The access flags of the method.
+     * @param name       The name of the method.
+     * @param descriptor The descriptor of the method.
+     * @param maxStack   The maximum depth of the operand stack of the method.
+     * @param maxLocals  The number of local variables of the method.
+     * @param code       The bytecode of the method.
+     */
+    public void addMethod(int access, String name, String descriptor, int maxStack, int maxLocals, byte[] code)
+    {
+        int nameIndex       = utf8Entry(name);
+        int descriptorIndex = utf8Entry(descriptor);
+        int codeIndex       = utf8Entry("Code");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream      out   = new DataOutputStream(bytes);
+
+        try {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+            out.writeShort(codeIndex);
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        methods.add(bytes.toByteArray());
+    }
+
+    /**
+     * Returns the bytes of the class file.
+     *
+     * @param access The access flags of the class.
+     * @return The bytes of the class file.
+     */
+    public byte[] toByteArray(int access)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream      out   = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(next);
+            pool.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods)
+                out.write(method);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an entry to the constant pool, if no entry with the provided key exists.
+     *
+     * @param key    The key identifying the entry.
+     * @param size   The number of indices used by the entry.
+     * @param writer The object writing the entry to the constant pool.
+     * @return The index of the entry.
+     */
+    private int entry(String key, int size, EntryWriter writer)
+    {
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        try {
+            writer.write(new DataOutputStream(pool));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        index = next;
+        next += size;
+        if (next > 0xFFFF) {
+            throw new RuntimeException("The constant pool of the class is too large.");
+        }
+
+        entries.put(key, index);
+        return index;
+    }
+
+    /**
+     * Writes an entry to the constant pool.
+     */
+    private interface EntryWriter
+    {
+
+        /**
+         * Writes the entry to the provided output.
+         *
+         * @param out The output to write the entry to.
+         * @throws IOException When the entry could not be written.
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,111 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * The body of a custom function that has been compiled into a class by the {@link FunctionCompiler}. Generated
+ * subclasses implement {@link #apply(DoubleEvaluator, double[], int)}.
+ */
+public abstract class CompiledBody
+{
+
+    /**
+     * The functions called by the compiled body, that are not compiled into direct calls.
+     */
+    private final Function[] targets;
+
+    /**
+     * Creates a new {@link CompiledBody}.
+     *
+     * @param targets The functions called by the compiled body, that are not compiled into direct calls.
+     */
+    protected CompiledBody(Function[] targets)
+    {
+        this.targets = targets;
+    }
+
+    /**
+     * Evaluates the compiled body.
+     *
+     * @param evaluator The evaluator that is used when calling other functions.
+     * @param arguments The array containing the arguments passed to the function.
+     * @param offset    The index of the first argument in the array.
+     * @return The result of the evaluation.
+     */
+    public abstract double apply(DoubleEvaluator evaluator, double[] arguments, int offset);
+
+    /**
+     * Evaluates the compiled body. Errors are reported through {@link DoubleEvaluator#error(String)}.
+     *
+     * @param evaluator The evaluator that is used when calling other functions.
+     * @param arguments The array containing the arguments passed to the function.
+     * @param offset    The index of the first argument in the array.
+     * @return The result of the evaluation.
+     */
+    public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+    {
+        int top = evaluator.getTop();
+        try {
+            return apply(evaluator, arguments, offset);
+        } catch (CallError e) {
+            return Double.NaN;
+        } finally {
+            evaluator.setTop(top);
+        }
+    }
+
+    /**
+     * Calls one of the functions called by the compiled body, with the arguments pushed onto the stack of the evaluator
+     * using {@link DoubleEvaluator#push(double)}. Called from the generated subclasses.
+     *
+     * @param target        The index of the function to call.
+     * @param evaluator     The evaluator that is used when calling the function.
+     * @param argumentCount The number of arguments on top of the stack of the evaluator.
+     * @return The result of the function call.
+     */
+    protected final double call(int target, DoubleEvaluator evaluator, int argumentCount)
+    {
+        double result = evaluator.call(targets[target], argumentCount);
+        if (evaluator.hasError()) {
+            throw CallError.INSTANCE;
+        }
+
+        return result;
+    }
+
+    /**
+     * Divides the provided values. Called from the generated subclasses.
+     *
+     * @param left  The dividend.
+     * @param right The divisor.
+     * @return The quotient.
+     */
+    public static double divide(double left, double right)
+    {
+        if (right == 0) {
+            throw new RuntimeException("You cannot divide by 0.");
+        }
+
+        return left / right;
+    }
+
+    /**
+     * Unwinds the compiled body, when a called function has reported an error to the evaluator.
+     */
+    private static class CallError extends RuntimeException
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The shared instance. The error itself is kept by the evaluator.
+         */
+        static final CallError INSTANCE = new CallError();
+
+        /**
+         * Creates a new {@link CallError}.
+         */
+        private CallError()
+        {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package tvestergaard.calculator.logic;
 
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-
-import static tvestergaard.calculator.antlr.CalculatorParser.ExpressionContext;
 
 public class ConcreteCustomFunction extends AbstractFunction implements CustomFunction
 {
 
+    /**
+     * The maximum number of versions of the constants the resolved expression is kept for.
+     */
+    private static final int MAXIMUM_RESOLUTIONS = 4;
+
+    /**
+     * The resolved expressions of a function that has not been called.
+     */
+    private static final Resolution[] NO_RESOLUTIONS = new Resolution[0];
+
     /**
      * The parameters that the function accepts.
      */
@@ -23,27 +28,65 @@ public class ConcreteCustomFunction extends AbstractFunction implements CustomFu
     /**
      * The expression that is executed when the function is called.
      */
-    private ExpressionContext expressionContext;
+    private ExpressionNode expression;
+
+    /**
+     * Whether or not the function is pure.
+     */
+    private final boolean pure;
+
+    /**
+     * The cache of the results of the function. Is null when the function is not pure.
+     */
+    private final FunctionCache cache;
+
+    /**
+     * The expression that is executed when the function is called, with references to the parameters resolved, for
+     * the most recently used versions of the constants, most recently resolved first. The function may be shared by
+     * calculators with different constants, so that one expression per version is kept.
+     */
+    private volatile Resolution[] resolutions = NO_RESOLUTIONS;
+
+    /**
+     * Creates a new custom function.
+     *
+     * @param name       The name of the function.
+     * @param parameters The parameters of the function.
+     * @param signature  The signature of the function.
+     * @param expression The expression that is executed when the function is called.
+     */
+    public ConcreteCustomFunction(String name, List<String> parameters, String signature, ExpressionNode expression)
+    {
+        this(name, parameters, signature, expression, false);
+    }
 
     /**
      * Creates a new custom function.
      *
-     * @param name              The name of the function.
-     * @param parameters        The parameters of the function.
-     * @param signature         The signature of the function.
-     * @param expressionContext The expression that is executed when the function is called.
+     * @param name       The name of the function.
+     * @param parameters The parameters of the function.
+     * @param signature  The signature of the function.
+     * @param expression The expression that is executed when the function is called.
+     * @param pure       Whether or not the expression only calls pure functions.
      */
-    public ConcreteCustomFunction(String name, List<String> parameters, String signature, ExpressionContext expressionContext)
+    public ConcreteCustomFunction(
+            String name,
+            List<String> parameters,
+            String signature,
+            ExpressionNode expression,
+            boolean pure)
     {
         super(name, parameters.size());
 
         assert parameters != null;
         assert signature != null;
-        assert expressionContext != null;
+        assert expression != null;
 
         this.parameters = parameters;
         this.signature = signature;
-        this.expressionContext = expressionContext;
+        this.expression = expression;
+        this.pure = pure;
+        this.cache = pure ? new FunctionCache(parameters.size(), FunctionCache.DEFAULT_SIZE) : null;
     }
 
     /**
@@ -59,29 +102,141 @@ public class ConcreteCustomFunction extends AbstractFunction implements CustomFu
     /**
      * Calls the function.
      *
-     * @param visitor   The visitor that is used when executing the function.
-     * @param memory    The memory of the calculator.
-     * @param arguments The arguments to pass to the function.
+     * @param evaluator The evaluator that is used when executing the function.
+     * @param arguments The array containing the arguments to pass to the function.
+     * @param offset    The index of the first argument in the array.
      * @return The result of the function call.
      */
-    @Override public ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments)
+    @Override public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
     {
-        if (arguments.size() != this.getParameterCount()) {
-            throw new RuntimeException(String.format("Function '%s' takes %d arguments, %d provided.", getSignature(), this.getParameterCount(), arguments.size()));
+        ExecutionMonitor monitor = evaluator.getMonitor();
+        if (monitor != null) {
+            return monitor(monitor, evaluator, arguments, offset);
         }
 
-        Map<String, Double> namedArguments = new HashMap<>();
-        Iterator<String>    i1             = this.parameters.iterator();
-        Iterator<Double>    i2             = arguments.iterator();
-        while (i1.hasNext() && i2.hasNext())
-            namedArguments.put(i1.next(), i2.next());
+        return dispatch(evaluator, arguments, offset);
+    }
+
+    /**
+     * Calls the function, notifying the provided monitor when the call returns.
+     *
+     * @param monitor   The monitor to notify.
+     * @param evaluator The evaluator that is used when executing the function.
+     * @param arguments The array containing the arguments to pass to the function.
+     * @param offset    The index of the first argument in the array.
+     * @return The result of the function.
+     */
+    private double monitor(ExecutionMonitor monitor, DoubleEvaluator evaluator, double[] arguments, int offset)
+    {
+        int  depth = evaluator.enterCall();
+        long start = System.nanoTime();
+        try {
+            return dispatch(evaluator, arguments, offset);
+        } finally {
+            evaluator.exitCall();
+            monitor.functionCalled(this, depth, start, System.nanoTime());
+        }
+    }
+
+    /**
+     * Calls the function, using the cache of the function when memoization is enabled.
+     *
+     * @param evaluator The evaluator that is used when executing the function.
+     * @param arguments The array containing the arguments to pass to the function.
+     * @param offset    The index of the first argument in the array.
+     * @return The result of the function.
+     */
+    private double dispatch(DoubleEvaluator evaluator, double[] arguments, int offset)
+    {
+        if (cache != null && evaluator.isMemoizationEnabled()) {
+            return memoize(evaluator, arguments, offset);
+        }
+
+        return evaluate(evaluator, arguments, offset);
+    }
+
+    /**
+     * Calls the function, using the cached result when the function has been called with the same arguments before.
+     * The cached results are discarded when constants have been defined, since constants take precedence over
+     * parameters.
+     *
+     * @param evaluator The evaluator that is used when executing the function.
+     * @param arguments The array containing the arguments to pass to the function.
+     * @param offset    The index of the first argument in the array.
+     * @return The result of the function call.
+     */
+    private double memoize(DoubleEvaluator evaluator, double[] arguments, int offset)
+    {
+        int                 version = evaluator.getMemory().getConstantsVersion();
+        FunctionCache.Entry entry   = cache.get(arguments, offset, version);
+        if (entry != null) {
+            return entry.getResult();
+        }
+
+        double result = evaluate(evaluator, arguments, offset);
+        if (!evaluator.hasError()) {
+            cache.put(arguments, offset, result, version);
+        }
 
-        memory.enterScope(namedArguments);
-        ExpressionResult result = visitor.visitExpression(expressionContext);
-        memory.exitScope();
         return result;
     }
 
+    /**
+     * Evaluates the body of the function, using the compiled body when the evaluator has a compiler and is not
+     * profiling.
+     *
+     * @param evaluator The evaluator that is used when executing the function.
+     * @param arguments The array containing the arguments to pass to the function.
+     * @param offset    The index of the first argument in the array.
+     * @return The result of the function call.
+     */
+    private double evaluate(DoubleEvaluator evaluator, double[] arguments, int offset)
+    {
+        FunctionCompiler compiler = evaluator.getCompiler();
+        if (compiler != null && evaluator.getProfiler() == null) {
+            CompiledBody body = compiler.getBody(this);
+            if (body != null) {
+                return body.call(evaluator, arguments, offset);
+            }
+        }
+
+        return evaluator.evaluateFrame(resolve(evaluator.getMemory()), arguments, offset);
+    }
+
+    /**
+     * Returns the expression that is executed when the function is called, with the references to the parameters
+     * resolved. The references are resolved again for constants with a version the references have not recently
+     * been resolved for, since constants take precedence over parameters.
+     *
+     * @param memory The memory containing the defined constants.
+     * @return The expression with the references to the parameters resolved.
+     */
+    ExpressionNode resolve(CalculatorMemory memory)
+    {
+        int          version     = memory.getConstantsVersion();
+        Resolution[] resolutions = this.resolutions;
+        for (Resolution resolution : resolutions)
+            if (resolution.version == version)
+                return resolution.body;
+
+        ExpressionNode body    = new ParameterResolver(parameters, memory).resolve(expression);
+        Resolution[]   updated = new Resolution[Math.min(resolutions.length + 1, MAXIMUM_RESOLUTIONS)];
+        updated[0] = new Resolution(version, body);
+        System.arraycopy(resolutions, 0, updated, 1, updated.length - 1);
+        this.resolutions = updated;
+        return body;
+    }
+
+    /**
+     * Returns the expression that is executed when the function is called.
+     *
+     * @return The expression that is executed when the function is called.
+     */
+    public ExpressionNode getExpression()
+    {
+        return expression;
+    }
+
     /**
      * Returns the signature of the function.
      *
@@ -91,4 +246,55 @@ public class ConcreteCustomFunction extends AbstractFunction implements CustomFu
     {
         return signature;
     }
+
+    /**
+     * Returns the cache of the results of the function.
+     *
+     * @return The cache of the results of the function. Returns null when the function is not pure.
+     */
+    public FunctionCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Returns true if the function is pure.
+     *
+     * @return true if the function is pure.
+     */
+    @Override public boolean isPure()
+    {
+        return pure;
+    }
+
+    /**
+     * The body of the function with references to the parameters resolved, and the version of the constants the body
+     * was resolved with. The function may be shared by calculators with different constants, so the body and the
+     * version are published together.
+     */
+    private static final class Resolution
+    {
+
+        /**
+         * The version of the constants the body was resolved with.
+         */
+        private final int version;
+
+        /**
+         * The body with references to the parameters resolved.
+         */
+        private final ExpressionNode body;
+
+        /**
+         * Creates a new {@link Resolution}.
+         *
+         * @param version The version of the constants the body was resolved with.
+         * @param body    The body with references to the parameters resolved.
+         */
+        Resolution(int version, ExpressionNode body)
+        {
+            this.version = version;
+            this.body = body;
+        }
+    }
 }
@@ -13,6 +13,11 @@ public class ConcreteFunctionIdentifier implements FunctionIdentifier
      */
     private final int parameterCount;
 
+    /**
+     * The identifier used when identifying the function.
+     */
+    private final int identifier;
+
     /**
      * Creates a new {@link ConcreteFunctionIdentifier}.
      *
@@ -23,8 +28,11 @@ public class ConcreteFunctionIdentifier implements FunctionIdentifier
     {
         this.functionName = functionName;
         this.parameterCount = parameterCount;
-    }
 
+        int result = functionName.hashCode();
+        result = 31 * result + parameterCount;
+        this.identifier = result;
+    }
 
     /**
      * Creates and returns a new {@link ConcreteFunctionIdentifier}.
@@ -38,6 +46,41 @@ public class ConcreteFunctionIdentifier implements FunctionIdentifier
         return new ConcreteFunctionIdentifier(functionName, parameterCount);
     }
 
+    /**
+     * Returns a {@link ConcreteFunctionIdentifier} identifying the same function as the provided identifier.
+     *
+     * @param identifier The identifier of the function.
+     * @return The provided identifier, when it is a {@link ConcreteFunctionIdentifier}, otherwise a new instance.
+     */
+    public static ConcreteFunctionIdentifier of(FunctionIdentifier identifier)
+    {
+        if (identifier instanceof ConcreteFunctionIdentifier) {
+            return (ConcreteFunctionIdentifier) identifier;
+        }
+
+        return new ConcreteFunctionIdentifier(identifier.getName(), identifier.getParameterCount());
+    }
+
+    /**
+     * Returns the name of the function being identified.
+     *
+     * @return The name of the function being identified.
+     */
+    @Override public String getName()
+    {
+        return functionName;
+    }
+
+    /**
+     * Returns the number of argument of the function being identified.
+     *
+     * @return The number of argument of the function being identified.
+     */
+    @Override public int getParameterCount()
+    {
+        return parameterCount;
+    }
+
     /**
      * Returns the identifier used when identifying the function.
      *
@@ -45,8 +88,20 @@ public class ConcreteFunctionIdentifier implements FunctionIdentifier
      */
     @Override public int getIdentifier()
     {
-        int result = functionName.hashCode();
-        result = 31 * result + parameterCount;
-        return result;
+        return identifier;
+    }
+
+    @Override public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof ConcreteFunctionIdentifier)) return false;
+
+        ConcreteFunctionIdentifier that = (ConcreteFunctionIdentifier) o;
+        return parameterCount == that.parameterCount && functionName.equals(that.functionName);
+    }
+
+    @Override public int hashCode()
+    {
+        return identifier;
     }
 }
@@ -0,0 +1,153 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folds the constant subtrees of expressions into literals. References to constants are replaced by their values,
+ * binary expressions with literal operands are computed, and calls to pure predefined functions with literal
+ * arguments are evaluated ahead of time.
+ *
+ * Calls to custom functions are never folded, since the result of a custom function changes when a constant shadowing
+ * one of its parameters is defined later.
+ *
+ * Subtrees that fail when evaluated, like a division by zero, are left as they are, so that the error is still
+ * reported when the expression is evaluated.
+ */
+public class ConstantFolder implements NodeVisitor<ExpressionNode>
+{
+
+    /**
+     * The memory containing the defined constants.
+     */
+    private final CalculatorMemory memory;
+
+    /**
+     * The functions that can be called from the folded expressions.
+     */
+    private final FunctionCollection functions;
+
+    /**
+     * The evaluator used to evaluate the calls to pure predefined functions.
+     */
+    private final DoubleEvaluator evaluator;
+
+    /**
+     * Creates a new {@link ConstantFolder}.
+     *
+     * @param memory    The memory containing the defined constants.
+     * @param functions The functions that can be called from the folded expressions.
+     * @param evaluator The evaluator used to evaluate the calls to pure predefined functions.
+     */
+    public ConstantFolder(CalculatorMemory memory, FunctionCollection functions, DoubleEvaluator evaluator)
+    {
+        this.memory = memory;
+        this.functions = functions;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Folds the constant subtrees of the provided expression.
+     *
+     * @param node The expression to fold.
+     * @return The folded expression.
+     */
+    public ExpressionNode fold(ExpressionNode node)
+    {
+        return node.accept(this);
+    }
+
+    @Override public ExpressionNode visitLiteral(LiteralNode node)
+    {
+        return node;
+    }
+
+    @Override public ExpressionNode visitVariable(VariableNode node)
+    {
+        Double constant = memory.getConstant(node.getName());
+        if (constant == null) {
+            return node;
+        }
+
+        return new LiteralNode(constant);
+    }
+
+    @Override public ExpressionNode visitParameter(ParameterNode node)
+    {
+        return node;
+    }
+
+    @Override public ExpressionNode visitBinary(BinaryNode node)
+    {
+        BinaryNode[]   chain = node.getChain();
+        ExpressionNode left  = chain[0].getLeft().accept(this);
+        for (BinaryNode operation : chain)
+            left = combine(operation, left, operation.getRight().accept(this));
+
+        return left;
+    }
+
+    /**
+     * Returns the provided operation with its operands replaced by the provided folded operands, or the result of
+     * the operation when both operands are literals.
+     *
+     * @param node  The operation.
+     * @param left  The folded left operand.
+     * @param right The folded right operand.
+     * @return The folded operation.
+     */
+    private ExpressionNode combine(BinaryNode node, ExpressionNode left, ExpressionNode right)
+    {
+        if (!(left instanceof LiteralNode) || !(right instanceof LiteralNode)) {
+            return new BinaryNode(node.getOperator(), left, right);
+        }
+
+        double leftValue  = ((LiteralNode) left).getValue();
+        double rightValue = ((LiteralNode) right).getValue();
+
+        switch (node.getOperator()) {
+            case ADD:
+                return new LiteralNode(leftValue + rightValue);
+            case SUBTRACT:
+                return new LiteralNode(leftValue - rightValue);
+            case MULTIPLY:
+                return new LiteralNode(leftValue * rightValue);
+            case DIVIDE:
+                if (rightValue != 0) {
+                    return new LiteralNode(leftValue / rightValue);
+                }
+        }
+
+        return new BinaryNode(node.getOperator(), left, right);
+    }
+
+    @Override public ExpressionNode visitCall(CallNode node)
+    {
+        List<ExpressionNode> arguments = new ArrayList<>(node.getArgumentCount());
+        boolean              constant  = true;
+        for (int x = 0; x < node.getArgumentCount(); x++) {
+            ExpressionNode argument = node.getArgument(x).accept(this);
+            constant &= argument instanceof LiteralNode;
+            arguments.add(argument);
+        }
+
+        CallNode folded   = new CallNode(node.getName(), arguments);
+        Function function = folded.resolve(functions);
+        if (!constant || !(function instanceof PredefinedFunction) || !function.isPure()) {
+            return folded;
+        }
+
+        try {
+            double value = evaluator.evaluate(folded);
+            if (evaluator.hasError()) {
+                evaluator.clearError();
+                return folded;
+            }
+
+            return new LiteralNode(value);
+        } catch (RuntimeException e) {
+            evaluator.clearError();
+            return folded;
+        }
+    }
+}
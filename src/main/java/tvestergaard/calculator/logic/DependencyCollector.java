@@ -0,0 +1,85 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the names of the variables referenced by an expression. References to constants are not collected, since
+ * constants never change. Custom functions cannot reference variables, so calls only contribute the variables
+ * referenced by their arguments.
+ */
+public class DependencyCollector implements NodeVisitor<Void>
+{
+
+    /**
+     * The memory containing the defined constants.
+     */
+    private final CalculatorMemory memory;
+
+    /**
+     * The names collected from the current expression.
+     */
+    private final Set<String> names = new LinkedHashSet<>();
+
+    /**
+     * Creates a new {@link DependencyCollector}.
+     *
+     * @param memory The memory containing the defined constants.
+     */
+    public DependencyCollector(CalculatorMemory memory)
+    {
+        this.memory = memory;
+    }
+
+    /**
+     * Returns the names of the variables referenced by the provided expression, in the order of their first
+     * reference.
+     *
+     * @param node The expression.
+     * @return The names of the variables referenced by the provided expression.
+     */
+    public List<String> collect(ExpressionNode node)
+    {
+        names.clear();
+        node.accept(this);
+        return new ArrayList<>(names);
+    }
+
+    @Override public Void visitLiteral(LiteralNode node)
+    {
+        return null;
+    }
+
+    @Override public Void visitVariable(VariableNode node)
+    {
+        if (memory.getConstant(node.getName()) == null)
+            names.add(node.getName());
+
+        return null;
+    }
+
+    @Override public Void visitParameter(ParameterNode node)
+    {
+        return null;
+    }
+
+    @Override public Void visitBinary(BinaryNode node)
+    {
+        BinaryNode[] chain = node.getChain();
+        chain[0].getLeft().accept(this);
+        for (BinaryNode operation : chain)
+            operation.getRight().accept(this);
+
+        return null;
+    }
+
+    @Override public Void visitCall(CallNode node)
+    {
+        for (int x = 0; x < node.getArgumentCount(); x++)
+            node.getArgument(x).accept(this);
+
+        return null;
+    }
+}
@@ -0,0 +1,488 @@
+package tvestergaard.calculator.logic;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates lowered expressions into primitive doubles. The evaluator does not allocate on the success path: the
+ * arguments to called functions are passed on a reusable stack, and errors are reported through an error channel
+ * on the evaluator instead of through a result object per node.
+ *
+ * When a node fails, the error is recorded using {@link #error(String)} and {@link Double#NaN} is returned. Callers
+ * must check {@link #hasError()} after evaluating a node.
+ */
+public class DoubleEvaluator implements DoubleNodeVisitor
+{
+
+    /**
+     * The memory of the calculator.
+     */
+    protected final CalculatorMemory memory;
+
+    /**
+     * The functions that can be called during the evaluation.
+     */
+    protected final FunctionCollection functions;
+
+    /**
+     * The compiler used to compile custom functions. Custom functions are interpreted when null.
+     */
+    protected FunctionCompiler compiler;
+
+    /**
+     * Whether or not the results of pure custom functions are cached.
+     */
+    protected boolean memoizationEnabled;
+
+    /**
+     * The monitor notified of the calls to custom functions. Is null when the evaluation is not monitored.
+     */
+    protected ExecutionMonitor monitor;
+
+    /**
+     * The profiler recording the calls made by the evaluator. Is null when the calls are not profiled.
+     */
+    protected FunctionProfiler profiler;
+
+    /**
+     * The number of monitored custom function calls in progress.
+     */
+    private int callDepth;
+
+    /**
+     * The stack on which the arguments to called functions are passed.
+     */
+    private double[] stack = new double[64];
+
+    /**
+     * The index of the next free position on the stack.
+     */
+    private int top;
+
+    /**
+     * The array containing the arguments of the custom function being evaluated. Is null outside custom functions.
+     */
+    private double[] frame;
+
+    /**
+     * The index of the first argument of the custom function being evaluated in the frame array.
+     */
+    private int frameOffset;
+
+    /**
+     * The error that occurred during the evaluation. Is null when no error has occurred.
+     */
+    private String error;
+
+    /**
+     * Creates a new {@link DoubleEvaluator}.
+     *
+     * @param memory    The memory of the calculator.
+     * @param functions The functions that can be called during the evaluation.
+     */
+    public DoubleEvaluator(CalculatorMemory memory, FunctionCollection functions)
+    {
+        this.memory = memory;
+        this.functions = functions;
+    }
+
+    /**
+     * Evaluates the provided expression.
+     *
+     * @param node The expression to evaluate.
+     * @return The result of the evaluation. The result is undefined if {@link #hasError()} returns true afterwards.
+     */
+    public double evaluate(ExpressionNode node)
+    {
+        return node.accept(this);
+    }
+
+    /**
+     * Evaluates the body of a custom function. The parameters in the body are read from the provided frame, and
+     * variables outside the function are not visible, so only constants can be referenced by name.
+     *
+     * @param body      The body of the function, with references to the parameters resolved.
+     * @param arguments The array containing the arguments passed to the function.
+     * @param offset    The index of the first argument in the array.
+     * @return The result of the evaluation.
+     */
+    public double evaluateFrame(ExpressionNode body, double[] arguments, int offset)
+    {
+        double[] previousFrame  = frame;
+        int      previousOffset = frameOffset;
+        frame = arguments;
+        frameOffset = offset;
+
+        try {
+            return body.accept(this);
+        } finally {
+            frame = previousFrame;
+            frameOffset = previousOffset;
+        }
+    }
+
+    /**
+     * Returns true if an error occurred during the evaluation.
+     *
+     * @return true if an error occurred during the evaluation.
+     */
+    public boolean hasError()
+    {
+        return error != null;
+    }
+
+    /**
+     * Returns the error that occurred during the evaluation.
+     *
+     * @return The error that occurred during the evaluation. Returns null if no error occurred.
+     */
+    public String getError()
+    {
+        return error;
+    }
+
+    /**
+     * Records an error that occurred during the evaluation.
+     *
+     * @param error The error message.
+     * @return {@link Double#NaN}, so that the method can be used as the return value of a failed node.
+     */
+    public double error(String error)
+    {
+        this.error = error;
+        return Double.NaN;
+    }
+
+    /**
+     * Clears the recorded error.
+     */
+    public void clearError()
+    {
+        this.error = null;
+    }
+
+    /**
+     * Returns the memory of the calculator.
+     *
+     * @return The memory of the calculator.
+     */
+    public CalculatorMemory getMemory()
+    {
+        return memory;
+    }
+
+    /**
+     * Returns the compiler used to compile custom functions.
+     *
+     * @return The compiler used to compile custom functions. Returns null when custom functions are interpreted.
+     */
+    public FunctionCompiler getCompiler()
+    {
+        return compiler;
+    }
+
+    /**
+     * Sets the compiler used to compile custom functions.
+     *
+     * @param compiler The compiler used to compile custom functions. Custom functions are interpreted when null.
+     */
+    public void setCompiler(FunctionCompiler compiler)
+    {
+        this.compiler = compiler;
+    }
+
+    /**
+     * Returns true if the results of pure custom functions are cached.
+     *
+     * @return true if the results of pure custom functions are cached.
+     */
+    public boolean isMemoizationEnabled()
+    {
+        return memoizationEnabled;
+    }
+
+    /**
+     * Sets whether or not the results of pure custom functions are cached.
+     *
+     * @param memoizationEnabled Whether or not the results of pure custom functions are cached.
+     */
+    public void setMemoizationEnabled(boolean memoizationEnabled)
+    {
+        this.memoizationEnabled = memoizationEnabled;
+    }
+
+    /**
+     * Returns the monitor notified of the execution.
+     *
+     * @return The monitor notified of the execution. Returns null when the execution is not monitored.
+     */
+    public ExecutionMonitor getMonitor()
+    {
+        return monitor;
+    }
+
+    /**
+     * Sets the monitor notified of the execution.
+     *
+     * @param monitor The monitor notified of the execution. The execution is not monitored when null.
+     */
+    public void setMonitor(ExecutionMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Returns the profiler recording the calls made by the evaluator.
+     *
+     * @return The profiler recording the calls made by the evaluator. Returns null when the calls are not profiled.
+     */
+    public FunctionProfiler getProfiler()
+    {
+        return profiler;
+    }
+
+    /**
+     * Sets the profiler recording the calls made by the evaluator.
+     *
+     * @param profiler The profiler recording the calls made by the evaluator. The calls are not profiled when null.
+     */
+    public void setProfiler(FunctionProfiler profiler)
+    {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Marks the start of a monitored call to a custom function. Must be followed by a call to {@link #exitCall()}.
+     *
+     * @return The number of monitored calls in progress before the call, which is the depth of the call.
+     */
+    public int enterCall()
+    {
+        return callDepth++;
+    }
+
+    /**
+     * Marks the end of a monitored call to a custom function.
+     */
+    public void exitCall()
+    {
+        callDepth--;
+    }
+
+    @Override public double visitLiteral(LiteralNode node)
+    {
+        return node.getValue();
+    }
+
+    @Override public double visitVariable(VariableNode node)
+    {
+        String name = node.getName();
+        if (frame != null) {
+            Double constant = memory.getConstant(name);
+            if (constant == null) {
+                return error(String.format("No variable with name '%s'.", name));
+            }
+
+            return constant;
+        }
+
+        if (!memory.hasValue(name)) {
+            return error(String.format("No variable with name '%s'.", name));
+        }
+
+        return memory.getValue(name);
+    }
+
+    @Override public double visitParameter(ParameterNode node)
+    {
+        return frame[frameOffset + node.getIndex()];
+    }
+
+    @Override public double visitBinary(BinaryNode node)
+    {
+        BinaryNode[] chain = node.getChain();
+        double       value = chain[0].getLeft().accept(this);
+        if (error != null)
+            return Double.NaN;
+
+        for (BinaryNode operation : chain) {
+            double right = operation.getRight().accept(this);
+            if (error != null)
+                return Double.NaN;
+
+            value = apply(operation.getOperator(), value, right);
+            if (error != null)
+                return Double.NaN;
+        }
+
+        return value;
+    }
+
+    /**
+     * Applies the provided operator to the provided operands.
+     *
+     * @param operator The operator to apply.
+     * @param left     The left operand.
+     * @param right    The right operand.
+     * @return The result of the operation.
+     */
+    private double apply(BinaryNode.Operator operator, double left, double right)
+    {
+        switch (operator) {
+            case ADD:
+                return left + right;
+            case SUBTRACT:
+                return left - right;
+            case MULTIPLY:
+                return left * right;
+            case DIVIDE:
+                if (right == 0) {
+                    throw new RuntimeException("You cannot divide by 0.");
+                }
+
+                return left / right;
+        }
+
+        return error("Error when visiting binary expression.");
+    }
+
+    @Override public double visitCall(CallNode node)
+    {
+        if (profiler != null) {
+            return profileCall(node);
+        }
+
+        int base = top;
+        try {
+            if (!pushArguments(node, base))
+                return Double.NaN;
+
+            Function function = node.resolve(functions);
+            if (function == null) {
+                return error(String.format("No such function '%s'.", node.getName()));
+            }
+
+            return function.call(this, stack, base);
+        } finally {
+            top = base;
+        }
+    }
+
+    /**
+     * Evaluates the provided call, recording the time spent evaluating the arguments and the body of the function
+     * using the profiler.
+     *
+     * @param node The call to evaluate.
+     * @return The result of the call.
+     */
+    private double profileCall(CallNode node)
+    {
+        FunctionProfiler profiler        = this.profiler;
+        Function         function        = null;
+        int              base            = top;
+        long             start           = System.nanoTime();
+        long             called          = 0;
+        long             argumentsNested = 0;
+        profiler.enter();
+
+        try {
+            if (!pushArguments(node, base))
+                return Double.NaN;
+
+            function = node.resolve(functions);
+            if (function == null) {
+                return error(String.format("No such function '%s'.", node.getName()));
+            }
+
+            called = System.nanoTime();
+            argumentsNested = profiler.getNestedNanos();
+            return function.call(this, stack, base);
+        } finally {
+            top = base;
+            long end = System.nanoTime();
+            if (function == null)
+                profiler.exit(null, end - start, 0, 0);
+            else
+                profiler.exit(function, called - start, end - called, argumentsNested);
+        }
+    }
+
+    /**
+     * Pushes an argument of a call onto the stack. Called from compiled bodies, which evaluate the arguments of a call
+     * one at a time, and then call the function using {@link #call(Function, int)}.
+     *
+     * @param argument The argument to push.
+     */
+    public void push(double argument)
+    {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+
+        stack[top++] = argument;
+    }
+
+    /**
+     * Calls the provided function with the provided number of arguments on top of the stack, and removes the arguments
+     * from the stack. Called from compiled bodies.
+     *
+     * @param function      The function to call.
+     * @param argumentCount The number of arguments on top of the stack.
+     * @return The result of the function call.
+     */
+    public double call(Function function, int argumentCount)
+    {
+        int base = top - argumentCount;
+        try {
+            return function.call(this, stack, base);
+        } finally {
+            top = base;
+        }
+    }
+
+    /**
+     * Returns the index of the next free position on the stack.
+     *
+     * @return The index of the next free position on the stack.
+     */
+    int getTop()
+    {
+        return top;
+    }
+
+    /**
+     * Removes the values above the provided position from the stack. Used to discard the arguments pushed by a
+     * compiled body that did not complete.
+     *
+     * @param top The index of the next free position on the stack.
+     */
+    void setTop(int top)
+    {
+        this.top = top;
+    }
+
+    /**
+     * Evaluates the arguments of the provided call onto the stack.
+     *
+     * @param node The call whose arguments to evaluate.
+     * @param base The position on the stack of the first argument.
+     * @return false if an error occurred while evaluating the arguments.
+     */
+    private boolean pushArguments(CallNode node, int base)
+    {
+        int argumentCount = node.getArgumentCount();
+        if (base + argumentCount > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + argumentCount));
+        }
+
+        for (int x = 0; x < argumentCount; x++) {
+            double argument = node.getArgument(x).accept(this);
+            if (error != null)
+                return false;
+
+            stack[base + x] = argument;
+            top = base + x + 1;
+        }
+
+        return true;
+    }
+}
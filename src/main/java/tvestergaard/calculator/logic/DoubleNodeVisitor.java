@@ -0,0 +1,48 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * Visits the nodes in a lowered expression tree, returning a primitive double from each node.
+ */
+public interface DoubleNodeVisitor
+{
+
+    /**
+     * Visits a literal value.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    double visitLiteral(LiteralNode node);
+
+    /**
+     * Visits a reference to a variable or constant.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    double visitVariable(VariableNode node);
+
+    /**
+     * Visits a reference to a parameter of a custom function.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    double visitParameter(ParameterNode node);
+
+    /**
+     * Visits a binary operation.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    double visitBinary(BinaryNode node);
+
+    /**
+     * Visits a function call.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    double visitCall(CallNode node);
+}
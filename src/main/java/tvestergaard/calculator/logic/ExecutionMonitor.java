@@ -0,0 +1,73 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * Receives timings of the execution of programs. Monitors are installed using
+ * {@link Calculator#setMonitor(ExecutionMonitor)}. When no monitor is installed, no timings are taken.
+ *
+ * All times are in nanoseconds, as returned by {@link System#nanoTime()}. Monitors may be called from multiple
+ * threads when they are installed on multiple calculators.
+ */
+public interface ExecutionMonitor
+{
+
+    /**
+     * Called when a program has been lexed and parsed, or found in the program cache.
+     *
+     * @param length The length of the source code of the program.
+     * @param cached Whether or not the program was found in the program cache.
+     * @param start  The time when the parsing started.
+     * @param end    The time when the parsing ended.
+     */
+    void programParsed(int length, boolean cached, long start, long end);
+
+    /**
+     * Called when a statement has been executed.
+     *
+     * @param type  The type of the statement.
+     * @param start The time when the execution started.
+     * @param end   The time when the execution ended.
+     */
+    void statementExecuted(StatementType type, long start, long end);
+
+    /**
+     * Called when a call to a custom function has returned.
+     *
+     * @param function The called function.
+     * @param depth    The number of custom function calls in progress when the function was called.
+     * @param start    The time when the call started.
+     * @param end      The time when the call ended.
+     */
+    void functionCalled(Function function, int depth, long start, long end);
+
+    /**
+     * Returns a monitor passing all timings to the provided monitors.
+     *
+     * @param monitors The monitors to pass the timings to.
+     * @return The monitor passing all timings to the provided monitors.
+     */
+    static ExecutionMonitor of(ExecutionMonitor... monitors)
+    {
+        ExecutionMonitor[] copy = monitors.clone();
+
+        return new ExecutionMonitor()
+        {
+            @Override public void programParsed(int length, boolean cached, long start, long end)
+            {
+                for (ExecutionMonitor monitor : copy)
+                    monitor.programParsed(length, cached, start, end);
+            }
+
+            @Override public void statementExecuted(StatementType type, long start, long end)
+            {
+                for (ExecutionMonitor monitor : copy)
+                    monitor.statementExecuted(type, start, end);
+            }
+
+            @Override public void functionCalled(Function function, int depth, long start, long end)
+            {
+                for (ExecutionMonitor monitor : copy)
+                    monitor.functionCalled(function, depth, start, end);
+            }
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package tvestergaard.calculator.logic;
+
+import tvestergaard.calculator.antlr.CalculatorBaseVisitor;
+import tvestergaard.calculator.antlr.CalculatorParser.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lowers the expressions in the parse tree into a tree of {@link ExpressionNode}. Literals are parsed and operators
+ * are resolved once, so that the lowered tree can be evaluated any number of times without inspecting the text of
+ * the parse tree. Chains of operators are lowered iteratively, so that expressions of any length can be lowered
+ * without growing the JVM stack.
+ */
+public class ExpressionLowerer extends CalculatorBaseVisitor<ExpressionNode>
+{
+
+    /**
+     * Returns the lowered form of the provided expression. The lowered form is stored on the expression context, so
+     * that the expression is only lowered once.
+     *
+     * @param ctx The expression to lower.
+     * @return The lowered expression.
+     */
+    public ExpressionNode lower(ExpressionContext ctx)
+    {
+        ExpressionNode node = ctx.node;
+        if (node == null) {
+            node = visitExpression(ctx);
+            ctx.node = node;
+        }
+
+        return node;
+    }
+
+    @Override public ExpressionNode visitExpression(ExpressionContext ctx)
+    {
+        MultiplicativeExpressionContext multiplicativeExpressionContext = ctx.multiplicativeExpression();
+        if (multiplicativeExpressionContext != null) {
+            return visitMultiplicativeExpression(multiplicativeExpressionContext);
+        }
+
+        throw new RuntimeException("Error when visiting expression.");
+    }
+
+    @Override public ExpressionNode visitMultiplicativeExpression(MultiplicativeExpressionContext ctx)
+    {
+        List<MultiplicativeExpressionContext> chain = new ArrayList<>();
+        while (ctx.multiplicativeOperator() != null) {
+            chain.add(ctx);
+            ctx = ctx.multiplicativeExpression();
+        }
+
+        AdditiveExpressionContext additiveExpressionContext = ctx.additiveExpression();
+        if (additiveExpressionContext == null) {
+            throw new RuntimeException("Error when visiting multiplicativeExpression.");
+        }
+
+        ExpressionNode node = visitAdditiveExpression(additiveExpressionContext);
+        for (int x = chain.size() - 1; x >= 0; x--) {
+            MultiplicativeExpressionContext operation = chain.get(x);
+            node = new BinaryNode(
+                    BinaryNode.Operator.of(operation.multiplicativeOperator().getText()),
+                    node,
+                    visitAdditiveExpression(operation.additiveExpression())
+            );
+        }
+
+        return node;
+    }
+
+    @Override public ExpressionNode visitAdditiveExpression(AdditiveExpressionContext ctx)
+    {
+        List<AdditiveExpressionContext> chain = new ArrayList<>();
+        while (ctx.additiveOperator() != null) {
+            chain.add(ctx);
+            ctx = ctx.additiveExpression();
+        }
+
+        ExpressionNode node = visitPrimaryExpression(ctx.primaryExpression());
+        for (int x = chain.size() - 1; x >= 0; x--) {
+            AdditiveExpressionContext operation = chain.get(x);
+            node = new BinaryNode(
+                    BinaryNode.Operator.of(operation.additiveOperator().getText()),
+                    node,
+                    visitPrimaryExpression(operation.primaryExpression())
+            );
+        }
+
+        return node;
+    }
+
+    @Override public ExpressionNode visitPrimaryExpression(PrimaryExpressionContext ctx)
+    {
+        ParenthesizedExpressionContext parenthesizedExpressionContext = ctx.parenthesizedExpression();
+        if (parenthesizedExpressionContext != null) {
+            return visitMultiplicativeExpression(parenthesizedExpressionContext.multiplicativeExpression());
+        }
+
+        FunctionExpressionContext functionExpressionContext = ctx.functionExpression();
+        if (functionExpressionContext != null) {
+            return visitFunctionExpression(functionExpressionContext);
+        }
+
+        VariableExpressionContext variableExpressionContext = ctx.variableExpression();
+        if (variableExpressionContext != null) {
+            return new VariableNode(ctx.getText());
+        }
+
+        return new LiteralNode(Double.parseDouble(ctx.getText()));
+    }
+
+    @Override public ExpressionNode visitFunctionExpression(FunctionExpressionContext ctx)
+    {
+        String               functionName = ctx.IDENTIFIER().getText();
+        List<ExpressionNode> arguments    = new ArrayList<>();
+        for (ExpressionContext expressionContext : ctx.functionArguments().expression()) {
+            arguments.add(lower(expressionContext));
+        }
+
+        return new CallNode(functionName, arguments);
+    }
+}
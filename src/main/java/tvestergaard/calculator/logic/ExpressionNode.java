@@ -0,0 +1,26 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * Represents a node in the lowered expression tree. The tree is created once from the parse tree by the
+ * {@link ExpressionLowerer}, and is immutable after creation.
+ */
+public interface ExpressionNode
+{
+
+    /**
+     * Accepts the provided visitor.
+     *
+     * @param visitor The visitor to accept.
+     * @param <T>     The type returned by the visitor.
+     * @return The value returned by the visitor.
+     */
+    <T> T accept(NodeVisitor<T> visitor);
+
+    /**
+     * Accepts the provided visitor.
+     *
+     * @param visitor The visitor to accept.
+     * @return The value returned by the visitor.
+     */
+    double accept(DoubleNodeVisitor visitor);
+}
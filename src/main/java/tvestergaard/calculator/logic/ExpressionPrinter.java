@@ -0,0 +1,121 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * Prints lowered expressions as source code. Parentheses are only inserted where the precedence of the operators
+ * requires them. Note that additive operators bind tighter than multiplicative operators in the grammar.
+ */
+public class ExpressionPrinter implements NodeVisitor<String>
+{
+
+    /**
+     * The precedence of the multiplicative operators.
+     */
+    private static final int MULTIPLICATIVE = 0;
+
+    /**
+     * The precedence of the additive operators.
+     */
+    private static final int ADDITIVE = 1;
+
+    /**
+     * The precedence of literals, variables and calls.
+     */
+    private static final int PRIMARY = 2;
+
+    /**
+     * Prints the provided expression.
+     *
+     * @param node The expression to print.
+     * @return The source code of the expression.
+     */
+    public String print(ExpressionNode node)
+    {
+        return node.accept(this);
+    }
+
+    @Override public String visitLiteral(LiteralNode node)
+    {
+        return Double.toString(node.getValue());
+    }
+
+    @Override public String visitVariable(VariableNode node)
+    {
+        return node.getName();
+    }
+
+    @Override public String visitParameter(ParameterNode node)
+    {
+        return node.getName();
+    }
+
+    @Override public String visitBinary(BinaryNode node)
+    {
+        BinaryNode[]  chain   = node.getChain();
+        StringBuilder builder = new StringBuilder();
+        for (int x = 1; x < chain.length; x++)
+            if (precedence(chain[x - 1]) < precedence(chain[x]))
+                builder.append('(');
+
+        builder.append(print(chain[0].getLeft(), precedence(chain[0])));
+        for (int x = 0; x < chain.length; x++) {
+            int precedence = precedence(chain[x]);
+            if (x > 0 && precedence(chain[x - 1]) < precedence)
+                builder.append(')');
+
+            builder.append(' ').append(chain[x].getOperator().getSymbol()).append(' ');
+            builder.append(print(chain[x].getRight(), precedence + 1));
+        }
+
+        return builder.toString();
+    }
+
+    @Override public String visitCall(CallNode node)
+    {
+        StringBuilder builder = new StringBuilder(node.getName()).append('(');
+        for (int x = 0; x < node.getArgumentCount(); x++) {
+            if (x > 0)
+                builder.append(", ");
+            builder.append(print(node.getArgument(x)));
+        }
+
+        return builder.append(')').toString();
+    }
+
+    /**
+     * Prints the provided operand, surrounded by parentheses when its precedence is lower than the required
+     * precedence.
+     *
+     * @param node       The operand to print.
+     * @param precedence The precedence required by the operator.
+     * @return The source code of the operand.
+     */
+    private String print(ExpressionNode node, int precedence)
+    {
+        String source = node.accept(this);
+        if (precedence(node) < precedence) {
+            return '(' + source + ')';
+        }
+
+        return source;
+    }
+
+    /**
+     * Returns the precedence of the provided expression.
+     *
+     * @param node The expression.
+     * @return The precedence of the provided expression.
+     */
+    private static int precedence(ExpressionNode node)
+    {
+        if (!(node instanceof BinaryNode))
+            return PRIMARY;
+
+        switch (((BinaryNode) node).getOperator()) {
+            case MULTIPLY:
+            case DIVIDE:
+                return MULTIPLICATIVE;
+            default:
+                return ADDITIVE;
+        }
+    }
+}
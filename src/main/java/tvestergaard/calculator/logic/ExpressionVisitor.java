@@ -3,9 +3,10 @@ package tvestergaard.calculator.logic;
 import tvestergaard.calculator.antlr.CalculatorBaseVisitor;
 import tvestergaard.calculator.antlr.CalculatorParser.*;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Evaluates expressions. Expressions in the parse tree are lowered into a tree of {@link ExpressionNode} the first
+ * time they are visited, after which the lowered tree is evaluated by a {@link DoubleEvaluator}.
+ */
 public class ExpressionVisitor extends CalculatorBaseVisitor<ExpressionResult>
 {
 
@@ -15,157 +16,83 @@ public class ExpressionVisitor extends CalculatorBaseVisitor<ExpressionResult>
     protected final CalculatorMemory   memory;
     protected final FunctionCollection functions;
 
+    /**
+     * The object used to lower the expressions in the parse tree.
+     */
+    protected final ExpressionLowerer lowerer = new ExpressionLowerer();
+
+    /**
+     * The object used to evaluate the lowered expressions.
+     */
+    protected final DoubleEvaluator evaluator;
+
     public ExpressionVisitor(CalculatorMemory memory, FunctionCollection functions)
     {
         this.memory = memory;
         this.functions = functions;
+        this.evaluator = new DoubleEvaluator(memory, functions);
     }
 
-    @Override public ExpressionResult visitExpression(ExpressionContext ctx)
+    /**
+     * Evaluates the provided lowered expression.
+     *
+     * @param node The expression to evaluate.
+     * @return The result of the evaluation.
+     */
+    public ExpressionResult evaluate(ExpressionNode node)
     {
-        MultiplicativeExpressionContext multiplicativeExpressionContext = ctx.multiplicativeExpression();
-        if (multiplicativeExpressionContext != null) {
-            return visitMultiplicativeExpression(multiplicativeExpressionContext);
+        double value = evaluator.evaluate(node);
+        if (evaluator.hasError()) {
+            String error = evaluator.getError();
+            evaluator.clearError();
+            return ExpressionResult.error(error);
         }
 
-        return ExpressionResult.error("Error when visiting expression.");
+        return ExpressionResult.success(value);
     }
 
-    @Override public ExpressionResult visitMultiplicativeExpression(MultiplicativeExpressionContext ctx)
+    /**
+     * Returns the object used to lower the expressions in the parse tree.
+     *
+     * @return The object used to lower the expressions in the parse tree.
+     */
+    public ExpressionLowerer getLowerer()
     {
-        MultiplicativeOperatorContext operatorContext = ctx.multiplicativeOperator();
-        if (operatorContext != null) {
-
-            String operator = operatorContext.getText();
-
-            if (operator.equals("*")) {
-
-                ExpressionResult left  = visitMultiplicativeExpression(ctx.multiplicativeExpression());
-                ExpressionResult right = visitAdditiveExpression(ctx.additiveExpression());
-
-                if (left.isError())
-                    return left;
-
-                if (right.isError())
-                    return right;
-
-                return ExpressionResult.success(left.getValue() * right.getValue());
-            }
-
-            if (operator.equals("/")) {
-                ExpressionResult left  = visitMultiplicativeExpression(ctx.multiplicativeExpression());
-                ExpressionResult right = visitAdditiveExpression(ctx.additiveExpression());
-
-                if (left.isError())
-                    return left;
-
-                if (right.isError())
-                    return right;
-
-                if (right.getValue() == 0) {
-                    throw new RuntimeException("You cannot divide by 0.");
-                }
+        return lowerer;
+    }
 
-                return ExpressionResult.success(left.getValue() / right.getValue());
-            }
-        }
+    /**
+     * Returns the object used to evaluate the lowered expressions.
+     *
+     * @return The object used to evaluate the lowered expressions.
+     */
+    public DoubleEvaluator getEvaluator()
+    {
+        return evaluator;
+    }
 
-        AdditiveExpressionContext additiveExpressionContext = ctx.additiveExpression();
-        if (additiveExpressionContext != null) {
-            return visitAdditiveExpression(additiveExpressionContext);
-        }
+    @Override public ExpressionResult visitExpression(ExpressionContext ctx)
+    {
+        return evaluate(lowerer.lower(ctx));
+    }
 
-        return ExpressionResult.error("Error when visiting multiplicativeExpression.");
+    @Override public ExpressionResult visitMultiplicativeExpression(MultiplicativeExpressionContext ctx)
+    {
+        return evaluate(lowerer.visitMultiplicativeExpression(ctx));
     }
 
     @Override public ExpressionResult visitAdditiveExpression(AdditiveExpressionContext ctx)
     {
-
-        AdditiveOperatorContext operatorContext = ctx.additiveOperator();
-        if (operatorContext != null) {
-
-            String operator = operatorContext.getText();
-            if (operator.equals("+")) {
-                ExpressionResult left  = visitAdditiveExpression(ctx.additiveExpression());
-                ExpressionResult right = visitPrimaryExpression(ctx.primaryExpression());
-
-                if (left.isError())
-                    return left;
-
-                if (right.isError())
-                    return right;
-
-                return ExpressionResult.success(left.getValue() + right.getValue());
-            }
-
-            if (operator.equals("-")) {
-                ExpressionResult left  = visitAdditiveExpression(ctx.additiveExpression());
-                ExpressionResult right = visitPrimaryExpression(ctx.primaryExpression());
-
-                if (left.isError())
-                    return left;
-
-                if (right.isError())
-                    return right;
-
-                return ExpressionResult.success(left.getValue() - right.getValue());
-            }
-        }
-
-        PrimaryExpressionContext primaryExpressionContext = ctx.primaryExpression();
-        return visitPrimaryExpression(primaryExpressionContext);
+        return evaluate(lowerer.visitAdditiveExpression(ctx));
     }
 
     @Override public ExpressionResult visitPrimaryExpression(PrimaryExpressionContext ctx)
     {
-        ParenthesizedExpressionContext parenthesizedExpressionContext = ctx.parenthesizedExpression();
-        if (parenthesizedExpressionContext != null) {
-            return visitMultiplicativeExpression(parenthesizedExpressionContext.multiplicativeExpression());
-        }
-
-        FunctionExpressionContext functionExpressionContext = ctx.functionExpression();
-        if (functionExpressionContext != null) {
-            return visitFunctionExpression(functionExpressionContext);
-        }
-
-        VariableExpressionContext variableExpressionContext = ctx.variableExpression();
-        if (variableExpressionContext != null) {
-            return getVariableValue(ctx.getText());
-        }
-
-        LiteralExpressionContext literalExpressionContext = ctx.literalExpression();
-        return ExpressionResult.success(Double.parseDouble(ctx.getText()));
+        return evaluate(lowerer.visitPrimaryExpression(ctx));
     }
 
     @Override public ExpressionResult visitFunctionExpression(FunctionExpressionContext ctx)
     {
-        String functionName = ctx.IDENTIFIER().getText();
-
-        List<Double>             arguments        = new ArrayList<>();
-        FunctionArgumentsContext argumentsContext = ctx.functionArguments();
-        for (ExpressionContext expressionContext : argumentsContext.expression()) {
-            ExpressionResult result = visitExpression(expressionContext);
-            if (result.isError())
-                return result;
-
-            arguments.add(result.getValue());
-        }
-
-        Function function = functions.get(new ConcreteFunctionIdentifier(functionName, arguments.size()));
-
-        if (function != null) {
-            return function.call(this, memory, arguments);
-        }
-
-        return ExpressionResult.error(String.format("No such function '%s'.", functionName));
-    }
-
-    private ExpressionResult getVariableValue(String name)
-    {
-        if (!this.memory.hasValue(name)) {
-            return ExpressionResult.error(String.format("No variable with name '%s'.", name));
-        }
-
-        return ExpressionResult.success(this.memory.getValue(name));
+        return evaluate(lowerer.visitFunctionExpression(ctx));
     }
 }
@@ -0,0 +1,124 @@
+package tvestergaard.calculator.logic;
+
+import jdk.jfr.*;
+
+/**
+ * Emits JDK Flight Recorder events for the parsing of programs, the execution of statements and the calls to custom
+ * functions. The events are only created while a recording with the events enabled is in progress.
+ *
+ * Since the timings are reported after the fact, the time taken is recorded in a field of the events, while the
+ * events themselves are timestamped when the monitored operation ended.
+ *
+ * The Flight Recorder is not available on all Java 8 runtimes, so {@link #isAvailable()} must be checked before
+ * creating the monitor.
+ */
+public class FlightRecorderMonitor implements ExecutionMonitor
+{
+
+    /**
+     * Returns true if the Flight Recorder is available on the running JVM.
+     *
+     * @return true if the Flight Recorder is available on the running JVM.
+     */
+    public static boolean isAvailable()
+    {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return FlightRecorder.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @Override public void programParsed(int length, boolean cached, long start, long end)
+    {
+        ParseEvent event = new ParseEvent();
+        if (event.isEnabled()) {
+            event.length = length;
+            event.cached = cached;
+            event.parseTime = end - start;
+            event.commit();
+        }
+    }
+
+    @Override public void statementExecuted(StatementType type, long start, long end)
+    {
+        StatementEvent event = new StatementEvent();
+        if (event.isEnabled()) {
+            event.type = type.name();
+            event.executionTime = end - start;
+            event.commit();
+        }
+    }
+
+    @Override public void functionCalled(Function function, int depth, long start, long end)
+    {
+        FunctionCallEvent event = new FunctionCallEvent();
+        if (event.isEnabled()) {
+            event.signature = function.getSignature();
+            event.depth = depth;
+            event.callTime = end - start;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emitted when a program has been parsed.
+     */
+    @Name("tvestergaard.calculator.Parse")
+    @Label("Parse")
+    @Category("Calculator")
+    @Description("A program was lexed and parsed, or found in the program cache.")
+    static class ParseEvent extends Event
+    {
+
+        @Label("Length")
+        int length;
+
+        @Label("Cached")
+        boolean cached;
+
+        @Label("Parse Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long parseTime;
+    }
+
+    /**
+     * Emitted when a statement has been executed.
+     */
+    @Name("tvestergaard.calculator.Statement")
+    @Label("Statement")
+    @Category("Calculator")
+    @Description("A statement was executed.")
+    static class StatementEvent extends Event
+    {
+
+        @Label("Type")
+        String type;
+
+        @Label("Execution Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long executionTime;
+    }
+
+    /**
+     * Emitted when a call to a custom function has returned.
+     */
+    @Name("tvestergaard.calculator.FunctionCall")
+    @Label("Function Call")
+    @Category("Calculator")
+    @Description("A custom function was called.")
+    static class FunctionCallEvent extends Event
+    {
+
+        @Label("Signature")
+        String signature;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Call Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long callTime;
+    }
+}
@@ -6,25 +6,19 @@ public interface Function extends FunctionIdentifier
 {
 
     /**
-     * Returns the name of the function.
+     * Returns the signature of the function.
      *
-     * @return The name of the function.
+     * @return The signature of the function.
      */
-    String getName();
+    String getSignature();
 
     /**
-     * Returns the number of parameters in the function.
+     * Returns true if the function is pure. A pure function always returns the same result when called with the
+     * same arguments, and has no side effects, so calls with constant arguments can be evaluated ahead of time.
      *
-     * @return The number of parameters in the function.
+     * @return true if the function is pure.
      */
-    int getParameterCount();
-
-    /**
-     * Returns the signature of the function.
-     *
-     * @return The signature of the function.
-     */
-    String getSignature();
+    boolean isPure();
 
     /**
      * Calls the function.
@@ -35,4 +29,14 @@ public interface Function extends FunctionIdentifier
      * @return The result of the function call.
      */
     ExpressionResult call(ExpressionVisitor visitor, CalculatorMemory memory, List<Double> arguments);
+
+    /**
+     * Calls the function without allocating. Errors are reported through {@link DoubleEvaluator#error(String)}.
+     *
+     * @param evaluator The evaluator that is used when executing the function.
+     * @param arguments The array containing the arguments to pass to the function.
+     * @param offset    The index of the first argument in the array.
+     * @return The result of the function call.
+     */
+    double call(DoubleEvaluator evaluator, double[] arguments, int offset);
 }
@@ -0,0 +1,351 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Caches the results of a pure function by its arguments, so that calls repeated with the same arguments are only
+ * evaluated once. Arguments are compared by their bits, so that for example 0.0 and -0.0 are different arguments. The
+ * cache is bounded by the number of results, and the least recently used results are evicted first.
+ *
+ * The cached results are tagged with a stamp identifying the values they depend on. The results are kept for the few
+ * most recently used stamps, so that calculators sharing the function with different values do not clear the results
+ * of each other. The bound on the number of results applies to the results of all stamps together.
+ */
+public class FunctionCache
+{
+
+    /**
+     * The default maximum number of results in a cache.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * The maximum number of stamps results are kept for.
+     */
+    public static final int MAXIMUM_STAMPS = 4;
+
+    /**
+     * The cached results by stamp, ordered from least to most recently used stamp.
+     */
+    private final ArrayList<Partition> partitions = new ArrayList<>(MAXIMUM_STAMPS + 1);
+
+    /**
+     * The entry reused when looking up results, so that lookups do not allocate.
+     */
+    private final Entry probe;
+
+    /**
+     * The number of arguments of the function.
+     */
+    private final int parameterCount;
+
+    /**
+     * The maximum number of results in the cache.
+     */
+    private final int maximumSize;
+
+    /**
+     * The number of results in the cache.
+     */
+    private int size;
+
+    /**
+     * The number of times a result was found in the cache.
+     */
+    private long hits;
+
+    /**
+     * The number of times a result was not found in the cache.
+     */
+    private long misses;
+
+    /**
+     * The number of results evicted from the cache.
+     */
+    private long evictions;
+
+    /**
+     * Creates a new {@link FunctionCache}.
+     *
+     * @param parameterCount The number of arguments of the function.
+     * @param maximumSize    The maximum number of results in the cache.
+     */
+    public FunctionCache(int parameterCount, int maximumSize)
+    {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("The size of the cache cannot be negative.");
+        }
+
+        this.parameterCount = parameterCount;
+        this.maximumSize = maximumSize;
+        this.probe = new Entry(new double[parameterCount], 0);
+    }
+
+    /**
+     * Returns the cached result of the call with the provided arguments.
+     *
+     * @param arguments The array containing the arguments of the call.
+     * @param offset    The index of the first argument in the array.
+     * @param stamp     The stamp identifying the values the result depends on.
+     * @return The entry containing the cached result. Returns null if the result is not in the cache.
+     */
+    public synchronized Entry get(double[] arguments, int offset, long stamp)
+    {
+        Partition partition = partition(stamp);
+        if (partition == null) {
+            misses++;
+            return null;
+        }
+
+        System.arraycopy(arguments, offset, probe.arguments, 0, parameterCount);
+        probe.hash = hash(probe.arguments);
+
+        Entry entry = partition.entries.get(probe);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry;
+    }
+
+    /**
+     * Adds the result of a call to the cache, evicting the least recently used results when the cache is full.
+     *
+     * @param arguments The array containing the arguments of the call.
+     * @param offset    The index of the first argument in the array.
+     * @param result    The result of the call.
+     * @param stamp     The stamp identifying the values the result depends on.
+     */
+    public synchronized void put(double[] arguments, int offset, double result, long stamp)
+    {
+        if (maximumSize == 0) {
+            return;
+        }
+
+        Partition partition = partition(stamp);
+        if (partition == null) {
+            partition = new Partition(stamp);
+            partitions.add(partition);
+            if (partitions.size() > MAXIMUM_STAMPS) {
+                int removed = partitions.remove(0).entries.size();
+                size -= removed;
+                evictions += removed;
+            }
+        }
+
+        double[] copy = new double[parameterCount];
+        System.arraycopy(arguments, offset, copy, 0, parameterCount);
+        Entry entry = new Entry(copy, result);
+        if (partition.entries.put(entry, entry) == null) {
+            size++;
+        }
+
+        while (size > maximumSize) {
+            Partition       oldest   = partitions.get(0);
+            Iterator<Entry> iterator = oldest.entries.keySet().iterator();
+            iterator.next();
+            iterator.remove();
+            size--;
+            evictions++;
+            if (oldest.entries.isEmpty()) {
+                partitions.remove(0);
+            }
+        }
+    }
+
+    /**
+     * Returns the results cached for the provided stamp, and marks the stamp as the most recently used.
+     *
+     * @param stamp The stamp identifying the values the results depend on.
+     * @return The results cached for the stamp. Returns null if no results are cached for the stamp.
+     */
+    private Partition partition(long stamp)
+    {
+        int last = partitions.size() - 1;
+        for (int x = last; x >= 0; x--) {
+            Partition partition = partitions.get(x);
+            if (partition.stamp == stamp) {
+                if (x != last) {
+                    partitions.remove(x);
+                    partitions.add(partition);
+                }
+
+                return partition;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes all results from the cache. The counters are not reset.
+     */
+    public synchronized void clear()
+    {
+        partitions.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of results in the cache.
+     *
+     * @return The number of results in the cache.
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of results in the cache.
+     *
+     * @return The maximum number of results in the cache.
+     */
+    public int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the number of times a result was found in the cache.
+     *
+     * @return The number of times a result was found in the cache.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of times a result was not found in the cache.
+     *
+     * @return The number of times a result was not found in the cache.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the number of results evicted from the cache.
+     *
+     * @return The number of results evicted from the cache.
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * Returns the hash of the provided arguments.
+     *
+     * @param arguments The arguments.
+     * @return The hash of the provided arguments.
+     */
+    private static int hash(double[] arguments)
+    {
+        int result = 1;
+        for (double argument : arguments) {
+            long bits = Double.doubleToRawLongBits(argument);
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+        }
+
+        return result;
+    }
+
+    /**
+     * The results cached for a stamp.
+     */
+    private static final class Partition
+    {
+
+        /**
+         * The stamp identifying the values the results depend on.
+         */
+        private final long stamp;
+
+        /**
+         * The cached results, ordered from least to most recently used.
+         */
+        private final LinkedHashMap<Entry, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * Creates a new {@link Partition}.
+         *
+         * @param stamp The stamp identifying the values the results depend on.
+         */
+        Partition(long stamp)
+        {
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * A cached result, identified by the arguments of the call.
+     */
+    public static final class Entry
+    {
+
+        /**
+         * The arguments of the call.
+         */
+        private final double[] arguments;
+
+        /**
+         * The result of the call.
+         */
+        private final double result;
+
+        /**
+         * The hash of the arguments.
+         */
+        private int hash;
+
+        /**
+         * Creates a new {@link Entry}.
+         *
+         * @param arguments The arguments of the call.
+         * @param result    The result of the call.
+         */
+        private Entry(double[] arguments, double result)
+        {
+            this.arguments = arguments;
+            this.result = result;
+            this.hash = FunctionCache.hash(arguments);
+        }
+
+        /**
+         * Returns the result of the call.
+         *
+         * @return The result of the call.
+         */
+        public double getResult()
+        {
+            return result;
+        }
+
+        @Override public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof Entry)) return false;
+
+            Entry entry = (Entry) o;
+
+            if (hash != entry.hash) return false;
+            for (int x = 0; x < arguments.length; x++)
+                if (Double.doubleToRawLongBits(arguments[x]) != Double.doubleToRawLongBits(entry.arguments[x]))
+                    return false;
+
+            return true;
+        }
+
+        @Override public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
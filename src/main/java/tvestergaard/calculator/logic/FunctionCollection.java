@@ -1,16 +1,67 @@
 package tvestergaard.calculator.logic;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FunctionCollection
 {
 
+    /**
+     * The source of the versions of the collections. Versions are unique across all collections, so that two
+     * collections have the same version only when they contain the same functions.
+     */
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+
     /**
      * The functions in the collection.
      */
-    private HashMap<Integer, Function> functions = new HashMap<>();
+    private PersistentMap<ConcreteFunctionIdentifier, Function> functions = PersistentMap.empty();
+
+    /**
+     * The version of the collection. The version changes every time a function is added to the collection.
+     */
+    private int version = VERSIONS.incrementAndGet();
+
+    /**
+     * The library containing the functions available in addition to the functions in the collection.
+     */
+    private final Library library;
+
+    /**
+     * Creates a new empty {@link FunctionCollection}.
+     */
+    public FunctionCollection()
+    {
+        this(Library.EMPTY);
+    }
+
+    /**
+     * Creates a new {@link FunctionCollection}.
+     *
+     * @param library The library containing the functions available in addition to the functions in the collection.
+     */
+    public FunctionCollection(Library library)
+    {
+        this.library = library;
+    }
+
+    /**
+     * Returns a copy of the collection. The copy shares the functions and the library of the collection, and is not
+     * affected by functions added to the collection later, nor is the collection affected by functions added to the
+     * copy. The copy is created in constant time.
+     *
+     * @return The copy of the collection.
+     */
+    public FunctionCollection snapshot()
+    {
+        FunctionCollection snapshot = new FunctionCollection(library);
+        snapshot.functions = functions;
+        snapshot.version = version;
+        return snapshot;
+    }
 
     /**
      * Returns a function matching the provided identifier.
@@ -20,7 +71,12 @@ public class FunctionCollection
      */
     public Function get(FunctionIdentifier identifier)
     {
-        return functions.get(identifier.getIdentifier());
+        Function function = functions.get(ConcreteFunctionIdentifier.of(identifier));
+        if (function != null) {
+            return function;
+        }
+
+        return library.getFunction(identifier);
     }
 
     /**
@@ -30,7 +86,61 @@ public class FunctionCollection
      */
     public void add(Function function)
     {
-        functions.put(function.getIdentifier(), function);
+        functions = functions.with(ConcreteFunctionIdentifier.of(function), function);
+        version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Replaces the functions in the collection. Used when restoring a {@link SessionSnapshot}.
+     *
+     * @param functions The new functions.
+     */
+    void restore(PersistentMap<ConcreteFunctionIdentifier, Function> functions)
+    {
+        this.functions = functions;
+        this.version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Returns the version of the collection. The version changes every time a function is added to the collection, so
+     * that cached lookups can be invalidated. The version is unique across all collections, except the copies created
+     * using {@link #snapshot()} that have not been changed since.
+     *
+     * @return The version of the collection.
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns the number of functions in the collection.
+     *
+     * @return The number of functions in the collection.
+     */
+    public int size()
+    {
+        return library.getFunctions().size() + functions.size();
+    }
+
+    /**
+     * Returns the library containing the functions available in addition to the functions in the collection.
+     *
+     * @return The library of the collection.
+     */
+    Library getLibrary()
+    {
+        return library;
+    }
+
+    /**
+     * Returns the functions added to the collection, excluding the functions in the library.
+     *
+     * @return The functions added to the collection.
+     */
+    Collection<Function> getDefinedFunctions()
+    {
+        return functions.values();
     }
 
     /**
@@ -40,6 +150,8 @@ public class FunctionCollection
      */
     public Collection<Function> getFunctions()
     {
-        return Collections.unmodifiableCollection(functions.values());
+        List<Function> result = new ArrayList<>(library.getFunctions());
+        result.addAll(functions.values());
+        return Collections.unmodifiableList(result);
     }
 }
@@ -0,0 +1,463 @@
+package tvestergaard.calculator.logic;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles the bodies of custom functions into classes, so that the JVM can inline and optimize the body of the
+ * function as a whole. Calls to predefined functions implemented directly by a method in {@link Math} are compiled
+ * into direct calls to that method. Constants are inlined, since they cannot be redefined.
+ *
+ * Bodies that reference undefined variables or functions are not compiled, in which case the function is interpreted.
+ * Errors while defining or verifying a generated class are bugs in the compiler, and are not caught.
+ *
+ * The compiled bodies are kept by the compiler, not by the functions, since functions are shared between calculators
+ * with different constants and functions. The bodies are discarded when constants or functions are defined, and the
+ * classes compiled since are defined by a new class loader, so that the discarded classes can be unloaded. Like the
+ * evaluator using it, a compiler must not be used from multiple threads at the same time.
+ */
+public class FunctionCompiler
+{
+
+    /**
+     * The internal name of the super class of the generated classes.
+     */
+    private static final String BODY = "tvestergaard/calculator/logic/CompiledBody";
+
+    /**
+     * The internal name of the evaluator passed to the generated classes.
+     */
+    private static final String EVALUATOR = "tvestergaard/calculator/logic/DoubleEvaluator";
+
+    /**
+     * The package of the generated classes.
+     */
+    private static final String PACKAGE = "tvestergaard/calculator/logic/compiled/";
+
+    private static final String CONSTRUCTOR_DESCRIPTOR = "([Ltvestergaard/calculator/logic/Function;)V";
+    private static final String APPLY_DESCRIPTOR       = "(Ltvestergaard/calculator/logic/DoubleEvaluator;[DI)D";
+    private static final String CALL_DESCRIPTOR        = "(ILtvestergaard/calculator/logic/DoubleEvaluator;I)D";
+
+    /**
+     * The predefined functions that are compiled into direct calls to {@link Math}, mapped to the name of the method.
+     */
+    private static final Map<String, String> INTRINSICS = new HashMap<>();
+
+    static {
+        for (String name : new String[]{"abs", "acos", "asin", "atan", "cbrt", "ceil", "cos", "cosh", "exp", "floor",
+                "rint", "signum", "sin", "sinh", "sqrt", "tan", "tanh", "toDegrees", "toRadians"}) {
+            INTRINSICS.put(name + "/1", name);
+        }
+
+        for (String name : new String[]{"max", "min", "pow"}) {
+            INTRINSICS.put(name + "/2", name);
+        }
+    }
+
+    /**
+     * The memory of the calculator.
+     */
+    private final CalculatorMemory memory;
+
+    /**
+     * The functions defined in the calculator.
+     */
+    private final FunctionCollection functions;
+
+    /**
+     * The compiled bodies of the functions, compared by identity. A function maps to null when its body could not be
+     * compiled.
+     */
+    private final Map<CustomFunction, CompiledBody> bodies = new IdentityHashMap<>();
+
+    /**
+     * The stamp of the compiled bodies.
+     */
+    private long stamp;
+
+    /**
+     * The class loader defining the classes generated since the stamp last changed.
+     */
+    private Loader loader = new Loader();
+
+    /**
+     * The number of classes generated by the compiler.
+     */
+    private final AtomicInteger generated = new AtomicInteger();
+
+    /**
+     * Creates a new {@link FunctionCompiler}.
+     *
+     * @param memory    The memory of the calculator.
+     * @param functions The functions defined in the calculator.
+     */
+    public FunctionCompiler(CalculatorMemory memory, FunctionCollection functions)
+    {
+        this.memory = memory;
+        this.functions = functions;
+    }
+
+    /**
+     * Returns a stamp identifying the defined constants and functions. A compiled body must be compiled again, when
+     * the stamp changes, since newly defined constants and functions can change the meaning of the body.
+     *
+     * @return The stamp identifying the defined constants and functions.
+     */
+    public long getStamp()
+    {
+        return ((long) memory.getConstantsVersion() << 32) | (functions.getVersion() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the compiled body of the provided function. The function is compiled when it has not been compiled
+     * since constants or functions were last defined.
+     *
+     * @param function The function whose compiled body to return.
+     * @return The compiled body of the function. Returns null if the function could not be compiled.
+     */
+    public CompiledBody getBody(ConcreteCustomFunction function)
+    {
+        long stamp = getStamp();
+        if (stamp != this.stamp) {
+            bodies.clear();
+            loader = new Loader();
+            this.stamp = stamp;
+        }
+
+        CompiledBody body = bodies.get(function);
+        if (body == null && !bodies.containsKey(function)) {
+            body = compile(function, function.resolve(memory));
+            bodies.put(function, body);
+        }
+
+        return body;
+    }
+
+    /**
+     * Returns the number of classes generated by the compiler.
+     *
+     * @return The number of classes generated by the compiler.
+     */
+    public int getGeneratedCount()
+    {
+        return generated.get();
+    }
+
+    /**
+     * Compiles the body of the provided function.
+     *
+     * @param function The function to compile.
+     * @param body     The expression that is executed when the function is called, with references to the
+     *                 parameters resolved.
+     * @return The compiled body. Returns null if the body references undefined variables or functions, or is too
+     * large to be compiled.
+     */
+    public CompiledBody compile(CustomFunction function, ExpressionNode body)
+    {
+        try {
+            Emitter emitter = new Emitter();
+            body.accept(emitter);
+            emitter.emit(0xaf, -2); // dreturn
+
+            String          name   = PACKAGE + function.getName() + "_" + generated.incrementAndGet();
+            ClassFileWriter writer = new ClassFileWriter(name, BODY);
+            emitter.writeTo(writer);
+
+            int constructor = writer.methodEntry(BODY, "<init>", CONSTRUCTOR_DESCRIPTOR);
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESCRIPTOR, 2, 2, new byte[]{
+                    0x2a, // aload_0
+                    0x2b, // aload_1
+                    (byte) 0xb7, // invokespecial
+                    (byte) (constructor >> 8),
+                    (byte) constructor,
+                    (byte) 0xb1 // return
+            });
+
+            int        access  = ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL | ClassFileWriter.ACC_SUPER;
+            Class<?>   type    = loader.define(name.replace('/', '.'), writer.toByteArray(access));
+            Function[] targets = emitter.targets.toArray(new Function[emitter.targets.size()]);
+            return (CompiledBody) type.getConstructor(Function[].class).newInstance((Object) targets);
+        } catch (Unsupported e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            String message = String.format("Could not instantiate the compiled body of '%s'.", function.getSignature());
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Emits the bytecode of a compiled body.
+     */
+    private class Emitter implements NodeVisitor<Void>
+    {
+
+        /**
+         * The emitted bytecode.
+         */
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+        /**
+         * The functions called through {@link CompiledBody#call(int, DoubleEvaluator, int)}.
+         */
+        private final List<Function> targets = new ArrayList<>();
+
+        /**
+         * The constant pool entries referenced by the emitted bytecode, indexed by their position in the code.
+         */
+        private final List<Object[]> references = new ArrayList<>();
+
+        /**
+         * The current depth of the operand stack.
+         */
+        private int depth;
+
+        /**
+         * The maximum depth of the operand stack.
+         */
+        private int maxDepth;
+
+        @Override public Void visitLiteral(LiteralNode node)
+        {
+            pushDouble(node.getValue());
+            return null;
+        }
+
+        @Override public Void visitVariable(VariableNode node)
+        {
+            Double constant = memory.getConstant(node.getName());
+            if (constant == null) {
+                throw new Unsupported();
+            }
+
+            pushDouble(constant);
+            return null;
+        }
+
+        @Override public Void visitParameter(ParameterNode node)
+        {
+            emit(0x2c, 1); // aload_2
+            emit(0x1d, 1); // iload_3
+            pushInt(node.getIndex());
+            emit(0x60, -1); // iadd
+            emit(0x31, 0); // daload
+            return null;
+        }
+
+        @Override public Void visitBinary(BinaryNode node)
+        {
+            BinaryNode[] chain = node.getChain();
+            chain[0].getLeft().accept(this);
+            for (BinaryNode operation : chain) {
+                operation.getRight().accept(this);
+                emitOperator(operation.getOperator());
+            }
+
+            return null;
+        }
+
+        /**
+         * Emits the instruction applying the provided operator to the two operands on top of the operand stack.
+         *
+         * @param operator The operator to apply.
+         */
+        private void emitOperator(BinaryNode.Operator operator)
+        {
+            switch (operator) {
+                case ADD:
+                    emit(0x63, -2); // dadd
+                    break;
+                case SUBTRACT:
+                    emit(0x67, -2); // dsub
+                    break;
+                case MULTIPLY:
+                    emit(0x6b, -2); // dmul
+                    break;
+                case DIVIDE:
+                    emitReference(0xb8, -2, BODY, "divide", "(DD)D"); // invokestatic
+                    break;
+            }
+        }
+
+        @Override public Void visitCall(CallNode node)
+        {
+            Function function = node.resolve(functions);
+            if (function == null) {
+                throw new Unsupported();
+            }
+
+            int    argumentCount = node.getArgumentCount();
+            String intrinsic     = INTRINSICS.get(node.getName() + "/" + argumentCount);
+            if (intrinsic != null && function instanceof PredefinedFunction) {
+                for (int x = 0; x < argumentCount; x++)
+                    node.getArgument(x).accept(this);
+
+                String descriptor = argumentCount == 1 ? "(D)D" : "(DD)D";
+                emitReference(0xb8, 2 - 2 * argumentCount, "java/lang/Math", intrinsic, descriptor); // invokestatic
+                return null;
+            }
+
+            // The arguments are passed on the stack of the evaluator, so that calls do not allocate.
+            for (int x = 0; x < argumentCount; x++) {
+                node.getArgument(x).accept(this);
+                emit(0x2b, 1); // aload_1
+                emit(0x5b, 1); // dup_x2
+                emit(0x57, -1); // pop
+                emitReference(0xb6, -3, EVALUATOR, "push", "(D)V"); // invokevirtual
+            }
+
+            targets.add(function);
+            emit(0x2a, 1); // aload_0
+            pushInt(targets.size() - 1);
+            emit(0x2b, 1); // aload_1
+            pushInt(argumentCount);
+            emitReference(0xb6, -2, BODY, "call", CALL_DESCRIPTOR); // invokevirtual
+            return null;
+        }
+
+        /**
+         * Writes the emitted bytecode as the apply method of the class being written.
+         *
+         * @param writer The object writing the class.
+         */
+        void writeTo(ClassFileWriter writer)
+        {
+            byte[] bytes = code.toByteArray();
+            if (bytes.length > 0xFFFF) {
+                throw new Unsupported();
+            }
+
+            for (Object[] reference : references) {
+                int position = (Integer) reference[0];
+                int index = reference[1] instanceof Double
+                        ? writer.doubleEntry((Double) reference[1])
+                        : writer.methodEntry((String) reference[1], (String) reference[2], (String) reference[3]);
+                bytes[position] = (byte) (index >> 8);
+                bytes[position + 1] = (byte) index;
+            }
+
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC, "apply", APPLY_DESCRIPTOR, maxDepth, 4, bytes);
+        }
+
+        /**
+         * Emits an instruction without operands.
+         *
+         * @param opcode The opcode of the instruction.
+         * @param change The change of the depth of the operand stack caused by the instruction.
+         */
+        private void emit(int opcode, int change)
+        {
+            code.write(opcode);
+            depth += change;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Emits an instruction referencing a method in the constant pool.
+         *
+         * @param opcode     The opcode of the instruction.
+         * @param change     The change of the depth of the operand stack caused by the instruction.
+         * @param owner      The internal name of the class declaring the method.
+         * @param name       The name of the method.
+         * @param descriptor The descriptor of the method.
+         */
+        private void emitReference(int opcode, int change, String owner, String name, String descriptor)
+        {
+            emit(opcode, change);
+            references.add(new Object[]{code.size(), owner, name, descriptor});
+            code.write(0);
+            code.write(0);
+        }
+
+        /**
+         * Emits instructions pushing the provided double onto the operand stack.
+         *
+         * @param value The value to push.
+         */
+        private void pushDouble(double value)
+        {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                emit(0x0e, 2); // dconst_0
+                return;
+            }
+
+            if (value == 1.0) {
+                emit(0x0f, 2); // dconst_1
+                return;
+            }
+
+            emit(0x14, 2); // ldc2_w
+            references.add(new Object[]{code.size(), value});
+            code.write(0);
+            code.write(0);
+        }
+
+        /**
+         * Emits instructions pushing the provided int onto the operand stack.
+         *
+         * @param value The value to push.
+         */
+        private void pushInt(int value)
+        {
+            if (value <= 5) {
+                emit(0x03 + value, 1); // iconst_<n>
+                return;
+            }
+
+            if (value <= Byte.MAX_VALUE) {
+                emit(0x10, 1); // bipush
+                code.write(value);
+                return;
+            }
+
+            if (value > Short.MAX_VALUE) {
+                throw new Unsupported();
+            }
+
+            emit(0x11, 1); // sipush
+            code.write(value >> 8);
+            code.write(value);
+        }
+    }
+
+    /**
+     * Thrown when a body cannot be compiled.
+     */
+    private static class Unsupported extends RuntimeException
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        Unsupported()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Defines the generated classes.
+     */
+    private static class Loader extends ClassLoader
+    {
+        Loader()
+        {
+            super(FunctionCompiler.class.getClassLoader());
+        }
+
+        /**
+         * Defines a generated class.
+         *
+         * @param name  The binary name of the class.
+         * @param bytes The bytes of the class file.
+         * @return The defined class.
+         */
+        Class<?> define(String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -3,6 +3,20 @@ package tvestergaard.calculator.logic;
 public interface FunctionIdentifier
 {
 
+    /**
+     * Returns the name of the function.
+     *
+     * @return The name of the function.
+     */
+    String getName();
+
+    /**
+     * Returns the number of parameters in the function.
+     *
+     * @return The number of parameters in the function.
+     */
+    int getParameterCount();
+
     /**
      * Returns the identifier used when identifying the function.
      *
@@ -0,0 +1,120 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * The time spent calling a function while profiling. The time of a call is split into the time spent evaluating the
+ * arguments at the call site, and the time spent in the body of the function.
+ */
+public class FunctionProfile
+{
+
+    /**
+     * The profiled function.
+     */
+    private final Function function;
+
+    /**
+     * The number of calls to the function.
+     */
+    private long calls;
+
+    /**
+     * The time spent evaluating the arguments to the function in nanoseconds.
+     */
+    private long argumentNanos;
+
+    /**
+     * The time spent in the body of the function in nanoseconds.
+     */
+    private long bodyNanos;
+
+    /**
+     * The time spent in the body of the function, excluding the calls made from the body, in nanoseconds.
+     */
+    private long exclusiveNanos;
+
+    /**
+     * Creates a new {@link FunctionProfile}.
+     *
+     * @param function The profiled function.
+     */
+    public FunctionProfile(Function function)
+    {
+        this.function = function;
+    }
+
+    /**
+     * Records a call to the function.
+     *
+     * @param argumentNanos  The time spent evaluating the arguments.
+     * @param bodyNanos      The time spent in the body of the function.
+     * @param exclusiveNanos The time spent in the body of the function, excluding the calls made from the body.
+     */
+    void record(long argumentNanos, long bodyNanos, long exclusiveNanos)
+    {
+        this.calls++;
+        this.argumentNanos += argumentNanos;
+        this.bodyNanos += bodyNanos;
+        this.exclusiveNanos += exclusiveNanos;
+    }
+
+    /**
+     * Returns the profiled function.
+     *
+     * @return The profiled function.
+     */
+    public Function getFunction()
+    {
+        return function;
+    }
+
+    /**
+     * Returns the number of calls to the function.
+     *
+     * @return The number of calls to the function.
+     */
+    public long getCallCount()
+    {
+        return calls;
+    }
+
+    /**
+     * Returns the time spent evaluating the arguments to the function.
+     *
+     * @return The time spent evaluating the arguments to the function in nanoseconds.
+     */
+    public long getArgumentNanos()
+    {
+        return argumentNanos;
+    }
+
+    /**
+     * Returns the time spent in the body of the function.
+     *
+     * @return The time spent in the body of the function in nanoseconds.
+     */
+    public long getBodyNanos()
+    {
+        return bodyNanos;
+    }
+
+    /**
+     * Returns the time spent in calls to the function, including the evaluation of the arguments and the calls made
+     * from the body. Time spent in recursive calls is counted once for every call in progress.
+     *
+     * @return The time spent in calls to the function in nanoseconds.
+     */
+    public long getInclusiveNanos()
+    {
+        return argumentNanos + bodyNanos;
+    }
+
+    /**
+     * Returns the time spent in the body of the function, excluding the calls made from the body.
+     *
+     * @return The time spent in the body of the function, excluding the calls made from the body, in nanoseconds.
+     */
+    public long getExclusiveNanos()
+    {
+        return exclusiveNanos;
+    }
+}
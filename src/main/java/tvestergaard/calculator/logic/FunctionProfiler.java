@@ -0,0 +1,99 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the time spent calling functions, used by the 'profile' command. Calls are recorded by the
+ * {@link DoubleEvaluator} the profiler is installed on, which times the evaluation of the arguments and the body of
+ * every call it makes. Custom functions are interpreted while profiling, so that the calls made from their bodies are
+ * recorded too.
+ *
+ * The profiler keeps a stack with the time spent in the calls nested in every call in progress, so that the time
+ * spent in the body of a function can be reported without the calls it makes.
+ */
+public class FunctionProfiler
+{
+
+    /**
+     * The profiles of the called functions.
+     */
+    private final Map<Function, FunctionProfile> profiles = new IdentityHashMap<>();
+
+    /**
+     * The time spent in the calls nested in every call in progress.
+     */
+    private long[] nested = new long[64];
+
+    /**
+     * The number of calls in progress.
+     */
+    private int depth;
+
+    /**
+     * Marks the start of a call, before its arguments are evaluated. Must be followed by a call to
+     * {@link #exit(Function, long, long, long)}.
+     */
+    void enter()
+    {
+        if (depth == nested.length) {
+            nested = Arrays.copyOf(nested, depth * 2);
+        }
+
+        nested[depth++] = 0;
+    }
+
+    /**
+     * Returns the time spent in the calls nested in the innermost call in progress.
+     *
+     * @return The time spent in the calls nested in the innermost call in progress in nanoseconds.
+     */
+    long getNestedNanos()
+    {
+        return nested[depth - 1];
+    }
+
+    /**
+     * Marks the end of the innermost call in progress.
+     *
+     * @param function        The called function. Is null when the call failed before the function was called.
+     * @param argumentNanos   The time spent evaluating the arguments.
+     * @param bodyNanos       The time spent in the body of the function.
+     * @param argumentsNested The time spent in the calls nested in the arguments.
+     */
+    void exit(Function function, long argumentNanos, long bodyNanos, long argumentsNested)
+    {
+        long bodyNested = nested[--depth] - argumentsNested;
+        if (depth > 0) {
+            nested[depth - 1] += argumentNanos + bodyNanos;
+        }
+
+        if (function == null)
+            return;
+
+        FunctionProfile profile = profiles.get(function);
+        if (profile == null) {
+            profile = new FunctionProfile(function);
+            profiles.put(function, profile);
+        }
+
+        profile.record(argumentNanos, bodyNanos, bodyNanos - bodyNested);
+    }
+
+    /**
+     * Returns the profiles of the called functions, ordered by the time spent in the bodies of the functions,
+     * excluding the calls made from the bodies, starting with the most expensive function.
+     *
+     * @return The profiles of the called functions.
+     */
+    public List<FunctionProfile> getProfiles()
+    {
+        List<FunctionProfile> result = new ArrayList<>(profiles.values());
+        result.sort(Comparator.comparingLong(FunctionProfile::getExclusiveNanos).reversed());
+        return result;
+    }
+}
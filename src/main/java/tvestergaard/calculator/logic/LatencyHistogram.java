@@ -0,0 +1,107 @@
+package tvestergaard.calculator.logic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds. The latencies are counted in buckets whose bounds are powers of two, so
+ * recording a latency is cheap and the percentiles are accurate to within a factor of two. The histogram can be
+ * updated from multiple threads.
+ */
+public class LatencyHistogram
+{
+
+    /**
+     * The number of buckets. Bucket n counts the latencies in [2^(n-1), 2^n).
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * The number of latencies in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of recorded latencies.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of the recorded latencies.
+     */
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        count.increment();
+        total.add(nanos);
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return The number of recorded latencies.
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded latencies.
+     *
+     * @return The sum of the recorded latencies in nanoseconds.
+     */
+    public long getTotalNanos()
+    {
+        return total.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded latencies.
+     *
+     * @return The mean of the recorded latencies in nanoseconds. Returns 0 when no latencies have been recorded.
+     */
+    public double getMeanNanos()
+    {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getTotalNanos() / count;
+    }
+
+    /**
+     * Returns an upper bound of the provided percentile of the recorded latencies.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The upper bound of the percentile in nanoseconds. Returns 0 when no latencies have been recorded.
+     */
+    public long getPercentileNanos(double percentile)
+    {
+        long   count  = 0;
+        long[] counts = new long[BUCKETS];
+        for (int x = 0; x < BUCKETS; x++) {
+            counts[x] = buckets.get(x);
+            count += counts[x];
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int x = 0; x < BUCKETS; x++) {
+            seen += counts[x];
+            if (seen >= rank && seen > 0) {
+                return (1L << x) - 1;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,87 @@
+package tvestergaard.calculator.logic;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable set of functions and constants. A library can be shared by any number of calculators, also when the
+ * calculators are used from different threads.
+ */
+public final class Library
+{
+
+    /**
+     * The library without any functions or constants.
+     */
+    public static final Library EMPTY = new Library(Collections.emptyList(), Collections.emptyMap());
+
+    /**
+     * The functions in the library.
+     */
+    private final Map<ConcreteFunctionIdentifier, Function> functions;
+
+    /**
+     * The constants in the library.
+     */
+    private final Map<String, Double> constants;
+
+    /**
+     * Creates a new {@link Library}.
+     *
+     * @param functions The functions in the library.
+     * @param constants The constants in the library.
+     */
+    public Library(Collection<Function> functions, Map<String, Double> constants)
+    {
+        Map<ConcreteFunctionIdentifier, Function> functionMap = new HashMap<>();
+        for (Function function : functions)
+            functionMap.put(ConcreteFunctionIdentifier.of(function), function);
+
+        this.functions = Collections.unmodifiableMap(functionMap);
+        this.constants = Collections.unmodifiableMap(new HashMap<>(constants));
+    }
+
+    /**
+     * Returns a function matching the provided identifier.
+     *
+     * @param identifier The identifier of the function to return.
+     * @return The function matching the provided identifier. Returns null if no such function exists.
+     */
+    public Function getFunction(FunctionIdentifier identifier)
+    {
+        return functions.get(ConcreteFunctionIdentifier.of(identifier));
+    }
+
+    /**
+     * Returns the functions in the library.
+     *
+     * @return The functions in the library.
+     */
+    public Collection<Function> getFunctions()
+    {
+        return functions.values();
+    }
+
+    /**
+     * Returns the value of the constant with the provided name.
+     *
+     * @param name The name of the constant.
+     * @return The value of the constant. Returns null if no such constant exists.
+     */
+    public Double getConstant(String name)
+    {
+        return constants.get(name);
+    }
+
+    /**
+     * Returns the constants in the library.
+     *
+     * @return The constants in the library.
+     */
+    public Map<String, Double> getConstants()
+    {
+        return constants;
+    }
+}
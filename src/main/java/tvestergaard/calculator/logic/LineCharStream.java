@@ -0,0 +1,148 @@
+package tvestergaard.calculator.logic;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A character stream reading a line of a program directly from a buffer of bytes, followed by a line feed. The bytes
+ * are not decoded, every byte is read as one character. Since the grammar only accepts ASCII, programs encoded
+ * using UTF-8 are lexed correctly, only the text of invalid characters in error messages may differ.
+ *
+ * The stream can be reused for multiple lines using {@link #reset(ByteBuffer, int, int)}.
+ */
+public class LineCharStream implements CharStream
+{
+
+    /**
+     * The name of the source of the lines.
+     */
+    private final String sourceName;
+
+    /**
+     * The buffer containing the line.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The index of the first byte of the line in the buffer.
+     */
+    private int start;
+
+    /**
+     * The number of bytes in the line, not counting the line feed.
+     */
+    private int length;
+
+    /**
+     * The index of the next character to read.
+     */
+    private int position;
+
+    /**
+     * Creates a new {@link LineCharStream}.
+     *
+     * @param sourceName The name of the source of the lines.
+     */
+    public LineCharStream(String sourceName)
+    {
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Sets the line read by the stream, and moves to the start of the line.
+     *
+     * @param buffer The buffer containing the line.
+     * @param start  The index of the first byte of the line in the buffer.
+     * @param end    The index after the last byte of the line in the buffer, not including the line terminator.
+     * @return This stream.
+     */
+    public LineCharStream reset(ByteBuffer buffer, int start, int end)
+    {
+        this.buffer = buffer;
+        this.start = start;
+        this.length = end - start;
+        this.position = 0;
+        return this;
+    }
+
+    /**
+     * Returns the character at the provided index.
+     *
+     * @param index The index of the character.
+     * @return The character at the provided index.
+     */
+    private int charAt(int index)
+    {
+        return index == length ? '\n' : buffer.get(start + index) & 0xFF;
+    }
+
+    @Override public String getText(Interval interval)
+    {
+        int from = Math.max(interval.a, 0);
+        int to   = Math.min(interval.b, length);
+        if (to < from) {
+            return "";
+        }
+
+        char[] characters = new char[to - from + 1];
+        for (int x = from; x <= to; x++)
+            characters[x - from] = (char) charAt(x);
+
+        return new String(characters);
+    }
+
+    @Override public void consume()
+    {
+        if (position > length) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+
+        position++;
+    }
+
+    @Override public int LA(int i)
+    {
+        if (i == 0) {
+            return 0;
+        }
+
+        int index = i > 0 ? position + i - 1 : position + i;
+        if (index < 0 || index > length) {
+            return EOF;
+        }
+
+        return charAt(index);
+    }
+
+    @Override public int mark()
+    {
+        return -1;
+    }
+
+    @Override public void release(int marker)
+    {
+
+    }
+
+    @Override public int index()
+    {
+        return position;
+    }
+
+    @Override public void seek(int index)
+    {
+        position = Math.min(index, length + 1);
+    }
+
+    @Override public int size()
+    {
+        return length + 1;
+    }
+
+    @Override public String getSourceName()
+    {
+        return sourceName;
+    }
+}
@@ -0,0 +1,43 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * A literal value in the lowered expression tree. The literal is parsed once, when the tree is lowered.
+ */
+public class LiteralNode implements ExpressionNode
+{
+
+    /**
+     * The value of the literal.
+     */
+    private final double value;
+
+    /**
+     * Creates a new {@link LiteralNode}.
+     *
+     * @param value The value of the literal.
+     */
+    public LiteralNode(double value)
+    {
+        this.value = value;
+    }
+
+    /**
+     * Returns the value of the literal.
+     *
+     * @return The value of the literal.
+     */
+    public double getValue()
+    {
+        return value;
+    }
+
+    @Override public <T> T accept(NodeVisitor<T> visitor)
+    {
+        return visitor.visitLiteral(this);
+    }
+
+    @Override public double accept(DoubleNodeVisitor visitor)
+    {
+        return visitor.visitLiteral(this);
+    }
+}
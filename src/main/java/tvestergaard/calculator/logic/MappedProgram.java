@@ -0,0 +1,156 @@
+package tvestergaard.calculator.logic;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Reads the lines of a program file using memory mapping. The file is mapped in windows that end at a line feed, so
+ * that files larger than the maximum size of a single mapping can be read, and the lines are passed on as
+ * {@link LineCharStream} reading directly from the mapped bytes.
+ */
+public class MappedProgram
+{
+
+    /**
+     * The default size of the mapped windows.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+    /**
+     * The first bytes of files starting with a UTF-8 byte order mark.
+     */
+    private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * The size of the mapped windows.
+     */
+    private final int windowSize;
+
+    /**
+     * Creates a new {@link MappedProgram}.
+     *
+     * @param windowSize The size of the mapped windows. Windows are enlarged when a single line does not fit.
+     */
+    public MappedProgram(int windowSize)
+    {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("The size of the windows must be positive.");
+        }
+
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Passes every line in the provided file, that is not blank, to the provided consumer. The stream passed to the
+     * consumer is reused, and only valid until the consumer returns. Lines may end with either a line feed or a
+     * carriage return followed by a line feed.
+     *
+     * @param file     The file to read.
+     * @param consumer The consumer of the lines.
+     * @throws IOException When the file cannot be read.
+     */
+    public void forEachLine(Path file, Consumer<LineCharStream> consumer) throws IOException
+    {
+        LineCharStream stream = new LineCharStream(file.toString());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size     = channel.size();
+            long position = hasByteOrderMark(channel) ? BYTE_ORDER_MARK.length : 0;
+            int  window   = windowSize;
+
+            while (position < size) {
+                int              length = (int) Math.min(window, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean          last   = position + length == size;
+
+                int end = last ? length : lastLineFeed(buffer, length) + 1;
+                if (end == 0) {
+                    if (window == Integer.MAX_VALUE) {
+                        throw new IOException(String.format("Line at byte %d is too long.", position));
+                    }
+
+                    window = (int) Math.min((long) window * 2, Integer.MAX_VALUE);
+                    continue;
+                }
+
+                forEachLine(buffer, end, stream, consumer);
+                position += end;
+                window = windowSize;
+            }
+        }
+    }
+
+    /**
+     * Passes every line in the provided window, that is not blank, to the provided consumer.
+     *
+     * @param buffer   The mapped window.
+     * @param end      The index after the last byte of the lines in the window.
+     * @param stream   The stream passed to the consumer.
+     * @param consumer The consumer of the lines.
+     */
+    private static void forEachLine(
+            MappedByteBuffer buffer,
+            int end,
+            LineCharStream stream,
+            Consumer<LineCharStream> consumer)
+    {
+        int     start = 0;
+        boolean blank = true;
+        for (int x = 0; x <= end; x++) {
+            byte b = x < end ? buffer.get(x) : (byte) '\n';
+            if (b != '\n') {
+                blank &= b == ' ' || b == '\t' || b == '\r';
+                continue;
+            }
+
+            if (!blank) {
+                int lineEnd = x > start && buffer.get(x - 1) == '\r' ? x - 1 : x;
+                consumer.accept(stream.reset(buffer, start, lineEnd));
+            }
+
+            start = x + 1;
+            blank = true;
+        }
+    }
+
+    /**
+     * Returns the index of the last line feed in the provided window.
+     *
+     * @param buffer The mapped window.
+     * @param length The number of bytes in the window.
+     * @return The index of the last line feed in the window. Returns -1 when the window contains no line feed.
+     */
+    private static int lastLineFeed(MappedByteBuffer buffer, int length)
+    {
+        for (int x = length - 1; x >= 0; x--)
+            if (buffer.get(x) == '\n')
+                return x;
+
+        return -1;
+    }
+
+    /**
+     * Returns true if the provided file starts with a UTF-8 byte order mark.
+     *
+     * @param channel The channel of the file.
+     * @return true if the file starts with a UTF-8 byte order mark.
+     * @throws IOException When the file cannot be read.
+     */
+    private static boolean hasByteOrderMark(FileChannel channel) throws IOException
+    {
+        if (channel.size() < BYTE_ORDER_MARK.length) {
+            return false;
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, BYTE_ORDER_MARK.length);
+        for (int x = 0; x < BYTE_ORDER_MARK.length; x++)
+            if (buffer.get(x) != BYTE_ORDER_MARK[x])
+                return false;
+
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * Visits the nodes in a lowered expression tree.
+ *
+ * @param <T> The type returned when visiting a node.
+ */
+public interface NodeVisitor<T>
+{
+
+    /**
+     * Visits a literal value.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    T visitLiteral(LiteralNode node);
+
+    /**
+     * Visits a reference to a variable or constant.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    T visitVariable(VariableNode node);
+
+    /**
+     * Visits a reference to a parameter of a custom function.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    T visitParameter(ParameterNode node);
+
+    /**
+     * Visits a binary operation.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    T visitBinary(BinaryNode node);
+
+    /**
+     * Visits a function call.
+     *
+     * @param node The node to visit.
+     * @return The result of visiting the node.
+     */
+    T visitCall(CallNode node);
+}
@@ -0,0 +1,182 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Evaluates expressions over large batches of rows in parallel. The rows are split into chunks, that are evaluated
+ * by a {@link BatchEvaluator} of their own on the provided executor. The chunks evaluate the expression against a
+ * snapshot of the memory and functions of the calculator, so the calculator can be used while the chunks are
+ * running.
+ *
+ * When a chunk fails, its rows are evaluated one at a time, so that errors are reported for the failing rows only.
+ */
+public class ParallelEvaluator
+{
+
+    /**
+     * The default number of rows in a chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * BatchEvaluator.BLOCK_SIZE;
+
+    /**
+     * The executor running the chunks.
+     */
+    private final Executor executor;
+
+    /**
+     * The number of rows in a chunk.
+     */
+    private final int chunkSize;
+
+    /**
+     * Creates a new {@link ParallelEvaluator}.
+     *
+     * @param executor  The executor running the chunks.
+     * @param chunkSize The number of rows in a chunk.
+     */
+    public ParallelEvaluator(Executor executor, int chunkSize)
+    {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The size of the chunks must be positive.");
+        }
+
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Evaluates the provided expression for every row in a batch.
+     *
+     * @param memory    The snapshot of the memory to evaluate against.
+     * @param functions The snapshot of the functions to evaluate against.
+     * @param node      The expression to evaluate.
+     * @param columns   The columns containing the values of the variables.
+     * @param rows      The number of rows.
+     * @return The results of the rows.
+     */
+    public BatchResult evaluate(
+            CalculatorMemory memory,
+            FunctionCollection functions,
+            ExpressionNode node,
+            Map<String, double[]> columns,
+            int rows)
+    {
+        return run(memory, functions, rows, (evaluator, values, start, end) ->
+                evaluator.evaluate(node, columns, values, start, end));
+    }
+
+    /**
+     * Calls the provided function for every row in a batch.
+     *
+     * @param memory    The snapshot of the memory to evaluate against.
+     * @param functions The snapshot of the functions to evaluate against.
+     * @param function  The function to call.
+     * @param arguments The columns containing the arguments to the function, one column per parameter.
+     * @param rows      The number of rows.
+     * @return The results of the rows.
+     */
+    public BatchResult call(
+            CalculatorMemory memory,
+            FunctionCollection functions,
+            Function function,
+            double[][] arguments,
+            int rows)
+    {
+        return run(memory, functions, rows, (evaluator, values, start, end) ->
+                evaluator.call(function, arguments, values, start, end));
+    }
+
+    /**
+     * Splits the rows into chunks, and runs the provided task for every chunk on the executor.
+     *
+     * @param memory    The snapshot of the memory to evaluate against.
+     * @param functions The snapshot of the functions to evaluate against.
+     * @param rows      The number of rows.
+     * @param task      The task evaluating a range of rows.
+     * @return The results of the rows.
+     */
+    private BatchResult run(CalculatorMemory memory, FunctionCollection functions, int rows, Task task)
+    {
+        double[]                      values  = new double[rows];
+        String[]                      errors  = new String[rows];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int start = 0; start < rows; start += chunkSize) {
+            int end   = (int) Math.min((long) start + chunkSize, rows);
+            int first = start;
+            futures.add(CompletableFuture.runAsync(() -> {
+                DoubleEvaluator evaluator = new DoubleEvaluator(memory, functions);
+                BatchEvaluator  batch     = new BatchEvaluator(memory, functions, evaluator);
+                runChunk(batch, task, values, errors, first, end);
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+
+        return new BatchResult(values, errors);
+    }
+
+    /**
+     * Evaluates a chunk of rows. When the chunk fails, the rows are evaluated one at a time.
+     *
+     * @param batch  The evaluator of the chunk.
+     * @param task   The task evaluating a range of rows.
+     * @param values The values of the rows.
+     * @param errors The errors of the rows.
+     * @param start  The index of the first row in the chunk.
+     * @param end    The index after the last row in the chunk.
+     */
+    private static void runChunk(BatchEvaluator batch, Task task, double[] values, String[] errors, int start, int end)
+    {
+        try {
+            task.run(batch, values, start, end);
+            return;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // One or more rows failed, find out which.
+        }
+
+        for (int row = start; row < end; row++) {
+            try {
+                task.run(batch, values, row, row + 1);
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                values[row] = Double.NaN;
+                errors[row] = e.getMessage();
+            }
+        }
+    }
+
+    /**
+     * Evaluates a range of rows.
+     */
+    @FunctionalInterface
+    private interface Task
+    {
+
+        /**
+         * Evaluates a range of rows.
+         *
+         * @param evaluator The evaluator to use.
+         * @param values    The array the results are written to.
+         * @param start     The index of the first row to evaluate.
+         * @param end       The index after the last row to evaluate.
+         */
+        void run(BatchEvaluator evaluator, double[] values, int start, int end);
+    }
+}
@@ -0,0 +1,64 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * A reference to a parameter of a custom function in the lowered expression tree. The parameter is resolved to the
+ * index of the argument in the frame of the function, when the function is declared.
+ */
+public class ParameterNode implements ExpressionNode
+{
+
+    /**
+     * The name of the referenced parameter.
+     */
+    private final String name;
+
+    /**
+     * The index of the referenced parameter.
+     */
+    private final int index;
+
+    /**
+     * Creates a new {@link ParameterNode}.
+     *
+     * @param name  The name of the referenced parameter.
+     * @param index The index of the referenced parameter.
+     */
+    public ParameterNode(String name, int index)
+    {
+        assert name != null;
+        assert index >= 0;
+
+        this.name = name;
+        this.index = index;
+    }
+
+    /**
+     * Returns the name of the referenced parameter.
+     *
+     * @return The name of the referenced parameter.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the index of the referenced parameter.
+     *
+     * @return The index of the referenced parameter.
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+    @Override public <T> T accept(NodeVisitor<T> visitor)
+    {
+        return visitor.visitParameter(this);
+    }
+
+    @Override public double accept(DoubleNodeVisitor visitor)
+    {
+        return visitor.visitParameter(this);
+    }
+}
@@ -0,0 +1,89 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the references to the parameters in the body of a custom function into {@link ParameterNode}, so that
+ * the arguments of the function can be read from a frame by index. References to names that are also constants are
+ * not resolved, since constants take precedence over parameters.
+ */
+public class ParameterResolver implements NodeVisitor<ExpressionNode>
+{
+
+    /**
+     * The indices of the parameters of the function.
+     */
+    private final Map<String, Integer> parameters = new HashMap<>();
+
+    /**
+     * The memory containing the defined constants.
+     */
+    private final CalculatorMemory memory;
+
+    /**
+     * Creates a new {@link ParameterResolver}.
+     *
+     * @param parameters The parameters of the function.
+     * @param memory     The memory containing the defined constants.
+     */
+    public ParameterResolver(List<String> parameters, CalculatorMemory memory)
+    {
+        for (int x = 0; x < parameters.size(); x++)
+            this.parameters.put(parameters.get(x), x);
+
+        this.memory = memory;
+    }
+
+    /**
+     * Resolves the references to the parameters in the provided expression.
+     *
+     * @param node The expression in which to resolve the references.
+     * @return The expression with the references resolved.
+     */
+    public ExpressionNode resolve(ExpressionNode node)
+    {
+        return node.accept(this);
+    }
+
+    @Override public ExpressionNode visitLiteral(LiteralNode node)
+    {
+        return node;
+    }
+
+    @Override public ExpressionNode visitVariable(VariableNode node)
+    {
+        Integer index = parameters.get(node.getName());
+        if (index == null || memory.getConstant(node.getName()) != null) {
+            return node;
+        }
+
+        return new ParameterNode(node.getName(), index);
+    }
+
+    @Override public ExpressionNode visitParameter(ParameterNode node)
+    {
+        return node;
+    }
+
+    @Override public ExpressionNode visitBinary(BinaryNode node)
+    {
+        BinaryNode[]   chain = node.getChain();
+        ExpressionNode left  = chain[0].getLeft().accept(this);
+        for (BinaryNode operation : chain)
+            left = new BinaryNode(operation.getOperator(), left, operation.getRight().accept(this));
+
+        return left;
+    }
+
+    @Override public ExpressionNode visitCall(CallNode node)
+    {
+        List<ExpressionNode> arguments = new ArrayList<>(node.getArgumentCount());
+        for (int x = 0; x < node.getArgumentCount(); x++)
+            arguments.add(node.getArgument(x).accept(this));
+
+        return new CallNode(node.getName(), arguments);
+    }
+}
@@ -0,0 +1,460 @@
+package tvestergaard.calculator.logic;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable hash map, where adding an entry returns a new map sharing all unchanged parts with the previous map.
+ * The map is a hash array mapped trie: every level of the trie is indexed by 5 bits of the hash of the keys, so that
+ * adding an entry copies at most one small node per level, and a map can be copied in constant time by sharing it.
+ *
+ * The map does not accept null keys. The mutating methods of {@link java.util.Map} throw
+ * {@link UnsupportedOperationException}, use {@link #with(Object, Object)} and {@link #without(Object)} instead.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V>
+{
+
+    /**
+     * The map without any entries.
+     */
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0);
+
+    /**
+     * Returned by the nodes when a key is not in the map.
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    /**
+     * The root of the trie.
+     */
+    private final Node root;
+
+    /**
+     * The number of entries in the map.
+     */
+    private final int size;
+
+    /**
+     * Creates a new {@link PersistentMap}.
+     *
+     * @param root The root of the trie.
+     * @param size The number of entries in the map.
+     */
+    private PersistentMap(Node root, int size)
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the map without any entries.
+     *
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The map without any entries.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty()
+    {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a map containing the entries of this map, and the provided entry. The entry replaces the entry with
+     * the same key in this map.
+     *
+     * @param key   The key of the entry.
+     * @param value The value of the entry.
+     * @return The map containing the entries of this map, and the provided entry.
+     */
+    public PersistentMap<K, V> with(K key, V value)
+    {
+        if (key == null) {
+            throw new NullPointerException("The map does not accept null keys.");
+        }
+
+        int  hash    = hash(key);
+        int  newSize = root.find(0, hash, key) == NOT_FOUND ? size + 1 : size;
+        Node newRoot = root.put(0, hash, key, value);
+        if (newRoot == root) {
+            return this;
+        }
+
+        return new PersistentMap<>(newRoot, newSize);
+    }
+
+    /**
+     * Returns a map containing the entries of this map, except the entry with the provided key.
+     *
+     * @param key The key of the entry to leave out.
+     * @return The map containing the entries of this map, except the entry with the provided key.
+     */
+    public PersistentMap<K, V> without(Object key)
+    {
+        if (!containsKey(key)) {
+            return this;
+        }
+
+        Node newRoot = root.remove(0, hash(key), key);
+        return new PersistentMap<>(newRoot == null ? BitmapNode.EMPTY : newRoot, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public V get(Object key)
+    {
+        if (key == null)
+            return null;
+
+        Object value = root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    @Override public boolean containsKey(Object key)
+    {
+        return key != null && root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    @Override public int size()
+    {
+        return size;
+    }
+
+    @Override public Set<Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Entry<K, V>>()
+        {
+            @SuppressWarnings("unchecked")
+            @Override public Iterator<Entry<K, V>> iterator()
+            {
+                List<Entry<?, ?>> entries = new ArrayList<>(size);
+                root.collect(entries);
+                return (Iterator<Entry<K, V>>) (Iterator<?>) entries.iterator();
+            }
+
+            @Override public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Returns the spread hash of the provided key.
+     *
+     * @param key The key.
+     * @return The spread hash of the provided key.
+     */
+    private static int hash(Object key)
+    {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A node in the trie.
+     */
+    private interface Node
+    {
+
+        /**
+         * Returns the value of the provided key.
+         *
+         * @param shift The number of bits of the hash used by the levels above the node.
+         * @param hash  The hash of the key.
+         * @param key   The key.
+         * @return The value of the key. Returns {@link #NOT_FOUND} if the key is not in the node.
+         */
+        Object find(int shift, int hash, Object key);
+
+        /**
+         * Returns a node containing the entries of this node, and the provided entry.
+         *
+         * @param shift The number of bits of the hash used by the levels above the node.
+         * @param hash  The hash of the key.
+         * @param key   The key of the entry.
+         * @param value The value of the entry.
+         * @return The node containing the entries of this node, and the provided entry.
+         */
+        Node put(int shift, int hash, Object key, Object value);
+
+        /**
+         * Returns a node containing the entries of this node, except the entry with the provided key.
+         *
+         * @param shift The number of bits of the hash used by the levels above the node.
+         * @param hash  The hash of the key.
+         * @param key   The key of the entry to leave out.
+         * @return The node without the entry. Returns null when the node would be empty.
+         */
+        Node remove(int shift, int hash, Object key);
+
+        /**
+         * Adds the entries in the node to the provided list.
+         *
+         * @param entries The list to add the entries to.
+         */
+        void collect(List<Entry<?, ?>> entries);
+    }
+
+    /**
+     * A node containing up to 32 entries or child nodes, indexed by 5 bits of the hash of the keys. Only the present
+     * slots are stored, the bitmap records which slots are present.
+     */
+    private static final class BitmapNode implements Node
+    {
+
+        /**
+         * The node without any entries.
+         */
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        /**
+         * The slots that are present in the node.
+         */
+        private final int bitmap;
+
+        /**
+         * The keys and values of the present slots. The key of a slot containing a child node is null, and its value
+         * is the child node.
+         */
+        private final Object[] array;
+
+        /**
+         * Creates a new {@link BitmapNode}.
+         *
+         * @param bitmap The slots that are present in the node.
+         * @param array  The keys and values of the present slots.
+         */
+        BitmapNode(int bitmap, Object[] array)
+        {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override public Object find(int shift, int hash, Object key)
+        {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((bitmap & bit) == 0)
+                return NOT_FOUND;
+
+            int    index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object found = array[index];
+            if (found == null)
+                return ((Node) array[index + 1]).find(shift + 5, hash, key);
+
+            return key.equals(found) ? array[index + 1] : NOT_FOUND;
+        }
+
+        @Override public Node put(int shift, int hash, Object key, Object value)
+        {
+            int bit   = 1 << ((hash >>> shift) & 31);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, index);
+                copy[index] = key;
+                copy[index + 1] = value;
+                System.arraycopy(array, index, copy, index + 2, array.length - index);
+                return new BitmapNode(bitmap | bit, copy);
+            }
+
+            Object existingKey   = array[index];
+            Object existingValue = array[index + 1];
+            if (existingKey == null) {
+                Node child = ((Node) existingValue).put(shift + 5, hash, key, value);
+                return child == existingValue ? this : replace(index + 1, child);
+            }
+
+            if (key.equals(existingKey)) {
+                return existingValue == value ? this : replace(index + 1, value);
+            }
+
+            Node     child = split(shift + 5, existingKey, existingValue, hash, key, value);
+            Object[] copy  = array.clone();
+            copy[index] = null;
+            copy[index + 1] = child;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override public Node remove(int shift, int hash, Object key)
+        {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((bitmap & bit) == 0)
+                return this;
+
+            int    index         = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object existingKey   = array[index];
+            Object existingValue = array[index + 1];
+            if (existingKey == null) {
+                Node child = ((Node) existingValue).remove(shift + 5, hash, key);
+                if (child == existingValue)
+                    return this;
+
+                return child == null ? removeSlot(bit, index) : replace(index + 1, child);
+            }
+
+            return key.equals(existingKey) ? removeSlot(bit, index) : this;
+        }
+
+        @Override public void collect(List<Entry<?, ?>> entries)
+        {
+            for (int x = 0; x < array.length; x += 2) {
+                if (array[x] == null)
+                    ((Node) array[x + 1]).collect(entries);
+                else
+                    entries.add(new SimpleImmutableEntry<>(array[x], array[x + 1]));
+            }
+        }
+
+        /**
+         * Returns a copy of the node with the provided element of the array replaced.
+         *
+         * @param index   The index of the element in the array.
+         * @param element The new element.
+         * @return The copy of the node.
+         */
+        private BitmapNode replace(int index, Object element)
+        {
+            Object[] copy = array.clone();
+            copy[index] = element;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        /**
+         * Returns a copy of the node without the provided slot.
+         *
+         * @param bit   The bit of the slot in the bitmap.
+         * @param index The index of the key of the slot in the array.
+         * @return The copy of the node. Returns null when the node would be empty.
+         */
+        private BitmapNode removeSlot(int bit, int index)
+        {
+            if (bitmap == bit)
+                return null;
+
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, index);
+            System.arraycopy(array, index + 2, copy, index, array.length - index - 2);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        /**
+         * Returns a node containing the two provided entries, whose keys share the slot at the level above.
+         *
+         * @param shift  The number of bits of the hash used by the levels above the node.
+         * @param key    The key of the first entry.
+         * @param value  The value of the first entry.
+         * @param hash   The hash of the key of the second entry.
+         * @param key2   The key of the second entry.
+         * @param value2 The value of the second entry.
+         * @return The node containing the two entries.
+         */
+        private static Node split(int shift, Object key, Object value, int hash, Object key2, Object value2)
+        {
+            int hash1 = hash(key);
+            if (hash1 == hash) {
+                return new CollisionNode(hash, new Object[]{key, value, key2, value2});
+            }
+
+            return EMPTY.put(shift, hash1, key, value).put(shift, hash, key2, value2);
+        }
+    }
+
+    /**
+     * A node containing the entries whose keys have the same hash.
+     */
+    private static final class CollisionNode implements Node
+    {
+
+        /**
+         * The hash of the keys in the node.
+         */
+        private final int hash;
+
+        /**
+         * The keys and values of the entries in the node.
+         */
+        private final Object[] array;
+
+        /**
+         * Creates a new {@link CollisionNode}.
+         *
+         * @param hash  The hash of the keys in the node.
+         * @param array The keys and values of the entries in the node.
+         */
+        CollisionNode(int hash, Object[] array)
+        {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override public Object find(int shift, int hash, Object key)
+        {
+            if (hash != this.hash)
+                return NOT_FOUND;
+
+            for (int x = 0; x < array.length; x += 2)
+                if (key.equals(array[x]))
+                    return array[x + 1];
+
+            return NOT_FOUND;
+        }
+
+        @Override public Node put(int shift, int hash, Object key, Object value)
+        {
+            if (hash != this.hash) {
+                BitmapNode parent = new BitmapNode(1 << ((this.hash >>> shift) & 31), new Object[]{null, this});
+                return parent.put(shift, hash, key, value);
+            }
+
+            for (int x = 0; x < array.length; x += 2) {
+                if (key.equals(array[x])) {
+                    if (array[x + 1] == value)
+                        return this;
+
+                    Object[] copy = array.clone();
+                    copy[x + 1] = value;
+                    return new CollisionNode(hash, copy);
+                }
+            }
+
+            Object[] copy = new Object[array.length + 2];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override public Node remove(int shift, int hash, Object key)
+        {
+            if (hash != this.hash)
+                return this;
+
+            for (int x = 0; x < array.length; x += 2) {
+                if (key.equals(array[x])) {
+                    if (array.length == 2)
+                        return null;
+
+                    Object[] copy = new Object[array.length - 2];
+                    System.arraycopy(array, 0, copy, 0, x);
+                    System.arraycopy(array, x + 2, copy, x, array.length - x - 2);
+                    return new CollisionNode(hash, copy);
+                }
+            }
+
+            return this;
+        }
+
+        @Override public void collect(List<Entry<?, ?>> entries)
+        {
+            for (int x = 0; x < array.length; x += 2)
+                entries.add(new SimpleImmutableEntry<>(array[x], array[x + 1]));
+        }
+    }
+}
@@ -9,18 +9,37 @@ public abstract class PredefinedFunction extends AbstractFunction
     private final String signature;
 
     /**
-     * Creates a new predefined function.
+     * Whether or not the predefined function is pure.
+     */
+    private final boolean pure;
+
+    /**
+     * Creates a new pure predefined function.
      *
      * @param name           The name of the function.
      * @param parameterCount The number of parameters in the function.
      * @param signature      The signature of the function.
      */
     public PredefinedFunction(String name, int parameterCount, String signature)
+    {
+        this(name, parameterCount, signature, true);
+    }
+
+    /**
+     * Creates a new predefined function.
+     *
+     * @param name           The name of the function.
+     * @param parameterCount The number of parameters in the function.
+     * @param signature      The signature of the function.
+     * @param pure           Whether or not the function always returns the same result for the same arguments.
+     */
+    public PredefinedFunction(String name, int parameterCount, String signature, boolean pure)
     {
         super(name, parameterCount);
 
         assert signature != null;
         this.signature = signature;
+        this.pure = pure;
     }
 
     /**
@@ -32,4 +51,14 @@ public abstract class PredefinedFunction extends AbstractFunction
     {
         return this.signature;
     }
+
+    /**
+     * Returns true if the function is pure.
+     *
+     * @return true if the function is pure.
+     */
+    @Override public boolean isPure()
+    {
+        return pure;
+    }
 }
@@ -0,0 +1,170 @@
+package tvestergaard.calculator.logic;
+
+import tvestergaard.calculator.antlr.CalculatorParser.ProgramContext;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches parsed programs by their source code, so that programs executed repeatedly are only lexed and parsed once.
+ * The cache is bounded both by the number of programs and by the total length of their source code. The least
+ * recently used programs are evicted first.
+ */
+public class ProgramCache
+{
+
+    /**
+     * The cached programs, ordered from least to most recently used.
+     */
+    private final LinkedHashMap<String, ProgramContext> programs = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The maximum number of programs in the cache.
+     */
+    private final int maximumSize;
+
+    /**
+     * The maximum total length of the source code of the programs in the cache.
+     */
+    private final long maximumWeight;
+
+    /**
+     * The total length of the source code of the programs in the cache.
+     */
+    private long weight;
+
+    /**
+     * The number of times a program was found in the cache.
+     */
+    private long hits;
+
+    /**
+     * The number of times a program was not found in the cache.
+     */
+    private long misses;
+
+    /**
+     * The number of programs evicted from the cache.
+     */
+    private long evictions;
+
+    /**
+     * Creates a new {@link ProgramCache}.
+     *
+     * @param maximumSize   The maximum number of programs in the cache.
+     * @param maximumWeight The maximum total length of the source code of the programs in the cache.
+     */
+    public ProgramCache(int maximumSize, long maximumWeight)
+    {
+        if (maximumSize < 0 || maximumWeight < 0) {
+            throw new IllegalArgumentException("The limits of the cache cannot be negative.");
+        }
+
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * Returns the cached program with the provided source code.
+     *
+     * @param source The source code of the program.
+     * @return The cached program. Returns null if the program is not in the cache.
+     */
+    public synchronized ProgramContext get(String source)
+    {
+        ProgramContext program = programs.get(source);
+        if (program == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return program;
+    }
+
+    /**
+     * Adds a program to the cache, evicting the least recently used programs when the limits of the cache are
+     * exceeded. Programs larger than the maximum weight of the cache are not cached.
+     *
+     * @param source  The source code of the program.
+     * @param program The parsed program.
+     */
+    public synchronized void put(String source, ProgramContext program)
+    {
+        if (source.length() > maximumWeight || maximumSize == 0) {
+            return;
+        }
+
+        if (programs.put(source, program) == null) {
+            weight += source.length();
+        }
+
+        Iterator<Map.Entry<String, ProgramContext>> iterator = programs.entrySet().iterator();
+        while (programs.size() > maximumSize || weight > maximumWeight) {
+            String eldest = iterator.next().getKey();
+            iterator.remove();
+            weight -= eldest.length();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all programs from the cache. The counters are not reset.
+     */
+    public synchronized void clear()
+    {
+        programs.clear();
+        weight = 0;
+    }
+
+    /**
+     * Returns the number of programs in the cache.
+     *
+     * @return The number of programs in the cache.
+     */
+    public synchronized int size()
+    {
+        return programs.size();
+    }
+
+    /**
+     * Returns the total length of the source code of the programs in the cache.
+     *
+     * @return The total length of the source code of the programs in the cache.
+     */
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * Returns the number of times a program was found in the cache.
+     *
+     * @return The number of times a program was found in the cache.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of times a program was not found in the cache.
+     *
+     * @return The number of times a program was not found in the cache.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the number of programs evicted from the cache.
+     *
+     * @return The number of programs evicted from the cache.
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+}
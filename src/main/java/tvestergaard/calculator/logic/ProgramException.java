@@ -2,6 +2,9 @@ package tvestergaard.calculator.logic;
 
 public class ProgramException extends Exception
 {
+
+    private static final long serialVersionUID = 1L;
+
     /**
      * Constructs a new exception with the specified detail message.  The
      * cause is not initialized, and may subsequently be initialized by
@@ -0,0 +1,228 @@
+package tvestergaard.calculator.logic;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import tvestergaard.calculator.antlr.CalculatorLexer;
+import tvestergaard.calculator.antlr.CalculatorParser;
+import tvestergaard.calculator.antlr.CalculatorParser.ProgramContext;
+
+import java.util.Collections;
+
+/**
+ * Parses programs using a lexer and parser that are reused for every program parsed on the same thread. Instances
+ * are obtained using {@link #get()}, and must not be shared between threads.
+ *
+ * The program is first parsed using the faster SLL prediction mode, bailing out on the first syntax error. Only when
+ * that fails, the program is parsed again using full LL prediction, reporting the syntax errors.
+ *
+ * The lexer and parser do not keep references to a program after it has been parsed, so the input of the last
+ * program, like the mapped window of a program file, is not kept reachable by the thread that parsed it.
+ */
+public class ProgramParser
+{
+
+    /**
+     * The parsers of the threads.
+     */
+    private static final ThreadLocal<ProgramParser> parsers = ThreadLocal.withInitial(ProgramParser::new);
+
+    /**
+     * The empty input the lexer reads from between programs.
+     */
+    private final CharStream emptyInput = CharStreams.fromString("");
+
+    /**
+     * The reused lexer.
+     */
+    private final CalculatorLexer lexer = new CalculatorLexer(emptyInput);
+
+    /**
+     * The empty token source the token stream reads from between programs.
+     */
+    private final TokenSource emptySource = new ListTokenSource(Collections.<Token>emptyList());
+
+    /**
+     * The reused token stream.
+     */
+    private final CommonTokenStream tokens = new CommonTokenStream(lexer);
+
+    /**
+     * The reused parser.
+     */
+    private final CalculatorParser parser = new CalculatorParser(tokens);
+
+    /**
+     * The simulator of the reused parser.
+     */
+    private final ReleasingParserATNSimulator simulator;
+
+    /**
+     * The error strategy used when parsing using SLL prediction.
+     */
+    private final BailErrorStrategy bailErrorStrategy = new BailErrorStrategy();
+
+    /**
+     * The error strategy used when parsing using LL prediction.
+     */
+    private final DefaultErrorStrategy defaultErrorStrategy = new DefaultErrorStrategy();
+
+    /**
+     * The listener forwarding syntax errors to the output of the program currently being parsed.
+     */
+    private final OutputErrorListener errorListener = new OutputErrorListener();
+
+    /**
+     * Creates a new {@link ProgramParser}.
+     */
+    private ProgramParser()
+    {
+        ParserATNSimulator interpreter = parser.getInterpreter();
+        simulator = new ReleasingParserATNSimulator(
+                parser,
+                parser.getATN(),
+                interpreter.decisionToDFA,
+                interpreter.getSharedContextCache()
+        );
+        parser.setInterpreter(simulator);
+    }
+
+    /**
+     * Returns the parser of the current thread.
+     *
+     * @return The parser of the current thread.
+     */
+    public static ProgramParser get()
+    {
+        return parsers.get();
+    }
+
+    /**
+     * Parses the provided program.
+     *
+     * @param program The program to parse.
+     * @param output  The object to report syntax errors to.
+     * @return The parsed program.
+     */
+    public ProgramContext parse(String program, CalculatorOutput output)
+    {
+        return parse(CharStreams.fromString(program), output);
+    }
+
+    /**
+     * Parses the program read from the provided stream.
+     *
+     * @param program The stream to read the program from.
+     * @param output  The object to report syntax errors to.
+     * @return The parsed program.
+     */
+    public ProgramContext parse(CharStream program, CalculatorOutput output)
+    {
+        lexer.setInputStream(program);
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+        parser.removeErrorListeners();
+
+        try {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.setErrorHandler(bailErrorStrategy);
+            return parser.program();
+        } catch (ParseCancellationException e) {
+            tokens.seek(0);
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(defaultErrorStrategy);
+            parser.addErrorListener(errorListener);
+            errorListener.output = output;
+
+            try {
+                return parser.program();
+            } finally {
+                errorListener.output = null;
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Releases the references to the last parsed program held by the lexer, the token stream and the parser.
+     */
+    private void release()
+    {
+        tokens.setTokenSource(emptySource);
+        lexer.setInputStream(emptyInput);
+        simulator.release();
+    }
+
+    /**
+     * Returns the number of syntax errors reported while parsing the last program.
+     *
+     * @return The number of syntax errors reported while parsing the last program.
+     */
+    public int getNumberOfSyntaxErrors()
+    {
+        return parser.getNumberOfSyntaxErrors();
+    }
+
+    /**
+     * Forwards syntax errors to the output of the program currently being parsed.
+     */
+    private static class OutputErrorListener extends BaseErrorListener
+    {
+
+        /**
+         * The output of the program currently being parsed.
+         */
+        private CalculatorOutput output;
+
+        @Override public void syntaxError(
+                Recognizer<?, ?> recognizer,
+                Object offendingSymbol,
+                int line,
+                int charPositionInLine,
+                String msg,
+                RecognitionException e)
+        {
+            output.error(msg);
+        }
+    }
+
+    /**
+     * A parser simulator that can release the token stream and context of the last prediction, that are otherwise
+     * kept until the next prediction.
+     */
+    private static class ReleasingParserATNSimulator extends ParserATNSimulator
+    {
+
+        /**
+         * Creates a new {@link ReleasingParserATNSimulator}.
+         *
+         * @param parser        The parser using the simulator.
+         * @param atn           The ATN of the parser.
+         * @param decisionToDFA The prediction caches shared by the parsers of the grammar.
+         * @param contextCache  The prediction context cache shared by the parsers of the grammar.
+         */
+        private ReleasingParserATNSimulator(
+                Parser parser,
+                ATN atn,
+                DFA[] decisionToDFA,
+                PredictionContextCache contextCache)
+        {
+            super(parser, atn, decisionToDFA, contextCache);
+        }
+
+        /**
+         * Releases the token stream and context of the last prediction.
+         */
+        private void release()
+        {
+            _input = null;
+            _outerContext = null;
+        }
+    }
+}
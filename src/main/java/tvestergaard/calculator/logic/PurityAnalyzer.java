@@ -0,0 +1,77 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * Determines whether or not an expression is pure. An expression is pure when it only calls pure functions, so that
+ * evaluating it has no side effects, and the result only depends on the values it references. Calls to functions
+ * that are not defined are considered impure.
+ */
+public class PurityAnalyzer implements NodeVisitor<Boolean>
+{
+
+    /**
+     * The functions that can be called from the analyzed expressions.
+     */
+    private final FunctionCollection functions;
+
+    /**
+     * Creates a new {@link PurityAnalyzer}.
+     *
+     * @param functions The functions that can be called from the analyzed expressions.
+     */
+    public PurityAnalyzer(FunctionCollection functions)
+    {
+        this.functions = functions;
+    }
+
+    /**
+     * Returns true if the provided expression is pure.
+     *
+     * @param node The expression to analyze.
+     * @return true if the provided expression is pure.
+     */
+    public boolean isPure(ExpressionNode node)
+    {
+        return node.accept(this);
+    }
+
+    @Override public Boolean visitLiteral(LiteralNode node)
+    {
+        return true;
+    }
+
+    @Override public Boolean visitVariable(VariableNode node)
+    {
+        return true;
+    }
+
+    @Override public Boolean visitParameter(ParameterNode node)
+    {
+        return true;
+    }
+
+    @Override public Boolean visitBinary(BinaryNode node)
+    {
+        BinaryNode[] chain = node.getChain();
+        if (!chain[0].getLeft().accept(this))
+            return false;
+
+        for (BinaryNode operation : chain)
+            if (!operation.getRight().accept(this))
+                return false;
+
+        return true;
+    }
+
+    @Override public Boolean visitCall(CallNode node)
+    {
+        Function function = node.resolve(functions);
+        if (function == null || !function.isPure())
+            return false;
+
+        for (int x = 0; x < node.getArgumentCount(); x++)
+            if (!node.getArgument(x).accept(this))
+                return false;
+
+        return true;
+    }
+}
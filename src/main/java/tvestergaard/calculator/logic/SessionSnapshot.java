@@ -0,0 +1,757 @@
+package tvestergaard.calculator.logic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves and restores the constants, variables, bindings and custom functions of a calculator in a compact binary
+ * file. The bodies of the functions and the expressions of the bindings are saved in their lowered and folded form,
+ * so restoring a snapshot does not parse any source code, and restored functions behave exactly like the functions
+ * that were saved.
+ *
+ * The file starts with a header, followed by the sections of the snapshot. Counts, lengths and indices are written as
+ * variable length integers, using 7 bits per byte. Names are written once, in the string table, and are referenced by
+ * their index in the table.
+ *
+ * <pre>
+ * header    : magic (4 bytes, 'CALC'), format version (2 bytes)
+ * strings   : count, then for every string its length in bytes and its UTF-8 encoded bytes
+ * constants : count, then for every constant its name and its value
+ * scopes    : count, then for every scope, starting with the global scope, the number of variables, and for every
+ *             variable its name and its value
+ * functions : count, then for every function its name, its flags (1 byte), its signature when it differs from the
+ *             name followed by the parameters, the number of parameters, the name of every parameter, the number of
+ *             nodes in the body, and the nodes of the body in postfix order
+ * bindings  : count, then for every binding the name of the bound variable, the number of variables it depends on,
+ *             the name of every such variable, the number of nodes in the expression, and the nodes of the expression
+ *             in postfix order
+ * </pre>
+ *
+ * The bindings section was added in version 2 of the format. Snapshots in version 1 are still read, and contain no
+ * bindings.
+ *
+ * Every node starts with a tag byte. Literals are followed by their value, either as a zigzag encoded variable length
+ * integer when the value is an integer, or as 8 bytes. References to variables are followed by their name, references
+ * to parameters by their name and index, and calls by the name of the function and the number of arguments. Binary
+ * operations have a tag per operator, and are not followed by anything. The operands of a node precede the node, so
+ * the bodies are written and read without recursion, regardless of their depth. The values of constants and variables
+ * are written as literals.
+ */
+public final class SessionSnapshot
+{
+
+    /**
+     * The first bytes of every snapshot.
+     */
+    private static final int MAGIC = 0x43414C43;
+
+    /**
+     * The version of the format written by this class.
+     */
+    private static final short FORMAT_VERSION = 2;
+
+    /**
+     * The flag set on functions that are pure.
+     */
+    private static final int FLAG_PURE = 1;
+
+    /**
+     * The flag set on functions whose signature is saved.
+     */
+    private static final int FLAG_SIGNATURE = 2;
+
+    /**
+     * The tag of literal nodes whose value is written as 8 bytes.
+     */
+    private static final int TAG_LITERAL = 0;
+
+    /**
+     * The tag of variable nodes.
+     */
+    private static final int TAG_VARIABLE = 1;
+
+    /**
+     * The tag of parameter nodes.
+     */
+    private static final int TAG_PARAMETER = 2;
+
+    /**
+     * The tag of call nodes.
+     */
+    private static final int TAG_CALL = 3;
+
+    /**
+     * The tag of literal nodes whose value is written as a variable length integer.
+     */
+    private static final int TAG_INTEGER = 4;
+
+    /**
+     * The tag of binary nodes using the first operator. The tags of the other operators follow in the order of
+     * {@link BinaryNode.Operator}.
+     */
+    private static final int TAG_BINARY = 5;
+
+    /**
+     * The operators, indexed by their ordinal.
+     */
+    private static final BinaryNode.Operator[] OPERATORS = BinaryNode.Operator.values();
+
+    /**
+     * Prevents instantiation.
+     */
+    private SessionSnapshot()
+    {
+
+    }
+
+    /**
+     * Saves the constants, variables and custom functions in the provided memory and collection to the provided
+     * file. The snapshot is written to a temporary file that replaces the provided file when complete, so the file
+     * is never left partially written.
+     *
+     * @param memory    The memory containing the constants and variables to save.
+     * @param functions The collection containing the custom functions to save.
+     * @param file      The file to save the snapshot to.
+     * @throws IOException      When the file cannot be written.
+     * @throws RuntimeException When the collection contains a function that is not a custom function.
+     */
+    public static void save(CalculatorMemory memory, FunctionCollection functions, Path file) throws IOException
+    {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                save(memory, functions, output);
+            }
+
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Saves the constants, variables and custom functions in the provided memory and collection to the provided
+     * stream.
+     *
+     * @param memory    The memory containing the constants and variables to save.
+     * @param functions The collection containing the custom functions to save.
+     * @param output    The stream to write the snapshot to. The stream is not closed.
+     * @throws IOException      When the stream cannot be written.
+     * @throws RuntimeException When the collection contains a function that is not a custom function.
+     */
+    public static void save(CalculatorMemory memory, FunctionCollection functions, OutputStream output)
+            throws IOException
+    {
+        Encoder encoder = new Encoder();
+
+        Map<String, Double> constants = memory.getDefinedConstants();
+        encoder.writeVarInt(constants.size());
+        for (Map.Entry<String, Double> constant : constants.entrySet()) {
+            encoder.writeString(constant.getKey());
+            encoder.writeLiteral(constant.getValue());
+        }
+
+        List<Map<String, Double>> scopes = memory.getScopes();
+        encoder.writeVarInt(scopes.size());
+        for (Map<String, Double> scope : scopes) {
+            encoder.writeVarInt(scope.size());
+            for (Map.Entry<String, Double> variable : scope.entrySet()) {
+                encoder.writeString(variable.getKey());
+                encoder.writeLiteral(variable.getValue());
+            }
+        }
+
+        List<Function> defined = new ArrayList<>(functions.getDefinedFunctions());
+        encoder.writeVarInt(defined.size());
+        for (Function function : defined) {
+            if (!(function instanceof ConcreteCustomFunction)) {
+                throw new RuntimeException(String.format("Function '%s' cannot be saved.", function.getSignature()));
+            }
+
+            ConcreteCustomFunction custom    = (ConcreteCustomFunction) function;
+            String                 signature = custom.getSignature();
+            boolean                canonical = signature.equals(signature(custom.getName(), custom.getParameters()));
+            encoder.writeString(custom.getName());
+            encoder.body.writeByte((custom.isPure() ? FLAG_PURE : 0) | (canonical ? 0 : FLAG_SIGNATURE));
+            if (!canonical)
+                encoder.writeString(signature);
+
+            encoder.writeVarInt(custom.getParameters().size());
+            for (String parameter : custom.getParameters())
+                encoder.writeString(parameter);
+
+            encoder.writeNode(custom.getExpression());
+        }
+
+        List<Binding> bindings = new ArrayList<>(memory.getBindings().getBindings());
+        encoder.writeVarInt(bindings.size());
+        for (Binding binding : bindings) {
+            encoder.writeString(binding.getName());
+            encoder.writeVarInt(binding.getDependencies().size());
+            for (String dependency : binding.getDependencies())
+                encoder.writeString(dependency);
+
+            encoder.writeNode(binding.getExpression());
+        }
+
+        DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+        encoder.writeStrings(data);
+        encoder.bytes.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Restores the snapshot in the provided file, replacing the constants, variables, bindings and custom functions
+     * in the provided memory and collection. The file is memory mapped, and the snapshot is read completely before
+     * anything is replaced, so the memory and the collection are left unchanged when the snapshot cannot be read.
+     *
+     * @param memory    The memory to restore the constants and variables to.
+     * @param functions The collection to restore the custom functions to.
+     * @param file      The file containing the snapshot.
+     * @throws IOException      When the file cannot be read, or does not contain a valid snapshot.
+     * @throws RuntimeException When a constant or function in the snapshot is also defined by the library.
+     */
+    public static void load(CalculatorMemory memory, FunctionCollection functions, Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("The snapshot '%s' is too large.", file));
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            load(memory, functions, buffer);
+        }
+    }
+
+    /**
+     * Restores the snapshot in the provided buffer, replacing the constants, variables, bindings and custom
+     * functions in the provided memory and collection.
+     *
+     * @param memory    The memory to restore the constants and variables to.
+     * @param functions The collection to restore the custom functions to.
+     * @param buffer    The buffer containing the snapshot, from its position to its limit.
+     * @throws IOException      When the buffer does not contain a valid snapshot.
+     * @throws RuntimeException When a constant or function in the snapshot is also defined by the library.
+     */
+    public static void load(CalculatorMemory memory, FunctionCollection functions, ByteBuffer buffer)
+            throws IOException
+    {
+        Decoder decoder = new Decoder(buffer);
+        try {
+            decoder.readHeader();
+
+            PersistentMap<String, Double> constants = PersistentMap.empty();
+            for (int x = decoder.readCount(); x > 0; x--) {
+                String name = decoder.readString();
+                if (memory.getLibrary().getConstant(name) != null) {
+                    throw new RuntimeException(String.format("Constant '%s' already exists.", name));
+                }
+
+                constants = constants.with(name, decoder.readLiteral());
+            }
+
+            int scopeCount = decoder.readCount();
+            if (scopeCount < 1) {
+                throw new IOException("The snapshot does not contain a global scope.");
+            }
+
+            PersistentMap<String, Double> variables = PersistentMap.empty();
+            for (int x = decoder.readCount(); x > 0; x--)
+                variables = variables.with(decoder.readString(), decoder.readLiteral());
+
+            List<Map<String, Double>> locals = new ArrayList<>(scopeCount - 1);
+            for (int x = 1; x < scopeCount; x++) {
+                Map<String, Double> scope = new HashMap<>();
+                for (int y = decoder.readCount(); y > 0; y--)
+                    scope.put(decoder.readString(), decoder.readLiteral());
+                locals.add(scope);
+            }
+
+            PersistentMap<ConcreteFunctionIdentifier, Function> restored = PersistentMap.empty();
+            for (int x = decoder.readCount(); x > 0; x--) {
+                Function function = decoder.readFunction();
+                if (functions.getLibrary().getFunction(function) != null) {
+                    throw new RuntimeException(String.format("Function '%s' already exists.", function.getSignature()));
+                }
+
+                restored = restored.with(ConcreteFunctionIdentifier.of(function), function);
+            }
+
+            BindingGraph bindings = new BindingGraph();
+            for (int x = decoder.version < 2 ? 0 : decoder.readCount(); x > 0; x--) {
+                Binding binding = decoder.readBinding();
+                if (!variables.containsKey(binding.getName()) || bindings.get(binding.getName()) != null) {
+                    throw new IOException("The snapshot contains an invalid binding.");
+                }
+
+                bindings.bind(binding);
+            }
+
+            if (!bindings.isAcyclic()) {
+                throw new IOException("The snapshot contains cyclic bindings.");
+            }
+
+            if (buffer.hasRemaining()) {
+                throw new IOException("The snapshot contains unexpected data after the bindings.");
+            }
+
+            memory.restore(constants, variables, locals, bindings);
+            functions.restore(restored);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The snapshot is truncated.", e);
+        }
+    }
+
+    /**
+     * Returns the signature of a function declared with the provided name and parameters, as written in source code
+     * without whitespace.
+     *
+     * @param name       The name of the function.
+     * @param parameters The parameters of the function.
+     * @return The signature of the function.
+     */
+    private static String signature(String name, List<String> parameters)
+    {
+        return name + '(' + String.join(",", parameters) + ')';
+    }
+
+    /**
+     * Writes the sections of a snapshot, collecting the strings referenced by the sections.
+     */
+    private static final class Encoder
+    {
+
+        /**
+         * The indices of the strings referenced by the sections, in the order the strings were first referenced.
+         */
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+        /**
+         * The bytes of the sections.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * The stream writing to the bytes of the sections.
+         */
+        private final DataOutputStream body = new DataOutputStream(bytes);
+
+        /**
+         * Writes the index of the provided string, adding the string to the string table.
+         *
+         * @param string The string to write.
+         * @throws IOException When the string cannot be written.
+         */
+        void writeString(String string) throws IOException
+        {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.put(string, index);
+            }
+
+            writeVarInt(index);
+        }
+
+        /**
+         * Writes the provided non-negative integer using 7 bits per byte, least significant bits first. The high bit
+         * of a byte is set when more bytes follow.
+         *
+         * @param value The integer to write.
+         * @throws IOException When the integer cannot be written.
+         */
+        void writeVarInt(int value) throws IOException
+        {
+            writeVarInt(body, value);
+        }
+
+        /**
+         * Writes the provided value as a literal node. Integers are written as zigzag encoded variable length
+         * integers, other values as 8 bytes.
+         *
+         * @param value The value to write.
+         * @throws IOException When the value cannot be written.
+         */
+        void writeLiteral(double value) throws IOException
+        {
+            int integer = (int) value;
+            if (integer == value && (integer != 0 || Double.doubleToRawLongBits(value) == 0)) {
+                body.writeByte(TAG_INTEGER);
+                writeVarInt((integer << 1) ^ (integer >> 31));
+                return;
+            }
+
+            body.writeByte(TAG_LITERAL);
+            body.writeDouble(value);
+        }
+
+        /**
+         * Writes the nodes of the provided expression in postfix order, preceded by the number of nodes.
+         *
+         * @param expression The expression to write.
+         * @throws IOException When the expression cannot be written.
+         */
+        void writeNode(ExpressionNode expression) throws IOException
+        {
+            List<ExpressionNode>  reversed = new ArrayList<>();
+            Deque<ExpressionNode> pending  = new ArrayDeque<>();
+            pending.push(expression);
+            while (!pending.isEmpty()) {
+                ExpressionNode node = pending.pop();
+                reversed.add(node);
+                if (node instanceof BinaryNode) {
+                    pending.push(((BinaryNode) node).getLeft());
+                    pending.push(((BinaryNode) node).getRight());
+                } else if (node instanceof CallNode) {
+                    CallNode call = (CallNode) node;
+                    for (int x = 0; x < call.getArgumentCount(); x++)
+                        pending.push(call.getArgument(x));
+                }
+            }
+
+            writeVarInt(reversed.size());
+            for (int x = reversed.size() - 1; x >= 0; x--) {
+                ExpressionNode node = reversed.get(x);
+                if (node instanceof LiteralNode) {
+                    writeLiteral(((LiteralNode) node).getValue());
+                } else if (node instanceof VariableNode) {
+                    body.writeByte(TAG_VARIABLE);
+                    writeString(((VariableNode) node).getName());
+                } else if (node instanceof ParameterNode) {
+                    body.writeByte(TAG_PARAMETER);
+                    writeString(((ParameterNode) node).getName());
+                    writeVarInt(((ParameterNode) node).getIndex());
+                } else if (node instanceof CallNode) {
+                    body.writeByte(TAG_CALL);
+                    writeString(((CallNode) node).getName());
+                    writeVarInt(((CallNode) node).getArgumentCount());
+                } else if (node instanceof BinaryNode) {
+                    body.writeByte(TAG_BINARY + ((BinaryNode) node).getOperator().ordinal());
+                } else {
+                    throw new RuntimeException(String.format("Unknown node '%s'.", node.getClass().getName()));
+                }
+            }
+        }
+
+        /**
+         * Writes the string table to the provided stream.
+         *
+         * @param output The stream to write the string table to.
+         * @throws IOException When the string table cannot be written.
+         */
+        void writeStrings(DataOutputStream output) throws IOException
+        {
+            writeVarInt(output, strings.size());
+            for (String string : strings.keySet()) {
+                byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(output, encoded.length);
+                output.write(encoded);
+            }
+        }
+
+        /**
+         * Writes the provided non-negative integer to the provided stream using 7 bits per byte.
+         *
+         * @param output The stream to write the integer to.
+         * @param value  The integer to write.
+         * @throws IOException When the integer cannot be written.
+         */
+        private static void writeVarInt(DataOutputStream output, int value) throws IOException
+        {
+            while ((value & ~0x7F) != 0) {
+                output.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            output.writeByte(value);
+        }
+    }
+
+    /**
+     * Reads the sections of a snapshot from a buffer.
+     */
+    private static final class Decoder
+    {
+
+        /**
+         * The buffer containing the snapshot.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The string table of the snapshot.
+         */
+        private String[] strings;
+
+        /**
+         * The format version of the snapshot.
+         */
+        private short version;
+
+        /**
+         * Creates a new {@link Decoder}.
+         *
+         * @param buffer The buffer containing the snapshot.
+         */
+        Decoder(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Reads the header and the string table of the snapshot.
+         *
+         * @throws IOException When the buffer does not contain a snapshot in a supported format.
+         */
+        void readHeader() throws IOException
+        {
+            if (buffer.remaining() < 6 || buffer.getInt() != MAGIC) {
+                throw new IOException("The file is not a calculator snapshot.");
+            }
+
+            version = buffer.getShort();
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw new IOException(String.format("Unsupported snapshot format version %d.", version));
+            }
+
+            strings = new String[readCount()];
+            for (int x = 0; x < strings.length; x++) {
+                byte[] encoded = new byte[readCount()];
+                buffer.get(encoded);
+                strings[x] = new String(encoded, StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Reads a string, referenced by its index in the string table.
+         *
+         * @return The string.
+         * @throws IOException When the index is not in the string table.
+         */
+        String readString() throws IOException
+        {
+            int index = readVarInt();
+            if (index >= strings.length) {
+                throw new IOException(String.format("The snapshot references the unknown string %d.", index));
+            }
+
+            return strings[index];
+        }
+
+        /**
+         * Reads a count, which cannot exceed the number of remaining bytes, since every counted item takes at least one
+         * byte.
+         *
+         * @return The count.
+         * @throws IOException When the count is invalid.
+         */
+        int readCount() throws IOException
+        {
+            int count = readVarInt();
+            if (count > buffer.remaining()) {
+                throw new IOException("The snapshot is truncated.");
+            }
+
+            return count;
+        }
+
+        /**
+         * Reads a non-negative integer written using 7 bits per byte.
+         *
+         * @return The integer.
+         * @throws IOException When the integer is invalid.
+         */
+        int readVarInt() throws IOException
+        {
+            int value = readRawVarInt();
+            if (value < 0) {
+                throw new IOException("The snapshot contains an invalid integer.");
+            }
+
+            return value;
+        }
+
+        /**
+         * Reads the 32 bits of an integer written using 7 bits per byte.
+         *
+         * @return The integer.
+         * @throws IOException When the integer is longer than 5 bytes.
+         */
+        int readRawVarInt() throws IOException
+        {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+
+            throw new IOException("The snapshot contains an invalid integer.");
+        }
+
+        /**
+         * Reads a value written as a literal node.
+         *
+         * @return The value.
+         * @throws IOException When the value is not a literal.
+         */
+        double readLiteral() throws IOException
+        {
+            int tag = buffer.get();
+            if (tag == TAG_INTEGER)
+                return readInteger();
+            if (tag == TAG_LITERAL)
+                return buffer.getDouble();
+
+            throw new IOException("The snapshot contains an invalid value.");
+        }
+
+        /**
+         * Reads a zigzag encoded variable length integer.
+         *
+         * @return The integer.
+         * @throws IOException When the integer is invalid.
+         */
+        int readInteger() throws IOException
+        {
+            int value = readRawVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads a custom function.
+         *
+         * @return The custom function.
+         * @throws IOException When the function is invalid.
+         */
+        Function readFunction() throws IOException
+        {
+            String   name       = readString();
+            int      flags      = buffer.get();
+            String   signature  = (flags & FLAG_SIGNATURE) != 0 ? readString() : null;
+            String[] parameters = new String[readCount()];
+            for (int x = 0; x < parameters.length; x++)
+                parameters[x] = readString();
+
+            if (signature == null)
+                signature = signature(name, Arrays.asList(parameters));
+
+            ExpressionNode body = readNode(parameters.length);
+            return new ConcreteCustomFunction(
+                    name,
+                    Arrays.asList(parameters),
+                    signature,
+                    body,
+                    (flags & FLAG_PURE) != 0
+            );
+        }
+
+        /**
+         * Reads a binding.
+         *
+         * @return The binding.
+         * @throws IOException When the binding is invalid.
+         */
+        Binding readBinding() throws IOException
+        {
+            String   name         = readString();
+            String[] dependencies = new String[readCount()];
+            for (int x = 0; x < dependencies.length; x++)
+                dependencies[x] = readString();
+
+            if (new HashSet<>(Arrays.asList(dependencies)).size() != dependencies.length) {
+                throw new IOException("The snapshot contains an invalid binding.");
+            }
+
+            return new Binding(name, readNode(0), Arrays.asList(dependencies));
+        }
+
+        /**
+         * Reads an expression written in postfix order, building the expression using an operand stack.
+         *
+         * @param parameterCount The number of parameters of the function the expression is the body of, or 0 when the
+         *                       expression is not the body of a function.
+         * @return The expression.
+         * @throws IOException When the expression is invalid.
+         */
+        ExpressionNode readNode(int parameterCount) throws IOException
+        {
+            int              count    = readCount();
+            ExpressionNode[] operands = new ExpressionNode[count];
+            int              size     = 0;
+            for (int x = 0; x < count; x++) {
+                int tag = buffer.get() & 0xFF;
+                switch (tag) {
+                    case TAG_LITERAL:
+                        operands[size++] = new LiteralNode(buffer.getDouble());
+                        break;
+                    case TAG_INTEGER:
+                        operands[size++] = new LiteralNode(readInteger());
+                        break;
+                    case TAG_VARIABLE:
+                        operands[size++] = new VariableNode(readString());
+                        break;
+                    case TAG_PARAMETER:
+                        String parameter = readString();
+                        int index = readVarInt();
+                        if (index >= parameterCount) {
+                            throw new IOException("The snapshot contains an invalid expression.");
+                        }
+
+                        operands[size++] = new ParameterNode(parameter, index);
+                        break;
+                    case TAG_CALL:
+                        String name = readString();
+                        int arguments = readVarInt();
+                        if (arguments > size) {
+                            throw new IOException("The snapshot contains an invalid expression.");
+                        }
+
+                        size -= arguments;
+                        List<ExpressionNode> list = Arrays.asList(operands).subList(size, size + arguments);
+                        operands[size++] = new CallNode(name, new ArrayList<>(list));
+                        break;
+                    default:
+                        int operator = tag - TAG_BINARY;
+                        if (operator >= OPERATORS.length || size < 2) {
+                            throw new IOException("The snapshot contains an invalid expression.");
+                        }
+
+                        ExpressionNode right = operands[--size];
+                        ExpressionNode left  = operands[--size];
+                        operands[size++] = new BinaryNode(OPERATORS[operator], left, right);
+                }
+            }
+
+            if (size != 1) {
+                throw new IOException("The snapshot contains an invalid expression.");
+            }
+
+            return operands[0];
+        }
+    }
+}
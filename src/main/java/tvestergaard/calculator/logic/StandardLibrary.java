@@ -0,0 +1,305 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The built in functions and constants of the calculator. The library is created once and shared by all calculators.
+ */
+public final class StandardLibrary
+{
+
+    /**
+     * The library containing the built in functions and constants.
+     */
+    public static final Library LIBRARY = new Library(functions(), constants());
+
+    /**
+     * Prevents instantiation.
+     */
+    private StandardLibrary()
+    {
+
+    }
+
+    /**
+     * Returns the built in constants.
+     *
+     * @return The built in constants.
+     */
+    private static Map<String, Double> constants()
+    {
+        Map<String, Double> constants = new HashMap<>();
+        constants.put("PI", Math.PI);
+        constants.put("E", Math.E);
+        return constants;
+    }
+
+    /**
+     * Returns the built in functions.
+     *
+     * @return The built in functions.
+     */
+    private static List<Function> functions()
+    {
+        List<Function> functions = new ArrayList<>();
+
+        functions.add(new PredefinedFunction("abs", 1, "abs(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.abs(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("acos", 1, "acos(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.acos(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("asin", 1, "asin(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.asin(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("atan", 1, "atan(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.atan(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("cbrt", 1, "cbrt(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.cbrt(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("ceil", 1, "ceil(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.ceil(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("cos", 1, "cos(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.cos(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("cosh", 1, "cosh(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.cosh(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("exp", 1, "exp(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.exp(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("floor", 1, "floor(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.floor(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("log", 1, "log(number)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.log(arguments[offset]) / Math.E;
+            }
+        });
+
+        functions.add(new PredefinedFunction("log", 2, "log(number,base)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.log(arguments[offset]) / Math.log(arguments[offset + 1]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("max", 2, "max(a,b)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.max(arguments[offset], arguments[offset + 1]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("min", 2, "min(a,b)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.min(arguments[offset], arguments[offset + 1]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("pow", 2, "pow(a,b)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.pow(arguments[offset], arguments[offset + 1]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("random", 0, "random()", false)
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.random();
+            }
+        });
+
+        functions.add(new PredefinedFunction("rint", 1, "rint(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.rint(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("root", 2, "root(a,b)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.pow(Math.E, Math.log(arguments[offset]) / arguments[offset + 1]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("round", 1, "round(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return (double) Math.round(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("round", 2, "round(a,decimals)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                long   roundedFactor = Math.round(arguments[offset + 1]);
+                double factor        = Math.pow((double) 10, (double) roundedFactor);
+                return (double) Math.round(arguments[offset] * factor) / factor;
+            }
+        });
+
+        functions.add(new PredefinedFunction("signum", 1, "signum(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.signum(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("sin", 1, "sin(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.sin(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("sinh", 1, "sinh(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.sinh(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("sqrt", 1, "sqrt(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.sqrt(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("tan", 1, "tan(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.tan(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("tanh", 1, "tanh(a)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.tanh(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("toDegrees", 1, "toDegrees(radians)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.toDegrees(arguments[offset]);
+            }
+        });
+
+        functions.add(new PredefinedFunction("toRadians", 1, "toRadians(degrees)")
+        {
+            @Override
+            public double call(DoubleEvaluator evaluator, double[] arguments, int offset)
+            {
+                return Math.toRadians(arguments[offset]);
+            }
+        });
+
+        return functions;
+    }
+}
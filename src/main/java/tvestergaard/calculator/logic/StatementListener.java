@@ -2,9 +2,19 @@ package tvestergaard.calculator.logic;
 
 import tvestergaard.calculator.antlr.CalculatorBaseListener;
 import tvestergaard.calculator.antlr.CalculatorParser.*;
-
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class StatementListener extends CalculatorBaseListener
@@ -30,6 +40,26 @@ public class StatementListener extends CalculatorBaseListener
      */
     protected final ExpressionVisitor visitor;
 
+    /**
+     * The folder used to fold the constant subtrees of declared functions and constants.
+     */
+    protected final ConstantFolder folder;
+
+    /**
+     * The analyzer used to determine whether or not declared functions are pure.
+     */
+    protected final PurityAnalyzer purityAnalyzer;
+
+    /**
+     * The collector used to find the variables the expressions of bindings depend on.
+     */
+    protected final DependencyCollector dependencyCollector;
+
+    /**
+     * Whether or not the commands reading and writing files are enabled.
+     */
+    private volatile boolean fileCommandsEnabled = true;
+
     /**
      * Creates a new {@link StatementListener}.
      *
@@ -43,6 +73,9 @@ public class StatementListener extends CalculatorBaseListener
         this.memory = memory;
         this.functions = functions;
         this.visitor = new ExpressionVisitor(memory, functions);
+        this.folder = new ConstantFolder(memory, functions, visitor.getEvaluator());
+        this.purityAnalyzer = new PurityAnalyzer(functions);
+        this.dependencyCollector = new DependencyCollector(memory);
     }
 
     @Override public void enterProgram(ProgramContext ctx)
@@ -53,6 +86,49 @@ public class StatementListener extends CalculatorBaseListener
     }
 
     @Override public void enterStatement(StatementContext ctx)
+    {
+        ExecutionMonitor monitor = visitor.getEvaluator().getMonitor();
+        if (monitor == null) {
+            executeStatement(ctx);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            executeStatement(ctx);
+        } finally {
+            monitor.statementExecuted(getStatementType(ctx), start, System.nanoTime());
+        }
+    }
+
+    /**
+     * Returns the type of the provided statement.
+     *
+     * @param ctx The statement.
+     * @return The type of the provided statement.
+     */
+    private static StatementType getStatementType(StatementContext ctx)
+    {
+        if (ctx.command() != null)
+            return StatementType.COMMAND;
+        if (ctx.functionDeclaration() != null)
+            return StatementType.FUNCTION_DECLARATION;
+        if (ctx.variableDeclaration() != null)
+            return StatementType.VARIABLE_DECLARATION;
+        if (ctx.bindingDeclaration() != null)
+            return StatementType.BINDING_DECLARATION;
+        if (ctx.constantDeclaration() != null)
+            return StatementType.CONSTANT_DECLARATION;
+
+        return StatementType.EXPRESSION;
+    }
+
+    /**
+     * Executes the provided statement.
+     *
+     * @param ctx The statement to execute.
+     */
+    private void executeStatement(StatementContext ctx)
     {
         CommandContext commandContext = ctx.command();
         if (commandContext != null) {
@@ -72,6 +148,12 @@ public class StatementListener extends CalculatorBaseListener
             return;
         }
 
+        BindingDeclarationContext bindingDeclarationContext = ctx.bindingDeclaration();
+        if (bindingDeclarationContext != null) {
+            enterBindingDeclaration(bindingDeclarationContext);
+            return;
+        }
+
         ConstantDeclarationContext constantDeclarationContext = ctx.constantDeclaration();
         if (constantDeclarationContext != null) {
             enterConstantDeclaration(constantDeclarationContext);
@@ -117,6 +199,36 @@ public class StatementListener extends CalculatorBaseListener
             return;
         }
 
+        if (commandName.equals("explain")) {
+            executeExplainCommand(ctx);
+            return;
+        }
+
+        if (commandName.equals("caches")) {
+            executeCachesCommand(false);
+            return;
+        }
+
+        if (commandName.equals("clearcaches")) {
+            executeCachesCommand(true);
+            return;
+        }
+
+        if (commandName.equals("profile")) {
+            executeProfileCommand();
+            return;
+        }
+
+        if (commandName.equals("bindings")) {
+            executeBindingsCommand();
+            return;
+        }
+
+        if (commandName.equals("save") || commandName.equals("load")) {
+            executeSnapshotCommand(ctx, commandName.equals("save"));
+            return;
+        }
+
         output.error(String.format("Command '%s' is not defined.", commandName));
     }
 
@@ -139,6 +251,132 @@ public class StatementListener extends CalculatorBaseListener
         }
     }
 
+    private void executeExplainCommand(CommandContext ctx)
+    {
+        ExpressionPrinter        printer                  = new ExpressionPrinter();
+        FunctionArgumentsContext functionArgumentsContext = ctx.functionArguments();
+        if (functionArgumentsContext == null) {
+            for (Function function : functions.getFunctions()) {
+                if (function instanceof ConcreteCustomFunction) {
+                    ExpressionNode body = ((ConcreteCustomFunction) function).getExpression();
+                    output.printExplanation(function.getSignature(), printer.print(body));
+                }
+            }
+
+            return;
+        }
+
+        for (ExpressionContext expressionContext : functionArgumentsContext.expression()) {
+            ExpressionNode folded = folder.fold(visitor.getLowerer().lower(expressionContext));
+            output.printExplanation(getSourceText(expressionContext), printer.print(folded));
+        }
+    }
+
+    /**
+     * Returns the source code of the provided context, read from the input stream. Unlike
+     * {@link ParserRuleContext#getText()}, which recurses once per operation in a chain, the source code is read in
+     * constant stack space.
+     *
+     * @param ctx The context whose source code to return.
+     * @return The source code of the context.
+     */
+    private static String getSourceText(ParserRuleContext ctx)
+    {
+        Token start = ctx.getStart();
+        Token stop  = ctx.getStop();
+        if (stop == null || stop.getStopIndex() < start.getStartIndex()) {
+            return "";
+        }
+
+        return start.getInputStream().getText(Interval.of(start.getStartIndex(), stop.getStopIndex()));
+    }
+
+    private void executeCachesCommand(boolean clear)
+    {
+        for (Function function : functions.getFunctions()) {
+            if (!(function instanceof ConcreteCustomFunction))
+                continue;
+
+            FunctionCache cache = ((ConcreteCustomFunction) function).getCache();
+            if (cache == null)
+                continue;
+
+            if (clear)
+                cache.clear();
+            else
+                output.printCache(function.getSignature(), cache);
+        }
+    }
+
+    private void executeProfileCommand()
+    {
+        DoubleEvaluator  evaluator = visitor.getEvaluator();
+        FunctionProfiler profiler  = evaluator.getProfiler();
+        if (profiler == null) {
+            evaluator.setProfiler(new FunctionProfiler());
+            return;
+        }
+
+        evaluator.setProfiler(null);
+        for (FunctionProfile profile : profiler.getProfiles())
+            output.printProfile(profile.getFunction().getSignature(), profile);
+    }
+
+    private void executeBindingsCommand()
+    {
+        ExpressionPrinter printer = new ExpressionPrinter();
+        for (Binding binding : memory.getBindings().getBindings())
+            output.printExplanation(binding.getName(), printer.print(binding.getExpression()));
+    }
+
+    private void executeSnapshotCommand(CommandContext ctx, boolean save)
+    {
+        if (!fileCommandsEnabled) {
+            output.error(String.format("Command '%s' is not enabled.", ctx.IDENTIFIER().getText()));
+            return;
+        }
+
+        TerminalNode string = ctx.STRING();
+        if (string == null) {
+            output.error("No file provided to snapshot command.");
+            return;
+        }
+
+        String text   = string.getText();
+        Path   file   = Paths.get(text.substring(1, text.length() - 1));
+        String action = save ? "save" : "load";
+        try {
+            if (save)
+                SessionSnapshot.save(memory, functions, file);
+            else
+                SessionSnapshot.load(memory, functions, file);
+        } catch (NoSuchFileException e) {
+            output.error(String.format("Could not %s snapshot '%s', no such file or directory.", action, file));
+        } catch (IOException e) {
+            output.error(String.format("Could not %s snapshot '%s': %s", action, file, e.getMessage()));
+        }
+    }
+
+    /**
+     * Returns true if the commands reading and writing files are enabled.
+     *
+     * @return true if the commands reading and writing files are enabled.
+     */
+    public boolean isFileCommandsEnabled()
+    {
+        return fileCommandsEnabled;
+    }
+
+    /**
+     * Enables or disables the commands reading and writing files.
+     *
+     * @param enabled Whether or not the commands reading and writing files are enabled.
+     */
+    public void setFileCommandsEnabled(boolean enabled)
+    {
+        this.fileCommandsEnabled = enabled;
+    }
+
     @Override public void enterFunctionDeclaration(FunctionDeclarationContext ctx)
     {
         SignatureContext          signatureContext  = ctx.signature();
@@ -153,7 +391,14 @@ public class StatementListener extends CalculatorBaseListener
         Function function = functions.get(ConcreteFunctionIdentifier.of(functionName, parameters.size()));
 
         if (function == null) {
-            this.functions.add(new ConcreteCustomFunction(functionName, parameters, signatureContext.getText(), expressionContext));
+            ExpressionNode body = folder.fold(visitor.getLowerer().lower(expressionContext));
+            this.functions.add(new ConcreteCustomFunction(
+                    functionName,
+                    parameters,
+                    signatureContext.getText(),
+                    body,
+                    purityAnalyzer.isPure(body)
+            ));
             return;
         }
 
@@ -172,14 +417,45 @@ public class StatementListener extends CalculatorBaseListener
             return;
         }
 
+        BindingGraph bindings = memory.getBindings();
+        Double       previous = bindings.hasDependents(variableName) ? memory.getVariables().get(variableName) : null;
         this.memory.addVariable(variableName, result.getValue());
+        bindings.unbind(variableName);
+        if (!result.getValue().equals(previous))
+            propagate(variableName);
+    }
+
+    @Override public void enterBindingDeclaration(BindingDeclarationContext ctx)
+    {
+        String         variableName = ctx.IDENTIFIER().getText();
+        ExpressionNode expression   = folder.fold(visitor.getLowerer().lower(ctx.expression()));
+        List<String>   dependencies = dependencyCollector.collect(expression);
+        BindingGraph   bindings     = memory.getBindings();
+
+        List<String> cycle = bindings.findCycle(variableName, dependencies);
+        if (cycle != null) {
+            output.error(String.format("Binding '%s' would create the cycle %s.", variableName, String.join(" -> ", cycle)));
+            output.error("The variable was not declared.");
+            return;
+        }
+
+        ExpressionResult result = visitor.evaluate(expression);
+        if (result.isError()) {
+            output.error(result.getErrorReason());
+            output.error("The variable was not declared.");
+            return;
+        }
+
+        this.memory.addVariable(variableName, result.getValue());
+        bindings.bind(new Binding(variableName, expression, dependencies));
+        propagate(variableName);
     }
 
     public void enterConstantDeclaration(ConstantDeclarationContext ctx)
     {
         String constantName = ctx.IDENTIFIER().getText();
 
-        ExpressionResult result = visitor.visitExpression(ctx.expression());
+        ExpressionResult result = visitor.evaluate(folder.fold(visitor.getLowerer().lower(ctx.expression())));
 
         if (result.isError()) {
             output.error(result.getErrorReason());
@@ -188,6 +464,74 @@ public class StatementListener extends CalculatorBaseListener
         }
 
         this.memory.addConstant(constantName, result.getValue());
+        propagate(constantName);
+    }
+
+    /**
+     * Recomputes the bindings affected by a change to the variable with the provided name. The affected bindings are
+     * recomputed level by level, so every binding is recomputed at most once, after the bindings it depends on. A
+     * binding is only recomputed when the value of one of its dependencies actually changed, so a change stops
+     * propagating at the first binding whose value does not change. The values of a level are stored after the whole
+     * level has been evaluated. A binding that cannot be recomputed keeps its previous value.
+     *
+     * @param name The name of the changed variable.
+     */
+    private void propagate(String name)
+    {
+        BindingGraph bindings = memory.getBindings();
+        if (!bindings.hasDependents(name))
+            return;
+
+        Set<String> changed = new HashSet<>();
+        changed.add(name);
+        for (List<Binding> level : bindings.schedule(name)) {
+            Double[] values = new Double[level.size()];
+            for (int x = 0; x < values.length; x++) {
+                Binding binding = level.get(x);
+                if (!dependsOnAny(binding, changed))
+                    continue;
+
+                String error;
+                try {
+                    ExpressionResult result = visitor.evaluate(binding.getExpression());
+                    if (!result.isError()) {
+                        values[x] = result.getValue();
+                        continue;
+                    }
+
+                    error = result.getErrorReason();
+                } catch (RuntimeException e) {
+                    visitor.getEvaluator().clearError();
+                    error = e.getMessage();
+                }
+
+                output.error(String.format("Could not recompute '%s': %s", binding.getName(), error));
+            }
+
+            for (int x = 0; x < values.length; x++) {
+                String bound = level.get(x).getName();
+                if (values[x] != null && !values[x].equals(memory.getValue(bound))) {
+                    memory.addVariable(bound, values[x]);
+                    changed.add(bound);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the provided binding depends on one of the provided variables.
+     *
+     * @param binding   The binding.
+     * @param variables The names of the variables.
+     * @return true if the provided binding depends on one of the provided variables.
+     */
+    private static boolean dependsOnAny(Binding binding, Set<String> variables)
+    {
+        for (String dependency : binding.getDependencies())
+            if (variables.contains(dependency))
+                return true;
+
+        return false;
     }
 
     @Override public void enterExpression(ExpressionContext ctx)
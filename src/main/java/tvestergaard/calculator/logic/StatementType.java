@@ -0,0 +1,14 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * The types of statements in a program.
+ */
+public enum StatementType
+{
+    COMMAND,
+    FUNCTION_DECLARATION,
+    VARIABLE_DECLARATION,
+    BINDING_DECLARATION,
+    CONSTANT_DECLARATION,
+    EXPRESSION
+}
@@ -0,0 +1,45 @@
+package tvestergaard.calculator.logic;
+
+/**
+ * A reference to a variable or constant in the lowered expression tree.
+ */
+public class VariableNode implements ExpressionNode
+{
+
+    /**
+     * The name of the referenced variable or constant.
+     */
+    private final String name;
+
+    /**
+     * Creates a new {@link VariableNode}.
+     *
+     * @param name The name of the referenced variable or constant.
+     */
+    public VariableNode(String name)
+    {
+        assert name != null;
+
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the referenced variable or constant.
+     *
+     * @return The name of the referenced variable or constant.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override public <T> T accept(NodeVisitor<T> visitor)
+    {
+        return visitor.visitVariable(this);
+    }
+
+    @Override public double accept(DoubleNodeVisitor visitor)
+    {
+        return visitor.visitVariable(this);
+    }
+}
@@ -0,0 +1,142 @@
+package tvestergaard.calculator.logic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Warms up a fresh JVM by executing a corpus of representative programs on a throwaway calculator. The lexer and
+ * parser build their prediction caches on demand, and these caches are shared by all lexers and parsers in the JVM,
+ * so the first programs executed in a JVM are parsed several times slower than later programs. Executing the corpus
+ * fills the caches, and loads and compiles the classes used to lower and evaluate programs, before the first real
+ * program is executed.
+ *
+ * The bundled corpus covers every statement form, every command and the common syntax errors. The throwaway
+ * calculator does not cache programs, discards all output and has the commands reading and writing files disabled.
+ *
+ * The prediction caches cannot be saved and restored, since the ANTLR runtime does not provide a way to serialize
+ * them, so they are rebuilt by parsing the corpus in every JVM.
+ */
+public final class WarmUp
+{
+
+    /**
+     * The name of the resource containing the bundled corpus, relative to this class.
+     */
+    public static final String CORPUS = "warmup.calc";
+
+    /**
+     * Prevents instantiation.
+     */
+    private WarmUp()
+    {
+
+    }
+
+    /**
+     * Executes the bundled corpus on the current thread.
+     *
+     * @throws UncheckedIOException When the bundled corpus cannot be read.
+     */
+    public static void run()
+    {
+        try (InputStream corpus = WarmUp.class.getResourceAsStream(CORPUS)) {
+            if (corpus == null) {
+                throw new RuntimeException(String.format("The warm up corpus '%s' is missing.", CORPUS));
+            }
+
+            run(new InputStreamReader(corpus, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ProgramException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Executes the provided corpus on the current thread, one line at a time.
+     *
+     * @param corpus The reader to read the corpus from. The reader is not closed.
+     * @throws IOException      When the corpus cannot be read.
+     * @throws ProgramException When an exception occurs while executing the corpus.
+     */
+    public static void run(Reader corpus) throws IOException, ProgramException
+    {
+        Calculator calculator = new Calculator(new DiscardingOutput());
+        calculator.setProgramCache(null);
+        calculator.setFileCommandsEnabled(false);
+        calculator.execute(corpus);
+    }
+
+    /**
+     * Executes the bundled corpus on a new daemon thread, so that the JVM is warmed up while it waits for the first
+     * program. Programs executed while the corpus is executed are parsed correctly, but may not benefit from the warm
+     * up yet.
+     *
+     * @return The thread executing the corpus.
+     */
+    public static Thread start()
+    {
+        Thread thread = new Thread(WarmUp::run, "calculator-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Discards all output.
+     */
+    private static class DiscardingOutput implements CalculatorOutput
+    {
+
+        @Override public void error(String error)
+        {
+
+        }
+
+        @Override public void result(Double value)
+        {
+
+        }
+
+        @Override public void printFunctions(Collection<Function> functions)
+        {
+
+        }
+
+        @Override public void printVariables(Map<String, Double> variables)
+        {
+
+        }
+
+        @Override public void printConstants(Map<String, Double> constants)
+        {
+
+        }
+
+        @Override public void printValues(Double value)
+        {
+
+        }
+
+        @Override public void printExplanation(String expression, String explanation)
+        {
+
+        }
+
+        @Override public void printCache(String signature, FunctionCache cache)
+        {
+
+        }
+
+        @Override public void printProfile(String signature, FunctionProfile profile)
+        {
+
+        }
+    }
+}
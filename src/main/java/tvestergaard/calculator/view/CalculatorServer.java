@@ -0,0 +1,522 @@
+package tvestergaard.calculator.view;
+
+import tvestergaard.calculator.logic.Calculator;
+import tvestergaard.calculator.logic.ProgramException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves calculator sessions over a socket. Every connection gets its own session, forked from a template calculator,
+ * so the definitions made on one connection are not visible on other connections, while the definitions made in the
+ * template before the server was started are visible on all connections.
+ *
+ * Clients send programs as lines of UTF-8 text, and receive the output of the program in the format of
+ * {@link PipeCalculatorOutput}: a line per result, and a line starting with 'Error: ' per error. The output of every
+ * received line is terminated by a status line, 'OK' when the line did not report any errors and 'ERROR' otherwise,
+ * so clients can match the output to the lines they sent, also for lines that do not output anything, like
+ * successful declarations. Clients may send any number of lines without waiting for the output: the output is
+ * written when all received lines have been executed, so pipelined lines are answered in a single write.
+ *
+ * Lines longer than the maximum line length of the server are not executed. The rest of such a line is discarded,
+ * and it is answered by an error and the 'ERROR' status line.
+ *
+ * The commands reading and writing files on the server, like '!save', are disabled on the connections.
+ *
+ * Every connection is served by a task on the executor of the server. By default a virtual thread is used per
+ * connection when the JVM supports virtual threads, otherwise a platform thread is used per connection.
+ */
+public class CalculatorServer implements Closeable
+{
+
+    /**
+     * The port used when no port is provided.
+     */
+    public static final int DEFAULT_PORT = 7070;
+
+    /**
+     * The maximum number of characters in a line used when no maximum is provided.
+     */
+    public static final int DEFAULT_MAXIMUM_LINE_LENGTH = 1 << 20;
+
+    /**
+     * The status line terminating the output of a line that did not report any errors.
+     */
+    public static final String STATUS_OK = "OK";
+
+    /**
+     * The status line terminating the output of a line that reported one or more errors.
+     */
+    public static final String STATUS_ERROR = "ERROR";
+
+    /**
+     * The channel accepting the connections.
+     */
+    private final ServerSocketChannel channel;
+
+    /**
+     * The calculator the sessions of the connections are forked from.
+     */
+    private final Calculator template;
+
+    /**
+     * The executor serving the connections.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The number of characters buffered per connection before the output is written.
+     */
+    private final int bufferSize;
+
+    /**
+     * The maximum number of characters in a line received on a connection.
+     */
+    private final int maximumLineLength;
+
+    /**
+     * The open connections.
+     */
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new {@link CalculatorServer}.
+     *
+     * @param channel  The bound channel accepting the connections. May be a TCP or a Unix domain socket channel.
+     * @param template The calculator the sessions of the connections are forked from.
+     * @param executor The executor serving the connections. Must run every connection concurrently.
+     */
+    public CalculatorServer(ServerSocketChannel channel, Calculator template, ExecutorService executor)
+    {
+        this(channel, template, executor, PipeCalculatorOutput.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new {@link CalculatorServer}.
+     *
+     * @param channel    The bound channel accepting the connections. May be a TCP or a Unix domain socket channel.
+     * @param template   The calculator the sessions of the connections are forked from.
+     * @param executor   The executor serving the connections. Must run every connection concurrently.
+     * @param bufferSize The number of characters buffered per connection before the output is written.
+     */
+    public CalculatorServer(ServerSocketChannel channel, Calculator template, ExecutorService executor, int bufferSize)
+    {
+        this(channel, template, executor, bufferSize, DEFAULT_MAXIMUM_LINE_LENGTH);
+    }
+
+    /**
+     * Creates a new {@link CalculatorServer}.
+     *
+     * @param channel           The bound channel accepting the connections. May be a TCP or a Unix domain socket
+     *                          channel.
+     * @param template          The calculator the sessions of the connections are forked from.
+     * @param executor          The executor serving the connections. Must run every connection concurrently.
+     * @param bufferSize        The number of characters buffered per connection before the output is written.
+     * @param maximumLineLength The maximum number of characters in a line received on a connection.
+     */
+    public CalculatorServer(
+            ServerSocketChannel channel,
+            Calculator template,
+            ExecutorService executor,
+            int bufferSize,
+            int maximumLineLength)
+    {
+        if (maximumLineLength < 1) {
+            throw new IllegalArgumentException("The maximum length of the lines must be positive.");
+        }
+
+        this.channel = channel;
+        this.template = template;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.maximumLineLength = maximumLineLength;
+    }
+
+    /**
+     * Opens a channel accepting TCP connections on the provided address.
+     *
+     * @param address The address to bind the channel to.
+     * @return The bound channel.
+     * @throws IOException When the channel cannot be bound.
+     */
+    public static ServerSocketChannel openTcp(SocketAddress address) throws IOException
+    {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(address);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a channel accepting connections on the Unix domain socket with the provided path. Unix domain socket
+     * channels are available from Java 16.
+     *
+     * @param path The path of the socket. The file must not exist.
+     * @return The bound channel.
+     * @throws IOException                   When the channel cannot be bound.
+     * @throws UnsupportedOperationException When the JVM does not support Unix domain socket channels.
+     */
+    public static ServerSocketChannel openUnix(String path) throws IOException
+    {
+        SocketAddress  address;
+        ProtocolFamily family;
+        try {
+            address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", String.class)
+                    .invoke(null, path);
+            family = StandardProtocolFamily.valueOf("UNIX");
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later.", e);
+        }
+
+        ServerSocketChannel channel;
+        try {
+            channel = (ServerSocketChannel) ServerSocketChannel.class
+                    .getMethod("open", ProtocolFamily.class)
+                    .invoke(null, family);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later.", e);
+        }
+
+        try {
+            channel.bind(address);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns an executor running every task on a new virtual thread when the JVM supports virtual threads, and
+     * otherwise on a platform thread per task, reusing idle threads.
+     *
+     * @return The executor.
+     */
+    public static ExecutorService newDefaultExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "calculator-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Returns the address the server accepts connections on.
+     *
+     * @return The address the server accepts connections on.
+     * @throws IOException When the address cannot be read.
+     */
+    public SocketAddress getAddress() throws IOException
+    {
+        return channel.getLocalAddress();
+    }
+
+    /**
+     * Returns the number of open connections.
+     *
+     * @return The number of open connections.
+     */
+    public int getConnectionCount()
+    {
+        return connections.size();
+    }
+
+    /**
+     * Accepts connections until the server is closed. Every accepted connection is served on the executor.
+     *
+     * @throws IOException When a connection cannot be accepted.
+     */
+    public void run() throws IOException
+    {
+        try {
+            while (true) {
+                SocketChannel connection = channel.accept();
+                connections.add(connection);
+                try {
+                    executor.execute(() -> serve(connection));
+                } catch (RejectedExecutionException e) {
+                    connections.remove(connection);
+                    connection.close();
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // The server has been closed.
+        }
+    }
+
+    /**
+     * Accepts connections on a new daemon thread until the server is closed.
+     *
+     * @return The thread accepting the connections.
+     */
+    public Thread start()
+    {
+        Thread thread = new Thread(() -> {
+            try {
+                run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, "calculator-server");
+
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Stops accepting connections, and closes the open connections.
+     *
+     * @throws IOException When the channel accepting the connections cannot be closed.
+     */
+    @Override public void close() throws IOException
+    {
+        channel.close();
+        for (SocketChannel connection : connections)
+            connection.close();
+
+        executor.shutdown();
+    }
+
+    /**
+     * Executes the programs received on the provided connection until the connection is closed.
+     *
+     * @param connection The connection to serve.
+     */
+    private void serve(SocketChannel connection)
+    {
+        try {
+            if (connection.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+                connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+
+            PipeCalculatorOutput output  = new PipeCalculatorOutput(Channels.newOutputStream(connection), bufferSize);
+            Calculator           session = template.fork(output);
+            session.setFileCommandsEnabled(false);
+            LineReader reader = new LineReader(
+                    new InputStreamReader(Channels.newInputStream(connection), StandardCharsets.UTF_8),
+                    maximumLineLength
+            );
+
+            while (reader.next()) {
+                long errors = output.getErrorCount();
+                if (reader.isTooLong()) {
+                    output.error(String.format("The line exceeds the maximum length of %d characters.",
+                            maximumLineLength));
+                } else if (!reader.getLine().trim().isEmpty()) {
+                    try {
+                        session.execute(reader.getLine() + '\n');
+                    } catch (ProgramException e) {
+                        output.error(e.getMessage());
+                    }
+                }
+
+                output.printLine(output.getErrorCount() == errors ? STATUS_OK : STATUS_ERROR);
+                if (!reader.ready()) {
+                    output.flush();
+                }
+            }
+
+            output.flush();
+        } catch (IOException | UncheckedIOException e) {
+            // The connection has been closed by the client or the server.
+        } finally {
+            connections.remove(connection);
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // The connection is closed regardless.
+            }
+        }
+    }
+
+    /**
+     * Reads the lines received on a connection, without buffering more than the maximum number of characters in a
+     * line. Lines are terminated by '\n', and a '\r' preceding the '\n' is not part of the line.
+     */
+    private static final class LineReader
+    {
+
+        /**
+         * The reader the lines are read from.
+         */
+        private final Reader reader;
+
+        /**
+         * The maximum number of characters in a line.
+         */
+        private final int maximumLength;
+
+        /**
+         * The characters read from the reader, that have not yet been consumed.
+         */
+        private final char[] buffer = new char[8192];
+
+        /**
+         * The index of the next unconsumed character in the buffer.
+         */
+        private int position;
+
+        /**
+         * The index after the last character read into the buffer.
+         */
+        private int limit;
+
+        /**
+         * The line read by the last call to {@link #next()}.
+         */
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * Whether the line read by the last call to {@link #next()} exceeded the maximum length.
+         */
+        private boolean tooLong;
+
+        /**
+         * Creates a new {@link LineReader}.
+         *
+         * @param reader        The reader the lines are read from.
+         * @param maximumLength The maximum number of characters in a line.
+         */
+        private LineReader(Reader reader, int maximumLength)
+        {
+            this.reader = reader;
+            this.maximumLength = maximumLength;
+        }
+
+        /**
+         * Reads the next line. When the line exceeds the maximum length, the rest of the line is discarded.
+         *
+         * @return False when the end of the stream has been reached, and no more lines can be read.
+         * @throws IOException When the line cannot be read.
+         */
+        private boolean next() throws IOException
+        {
+            line.setLength(0);
+            tooLong = false;
+            boolean read = false;
+            while (true) {
+                if (position == limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit < 0) {
+                        limit = 0;
+                        return read && end();
+                    }
+                }
+
+                read = true;
+                int start = position;
+                while (position < limit && buffer[position] != '\n')
+                    position++;
+
+                append(start, position);
+                if (position < limit) {
+                    position++;
+                    return end();
+                }
+            }
+        }
+
+        /**
+         * Ends the line, removing the '\r' preceding the '\n'.
+         *
+         * @return Always true.
+         */
+        private boolean end()
+        {
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r') {
+                line.setLength(--length);
+            }
+
+            if (length > maximumLength) {
+                tooLong = true;
+                line.setLength(0);
+            }
+
+            return true;
+        }
+
+        /**
+         * Appends a range of the buffer to the line, unless the line exceeds the maximum length.
+         *
+         * @param start The index of the first character to append.
+         * @param end   The index after the last character to append.
+         */
+        private void append(int start, int end)
+        {
+            if (tooLong) {
+                return;
+            }
+
+            // One character more than the maximum is kept, so a trailing '\r' can be removed.
+            if (line.length() + (end - start) > maximumLength + 1) {
+                tooLong = true;
+                line.setLength(0);
+                return;
+            }
+
+            line.append(buffer, start, end - start);
+        }
+
+        /**
+         * Returns the line read by the last call to {@link #next()}.
+         *
+         * @return The line read by the last call to {@link #next()}. Empty when the line exceeded the maximum length.
+         */
+        private String getLine()
+        {
+            return line.toString();
+        }
+
+        /**
+         * Returns whether the line read by the last call to {@link #next()} exceeded the maximum length.
+         *
+         * @return Whether the line read by the last call to {@link #next()} exceeded the maximum length.
+         */
+        private boolean isTooLong()
+        {
+            return tooLong;
+        }
+
+        /**
+         * Returns whether more characters can be read without blocking.
+         *
+         * @return Whether more characters can be read without blocking.
+         * @throws IOException When the reader fails.
+         */
+        private boolean ready() throws IOException
+        {
+            return position < limit || reader.ready();
+        }
+    }
+}
@@ -3,8 +3,18 @@ package tvestergaard.calculator.view;
 import tvestergaard.calculator.logic.Calculator;
 import tvestergaard.calculator.logic.CalculatorOutput;
 import tvestergaard.calculator.logic.Function;
+import tvestergaard.calculator.logic.FunctionCache;
+import tvestergaard.calculator.logic.FunctionProfile;
 import tvestergaard.calculator.logic.ProgramException;
-
+import tvestergaard.calculator.logic.WarmUp;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Scanner;
@@ -12,12 +22,23 @@ import java.util.Scanner;
 public class ConsoleCalculatorOutput implements CalculatorOutput
 {
 
-    public static void main(String[] args) throws ProgramException
+    public static void main(String[] args) throws ProgramException, IOException
     {
+        if (args.length > 0 && args[0].equals("--pipe")) {
+            pipe(args.length > 1 ? Integer.parseInt(args[1]) : PipeCalculatorOutput.DEFAULT_BUFFER_SIZE);
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("--server")) {
+            serve(args.length > 1 ? args[1] : Integer.toString(CalculatorServer.DEFAULT_PORT));
+            return;
+        }
+
         ConsoleCalculatorOutput consoleCalculatorOutput = new ConsoleCalculatorOutput();
         Calculator              calculator              = new Calculator(consoleCalculatorOutput);
         Scanner                 scanner                 = new Scanner(System.in);
 
+        WarmUp.start();
         System.out.println("Ready.");
 
         while (true) {
@@ -26,6 +47,59 @@ public class ConsoleCalculatorOutput implements CalculatorOutput
         }
     }
 
+    /**
+     * Executes the program read from the standard input, writing plain output to the standard output. Used when the
+     * calculator is started using '--pipe [buffer size]'.
+     *
+     * @param bufferSize The number of characters buffered before the output is written.
+     * @throws ProgramException When an exception occurs while executing the code.
+     * @throws IOException      When the input cannot be read.
+     */
+    private static void pipe(int bufferSize) throws ProgramException, IOException
+    {
+        FileOutputStream     stdout     = new FileOutputStream(FileDescriptor.out);
+        FileInputStream      stdin      = new FileInputStream(FileDescriptor.in);
+        PipeCalculatorOutput output     = new PipeCalculatorOutput(stdout, bufferSize);
+        Calculator           calculator = new Calculator(output);
+
+        try {
+            calculator.execute(stdin.getChannel());
+        } finally {
+            output.flush();
+        }
+    }
+
+    /**
+     * Serves calculator sessions on the provided address until the process is stopped. Used when the calculator is
+     * started using '--server [port | host:port | unix:path]'. A port without a host is bound on the loopback
+     * address, since the connections are not authenticated; other interfaces must be requested explicitly, for
+     * example using '0.0.0.0:7070'. The JVM is warmed up before connections are accepted, so that the first
+     * connections are not served by a cold parser.
+     *
+     * @param address The TCP port to listen on, optionally prefixed with the host to bind, or the path of the Unix
+     *                domain socket prefixed with 'unix:'.
+     * @throws IOException When the server cannot listen on the address.
+     */
+    private static void serve(String address) throws IOException
+    {
+        ServerSocketChannel channel;
+        if (address.startsWith("unix:")) {
+            channel = CalculatorServer.openUnix(address.substring("unix:".length()));
+        } else {
+            int separator = address.lastIndexOf(':');
+            int port      = Integer.parseInt(address.substring(separator + 1));
+            channel = CalculatorServer.openTcp(separator < 0
+                    ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                    : new InetSocketAddress(address.substring(0, separator), port));
+        }
+
+        WarmUp.run();
+        Calculator       template = new Calculator(new PipeCalculatorOutput(System.out, 0));
+        CalculatorServer server   = new CalculatorServer(channel, template, CalculatorServer.newDefaultExecutor());
+        System.out.println("Listening on " + server.getAddress() + ".");
+        server.run();
+    }
+
     /**
      * Print an error to output.
      *
@@ -106,4 +180,41 @@ public class ConsoleCalculatorOutput implements CalculatorOutput
                 )
         );
     }
+
+    @Override public void printExplanation(String expression, String explanation)
+    {
+        System.out.print(Colors.ANSI_CYAN);
+        System.out.println(String.format("    %s => %s", expression, explanation));
+        System.out.print(Colors.ANSI_RESET);
+    }
+
+    @Override public void printCache(String signature, FunctionCache cache)
+    {
+        System.out.print(Colors.ANSI_CYAN);
+        System.out.println(String.format(
+                "    %s: %d/%d results, %d hits, %d misses, %d evictions",
+                signature,
+                cache.size(),
+                cache.getMaximumSize(),
+                cache.getHits(),
+                cache.getMisses(),
+                cache.getEvictions()
+        ));
+        System.out.print(Colors.ANSI_RESET);
+    }
+
+    @Override public void printProfile(String signature, FunctionProfile profile)
+    {
+        System.out.print(Colors.ANSI_CYAN);
+        System.out.println(String.format(
+                "    %s: %d calls, %.3f ms inclusive, %.3f ms exclusive, %.3f ms arguments, %.3f ms body",
+                signature,
+                profile.getCallCount(),
+                profile.getInclusiveNanos() / 1e6,
+                profile.getExclusiveNanos() / 1e6,
+                profile.getArgumentNanos() / 1e6,
+                profile.getBodyNanos() / 1e6
+        ));
+        System.out.print(Colors.ANSI_RESET);
+    }
 }
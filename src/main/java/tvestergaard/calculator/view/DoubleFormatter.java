@@ -0,0 +1,44 @@
+package tvestergaard.calculator.view;
+
+/**
+ * Formats doubles into a {@link StringBuilder} without allocating. The output is identical to
+ * {@link Double#toString(double)}.
+ */
+public final class DoubleFormatter
+{
+
+    /**
+     * The magnitude from which {@link Double#toString(double)} uses the computerized scientific notation.
+     */
+    private static final double SCIENTIFIC_NOTATION = 1e7;
+
+    /**
+     * Prevents instantiation.
+     */
+    private DoubleFormatter()
+    {
+
+    }
+
+    /**
+     * Appends the provided value to the provided builder. Integral values below 10^7, which are the most common
+     * results, are formatted directly from their digits. Other values are appended using
+     * {@link StringBuilder#append(double)}, which formats into the builder without creating a string.
+     *
+     * @param builder The builder to append to.
+     * @param value   The value to append.
+     * @return The provided builder.
+     */
+    public static StringBuilder append(StringBuilder builder, double value)
+    {
+        if (value == 0) {
+            return builder.append(Double.doubleToRawLongBits(value) < 0 ? "-0.0" : "0.0");
+        }
+
+        if (Math.abs(value) < SCIENTIFIC_NOTATION && value == (long) value) {
+            return builder.append((long) value).append(".0");
+        }
+
+        return builder.append(value);
+    }
+}
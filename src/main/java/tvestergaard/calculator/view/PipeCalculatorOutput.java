@@ -0,0 +1,199 @@
+package tvestergaard.calculator.view;
+
+import tvestergaard.calculator.logic.CalculatorOutput;
+import tvestergaard.calculator.logic.Function;
+import tvestergaard.calculator.logic.FunctionCache;
+import tvestergaard.calculator.logic.FunctionProfile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Outputs plain text without colors, for use when the calculator is used non-interactively, for example when
+ * programs are piped through the calculator. The output is collected in a buffer, that is written when it exceeds
+ * the configured size, and when {@link #flush()} is called.
+ *
+ * Results are output as one value per line, formatted like {@link Double#toString(double)}. Errors are output on a
+ * line starting with 'Error: ', so that they stay in order with the results.
+ */
+public class PipeCalculatorOutput implements CalculatorOutput
+{
+
+    /**
+     * The default number of characters buffered before the output is written.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The writer the output is written to.
+     */
+    private final Writer writer;
+
+    /**
+     * The buffered output.
+     */
+    private final StringBuilder buffer;
+
+    /**
+     * The number of characters buffered before the output is written.
+     */
+    private final int bufferSize;
+
+    /**
+     * The number of errors output.
+     */
+    private long errorCount;
+
+    /**
+     * Creates a new {@link PipeCalculatorOutput}.
+     *
+     * @param output     The stream the UTF-8 encoded output is written to.
+     * @param bufferSize The number of characters buffered before the output is written. The output is written after
+     *                   every line when 0.
+     */
+    public PipeCalculatorOutput(OutputStream output, int bufferSize)
+    {
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("The size of the buffer cannot be negative.");
+        }
+
+        this.writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        this.bufferSize = bufferSize;
+        this.buffer = new StringBuilder(bufferSize + 128);
+    }
+
+    /**
+     * Writes the buffered output.
+     */
+    public void flush()
+    {
+        try {
+            writer.append(buffer);
+            writer.flush();
+            buffer.setLength(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the number of errors output.
+     *
+     * @return The number of errors output.
+     */
+    public long getErrorCount()
+    {
+        return errorCount;
+    }
+
+    /**
+     * Outputs the provided text on a line of its own.
+     *
+     * @param line The text to output.
+     */
+    public void printLine(String line)
+    {
+        buffer.append(line);
+        endLine();
+    }
+
+    /**
+     * Ends the current line, and writes the buffered output when the buffer is full.
+     */
+    private void endLine()
+    {
+        buffer.append('\n');
+        if (buffer.length() > bufferSize) {
+            flush();
+        }
+    }
+
+    @Override public void error(String error)
+    {
+        buffer.append("Error: ").append(error);
+        errorCount++;
+        endLine();
+    }
+
+    @Override public void result(Double value)
+    {
+        DoubleFormatter.append(buffer, value);
+        endLine();
+    }
+
+    @Override public void printFunctions(Collection<Function> functions)
+    {
+        buffer.append("Functions:");
+        endLine();
+        for (Function function : functions) {
+            buffer.append("    ").append(function.getSignature());
+            endLine();
+        }
+    }
+
+    @Override public void printVariables(Map<String, Double> variables)
+    {
+        buffer.append("Variables:");
+        endLine();
+        printValues(variables);
+    }
+
+    @Override public void printConstants(Map<String, Double> constants)
+    {
+        buffer.append("Constants:");
+        endLine();
+        printValues(constants);
+    }
+
+    /**
+     * Outputs the provided named values, one per line.
+     *
+     * @param values The values to output.
+     */
+    private void printValues(Map<String, Double> values)
+    {
+        for (Map.Entry<String, Double> value : values.entrySet()) {
+            DoubleFormatter.append(buffer.append("    ").append(value.getKey()).append(" = "), value.getValue());
+            endLine();
+        }
+    }
+
+    @Override public void printValues(Double value)
+    {
+        DoubleFormatter.append(buffer, value);
+        endLine();
+    }
+
+    @Override public void printExplanation(String expression, String explanation)
+    {
+        buffer.append("    ").append(expression).append(" => ").append(explanation);
+        endLine();
+    }
+
+    @Override public void printCache(String signature, FunctionCache cache)
+    {
+        buffer.append("    ").append(signature)
+                .append(": ").append(cache.size()).append('/').append(cache.getMaximumSize()).append(" results, ")
+                .append(cache.getHits()).append(" hits, ")
+                .append(cache.getMisses()).append(" misses, ")
+                .append(cache.getEvictions()).append(" evictions");
+        endLine();
+    }
+
+    @Override public void printProfile(String signature, FunctionProfile profile)
+    {
+        buffer.append("    ").append(signature)
+                .append(": ").append(profile.getCallCount()).append(" calls, ")
+                .append(profile.getInclusiveNanos()).append(" ns inclusive, ")
+                .append(profile.getExclusiveNanos()).append(" ns exclusive, ")
+                .append(profile.getArgumentNanos()).append(" ns arguments, ")
+                .append(profile.getBodyNanos()).append(" ns body");
+        endLine();
+    }
+}
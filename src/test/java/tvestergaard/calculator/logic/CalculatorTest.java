@@ -0,0 +1,182 @@
+package tvestergaard.calculator.logic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CalculatorTest
+{
+
+    private static final int THREADS  = 8;
+    private static final int SESSIONS = 64;
+    private static final int ROUNDS   = 20;
+    private static final int TERMS    = 1_000_000;
+
+    private ExecutorService executor;
+
+    @Before public void setUp()
+    {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Every session defines a variable, a constant and a function with the same names as the other sessions, and
+     * executes the same programs through a shared program cache. The rounds of a session are executed as separate
+     * tasks, so every session is used from several threads while the other sessions are executing.
+     */
+    @Test public void sessionsAreIsolatedUnderContention() throws Exception
+    {
+        ProgramCache       cache    = new ProgramCache(64, 1 << 16);
+        Calculator         base     = new Calculator(new RecordingOutput());
+        List<Session>      sessions = new ArrayList<>();
+        List<Future<Void>> rounds   = new ArrayList<>();
+        base.setProgramCache(cache);
+        base.execute("func f(y) = (y * 2) + k\n");
+
+        for (int x = 0; x < SESSIONS; x++) {
+            RecordingOutput output     = new RecordingOutput();
+            Calculator      calculator = x % 2 == 0 ? new Calculator(output) : base.fork(output);
+            calculator.setProgramCache(cache);
+            calculator.setCompilationEnabled(x % 4 < 2);
+            calculator.setMemoizationEnabled(x % 3 == 0);
+            if (x % 2 == 0)
+                calculator.execute("func f(y) = (y * 2) + k\n");
+            calculator.execute(String.format("x = %d\nconst k = %d\n", x, x * 10));
+            sessions.add(new Session(calculator, output, x));
+        }
+
+        for (int round = 0; round < ROUNDS; round++)
+            for (Session session : sessions)
+                rounds.add(executor.submit(session));
+        for (Future<Void> round : rounds)
+            round.get();
+
+        for (Session session : sessions) {
+            String message = "session " + session.id;
+            assertEquals(message, Collections.emptyList(), session.output.errors);
+            assertEquals(message, ROUNDS * 100, session.output.results.size());
+            assertEquals(message, Collections.singleton(session.id * 13.0), new HashSet<>(session.output.results));
+        }
+    }
+
+    /**
+     * Programs executed concurrently on the same session are executed one at a time, so no update is lost.
+     */
+    @Test public void sharedSessionExecutesProgramsOneAtATime() throws Exception
+    {
+        RecordingOutput      output     = new RecordingOutput();
+        Calculator           calculator = new Calculator(output);
+        List<Future<Object>> tasks      = new ArrayList<>();
+        calculator.execute("n = 0\nfunc inc(x) = x + 1\n");
+
+        for (int x = 0; x < THREADS; x++) {
+            tasks.add(executor.submit(() -> {
+                for (int y = 0; y < 1000; y++)
+                    calculator.execute("n = inc(n)\n");
+                return null;
+            }));
+        }
+
+        for (Future<Object> task : tasks)
+            task.get();
+
+        calculator.execute("n\n");
+        assertEquals(Collections.emptyList(), output.errors);
+        assertEquals(Collections.singletonList(THREADS * 1000.0), output.results);
+    }
+
+    /**
+     * Chains of operations are evaluated, declared, bound and explained without recursing once per operation.
+     */
+    @Test public void streamedStatementsAreNotStoredInTheSharedProgramCache() throws IOException, ProgramException
+    {
+        RecordingOutput output     = new RecordingOutput();
+        Calculator      calculator = new Calculator(output);
+        Calculator      fork       = calculator.fork();
+        calculator.execute("1 + 1\n");
+        fork.execute(new StringReader("a = 1\na + 2\n\n  \nb = a * 3\r\nb\n"));
+
+        assertEquals(Collections.emptyList(), output.errors);
+        assertEquals(Arrays.asList(2.0, 3.0, 3.0), output.results);
+        assertEquals(1, calculator.getProgramCache().size());
+    }
+
+    @Test public void executesChainsOfAMillionTerms() throws ProgramException
+    {
+        RecordingOutput output     = new RecordingOutput();
+        Calculator      calculator = new Calculator(output);
+        calculator.setCompilationEnabled(true);
+        calculator.execute("a = 1\n");
+        calculator.execute(chain("1", " + ") + "\n");
+        calculator.execute("sum = " + chain("a", " + ") + "\n");
+        calculator.execute("sum\n");
+        calculator.execute("func long(x) = " + chain("x", " - ") + "\n");
+        calculator.execute("long(2)\n");
+        calculator.execute("bound := " + chain("a", " + ") + "\n");
+        calculator.execute("a = 2\n");
+        calculator.execute("bound\n");
+        calculator.execute("!explain(" + chain("a", " + ") + ")\n");
+
+        assertEquals(Collections.emptyList(), output.errors);
+        assertEquals(Arrays.asList(1e6, 1e6, 2 - 2 * (TERMS - 1.0), 2e6), output.results);
+        assertEquals(1, output.explanations.size());
+        assertTrue(output.explanations.get(0).startsWith(chain("a", " + ") + " => a + a + a"));
+    }
+
+    /**
+     * Returns an expression applying the provided operator to {@link #TERMS} copies of the provided operand.
+     */
+    private static String chain(String operand, String operator)
+    {
+        StringBuilder builder = new StringBuilder(operand);
+        for (int x = 1; x < TERMS; x++)
+            builder.append(operator).append(operand);
+
+        return builder.toString();
+    }
+
+    /**
+     * Executes one round of programs on a session, reading the variable, constant and function of the session.
+     */
+    private static class Session implements Callable<Void>
+    {
+
+        private final Calculator      calculator;
+        private final RecordingOutput output;
+        private final int             id;
+
+        Session(Calculator calculator, RecordingOutput output, int id)
+        {
+            this.calculator = calculator;
+            this.output = output;
+            this.id = id;
+        }
+
+        @Override public Void call() throws ProgramException
+        {
+            for (int x = 0; x < 100; x++)
+                calculator.execute("f(x) + x\n");
+            return null;
+        }
+    }
+}
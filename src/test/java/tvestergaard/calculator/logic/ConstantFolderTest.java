@@ -0,0 +1,67 @@
+package tvestergaard.calculator.logic;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConstantFolderTest
+{
+
+    private RecordingOutput    output;
+    private CalculatorMemory   memory;
+    private FunctionCollection functions;
+    private StatementListener  listener;
+
+    @Before public void setUp()
+    {
+        output = new RecordingOutput();
+        memory = new CalculatorMemory(StandardLibrary.LIBRARY);
+        functions = new FunctionCollection(StandardLibrary.LIBRARY);
+        listener = new StatementListener(output, memory, functions);
+    }
+
+    @Test public void foldsCallsToPredefinedFunctions()
+    {
+        ConstantFolder folder = new ConstantFolder(memory, functions, new DoubleEvaluator(memory, functions));
+        ExpressionNode folded = folder.fold(new BinaryNode(BinaryNode.Operator.MULTIPLY,
+                new CallNode("sqrt", Collections.singletonList(new LiteralNode(4))),
+                new VariableNode("a")));
+
+        assertTrue(folded instanceof BinaryNode);
+        assertEquals(2, ((LiteralNode) ((BinaryNode) folded).getLeft()).getValue(), 0);
+    }
+
+    @Test public void doesNotFoldCallsToCustomFunctionsInFunctionBodies()
+    {
+        execute("func f(x) = x\n" +
+                "func g() = f(2)\n" +
+                "const x = 5\n" +
+                "g()\n" +
+                "f(2)\n");
+
+        assertEquals(Arrays.asList(5.0, 5.0), output.results);
+    }
+
+    @Test public void doesNotFoldCallsToCustomFunctionsInBindings()
+    {
+        execute("w = 1\n" +
+                "func f(x) = x * 4\n" +
+                "z := w + f(1)\n" +
+                "const x = 5\n" +
+                "w = 2\n" +
+                "z\n");
+
+        assertEquals(Collections.singletonList(22.0), output.results);
+    }
+
+    private void execute(String program)
+    {
+        listener.enterProgram(ProgramParser.get().parse(program, output));
+        assertEquals(Collections.emptyList(), output.errors);
+    }
+}
@@ -0,0 +1,123 @@
+package tvestergaard.calculator.logic;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DoubleEvaluatorTest
+{
+
+    private static final int ITERATIONS = 1_000_000;
+
+    private RecordingOutput    output;
+    private CalculatorMemory   memory;
+    private FunctionCollection functions;
+    private StatementListener  listener;
+
+    /**
+     * Evaluates 'n(a, b) + sqrt(a) * g(a, 2)', where n calls the custom functions g, k and h.
+     */
+    private ExpressionNode expression;
+
+    @Before public void setUp()
+    {
+        output = new RecordingOutput();
+        memory = new CalculatorMemory(StandardLibrary.LIBRARY);
+        functions = new FunctionCollection(StandardLibrary.LIBRARY);
+        listener = new StatementListener(output, memory, functions);
+        listener.enterProgram(ProgramParser.get().parse(
+                "a = 2\n" +
+                "b = 3\n" +
+                "func g(x, y) = x + y\n" +
+                "func k(x) = sqrt(x) * 2\n" +
+                "func h(a, b, c) = a * b + c / (a - b)\n" +
+                "func n(x, y) = g(x, y) * k(y) + h(x, y, 1)\n", output));
+        assertEquals(Collections.emptyList(), output.errors);
+
+        expression = new BinaryNode(BinaryNode.Operator.ADD,
+                new CallNode("n", Arrays.asList(new VariableNode("a"), new VariableNode("b"))),
+                new BinaryNode(BinaryNode.Operator.MULTIPLY,
+                        new CallNode("sqrt", Collections.singletonList(new VariableNode("a"))),
+                        new CallNode("g", Arrays.asList(new VariableNode("a"), new LiteralNode(2)))));
+    }
+
+    @Test public void interpretedEvaluationDoesNotAllocate()
+    {
+        DoubleEvaluator evaluator = new DoubleEvaluator(memory, functions);
+        assertEquals(0, allocatedBytesPerEvaluation(evaluator), 0.01);
+    }
+
+    @Test public void compiledEvaluationDoesNotAllocate()
+    {
+        FunctionCompiler compiler  = new FunctionCompiler(memory, functions);
+        DoubleEvaluator  evaluator = new DoubleEvaluator(memory, functions);
+        evaluator.setCompiler(compiler);
+        evaluate(evaluator);
+
+        // n, g, k and h are compiled on the first call, and are not compiled again while measuring.
+        int generated = compiler.getGeneratedCount();
+        assertEquals(4, generated);
+        assertEquals(0, allocatedBytesPerEvaluation(evaluator), 0.01);
+        assertEquals(generated, compiler.getGeneratedCount());
+    }
+
+    @Test public void alternatingSessionsDoNotAllocate()
+    {
+        CalculatorMemory   forkMemory    = memory.snapshot();
+        FunctionCollection forkFunctions = functions.snapshot();
+        new StatementListener(output, forkMemory, forkFunctions).enterProgram(
+                ProgramParser.get().parse("func z(x) = x\n", output));
+        assertEquals(Collections.emptyList(), output.errors);
+
+        // The sessions have different functions, and share the expression and the bodies of the functions.
+        DoubleEvaluator evaluator = new DoubleEvaluator(memory, functions);
+        DoubleEvaluator fork      = new DoubleEvaluator(forkMemory, forkFunctions);
+        assertEquals(0, allocatedBytesPerEvaluation(evaluator, fork), 0.01);
+    }
+
+    /**
+     * Returns the average number of bytes allocated by the current thread when evaluating the expression using the
+     * provided evaluators in turn, after the evaluation has been warmed up.
+     */
+    private double allocatedBytesPerEvaluation(DoubleEvaluator... evaluators)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        double expected = evaluate(evaluators);
+        double sum      = 0;
+        for (int x = 0; x < ITERATIONS; x++)
+            sum += evaluate(evaluators);
+
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int x = 0; x < ITERATIONS; x++)
+            sum += evaluate(evaluators);
+        long after = allocations.getThreadAllocatedBytes(thread);
+
+        assertEquals(expected * ITERATIONS * 2, sum, Math.abs(expected) * ITERATIONS * 1e-9);
+        return (after - before) / (double) ITERATIONS;
+    }
+
+    private double evaluate(DoubleEvaluator... evaluators)
+    {
+        double sum = 0;
+        for (DoubleEvaluator evaluator : evaluators) {
+            sum += evaluator.evaluate(expression);
+            assertTrue(evaluator.getError(), !evaluator.hasError());
+        }
+
+        return sum;
+    }
+}
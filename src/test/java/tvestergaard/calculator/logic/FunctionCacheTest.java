@@ -0,0 +1,56 @@
+package tvestergaard.calculator.logic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class FunctionCacheTest
+{
+
+    @Test public void keepsTheResultsOfAlternatingStamps()
+    {
+        FunctionCache cache = new FunctionCache(1, 16);
+        cache.put(new double[]{1}, 0, 10, 1);
+        cache.put(new double[]{1}, 0, 20, 2);
+
+        for (int x = 0; x < 10; x++) {
+            assertEquals(10, cache.get(new double[]{1}, 0, 1).getResult(), 0);
+            assertEquals(20, cache.get(new double[]{1}, 0, 2).getResult(), 0);
+        }
+
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test public void boundsTheResultsOfAllStampsTogether()
+    {
+        FunctionCache cache = new FunctionCache(1, 4);
+        for (int x = 0; x < 3; x++)
+            cache.put(new double[]{x}, 0, x, 1);
+        for (int x = 0; x < 3; x++)
+            cache.put(new double[]{x}, 0, x, 2);
+
+        assertEquals(4, cache.size());
+        assertEquals(2, cache.getEvictions());
+        assertNull(cache.get(new double[]{0}, 0, 1));
+        assertNull(cache.get(new double[]{1}, 0, 1));
+        assertNotNull(cache.get(new double[]{2}, 0, 1));
+        assertNotNull(cache.get(new double[]{0}, 0, 2));
+    }
+
+    @Test public void dropsTheLeastRecentlyUsedStamp()
+    {
+        FunctionCache cache = new FunctionCache(1, 16);
+        for (int stamp = 1; stamp <= FunctionCache.MAXIMUM_STAMPS; stamp++)
+            cache.put(new double[]{0}, 0, stamp, stamp);
+
+        assertNotNull(cache.get(new double[]{0}, 0, 1));
+        cache.put(new double[]{0}, 0, 0, FunctionCache.MAXIMUM_STAMPS + 1);
+
+        assertEquals(FunctionCache.MAXIMUM_STAMPS, cache.size());
+        assertNotNull(cache.get(new double[]{0}, 0, 1));
+        assertNull(cache.get(new double[]{0}, 0, 2));
+    }
+}
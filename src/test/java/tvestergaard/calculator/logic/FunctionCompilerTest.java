@@ -0,0 +1,215 @@
+package tvestergaard.calculator.logic;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class FunctionCompilerTest
+{
+
+    private RecordingOutput    output;
+    private CalculatorMemory   memory;
+    private FunctionCollection functions;
+    private StatementListener  listener;
+
+    @Before public void setUp()
+    {
+        output = new RecordingOutput();
+        memory = new CalculatorMemory(StandardLibrary.LIBRARY);
+        functions = new FunctionCollection(StandardLibrary.LIBRARY);
+        listener = new StatementListener(output, memory, functions);
+        execute("func g(x, y) = x + y\n" +
+                "func k(x) = sqrt(x) * 2\n" +
+                "func h(a, b, c) = a * b + c / (a - b)\n" +
+                "func m(x, y) = max(x, y) - min(x, y) * pow(x, 2)\n" +
+                "func n(x, y) = g(x, y) * k(y) + h(x, y, 1)\n" +
+                "func f(x) = x\n");
+    }
+
+    @Test public void compilesBodiesReadingParameters()
+    {
+        assertCompiles("f", 7);
+        assertCompiles("g", 2, 3);
+        assertCompiles("k", 9);
+        assertCompiles("h", 2, 3, 0.5);
+        assertCompiles("m", 1, 3);
+    }
+
+    @Test public void compilesBodiesCallingCustomFunctions()
+    {
+        assertCompiles("n", 2, 3);
+    }
+
+    @Test public void compilersOfForksDoNotRecompileSharedFunctions()
+    {
+        execute("func w(y) = (y * 2) + k\n");
+        Function        function  = functions.get(ConcreteFunctionIdentifier.of("w", 1));
+        DoubleEvaluator first     = fork(1);
+        DoubleEvaluator second    = fork(2);
+        double[]        arguments = {3};
+
+        for (int x = 0; x < 100; x++) {
+            assertEquals(7, function.call(first, arguments, 0), 0);
+            assertEquals(8, function.call(second, arguments, 0), 0);
+        }
+
+        assertEquals(1, first.getCompiler().getGeneratedCount());
+        assertEquals(1, second.getCompiler().getGeneratedCount());
+    }
+
+    @Test public void recompiledBodiesAreDefinedByANewClassLoader()
+    {
+        ConcreteCustomFunction function = (ConcreteCustomFunction) functions.get(ConcreteFunctionIdentifier.of("g", 2));
+        FunctionCompiler       compiler = new FunctionCompiler(memory, functions);
+        CompiledBody           before   = compiler.getBody(function);
+        assertSame(before, compiler.getBody(function));
+
+        execute("const unused = 1\n");
+        CompiledBody after = compiler.getBody(function);
+        assertNotSame(before, after);
+        assertNotSame(before.getClass().getClassLoader(), after.getClass().getClassLoader());
+        assertSame(after, compiler.getBody(function));
+    }
+
+    @Test public void compiledFunctionsReturnTheSameResultsAsTheInterpreter()
+    {
+        Random           random      = new Random(42);
+        FunctionCompiler compiler    = new FunctionCompiler(memory, functions);
+        DoubleEvaluator  interpreter = new DoubleEvaluator(memory, functions);
+        DoubleEvaluator  compiled    = new DoubleEvaluator(memory, functions);
+        compiled.setCompiler(compiler);
+        execute("const c = 2.5\n");
+
+        List<String> callable = new ArrayList<>(Arrays.asList(
+                "g/2", "k/1", "h/3", "m/2", "n/2", "f/1", "abs/1", "sqrt/1", "sin/1", "exp/1", "floor/1", "max/2",
+                "min/2", "pow/2", "log/1", "log/2", "round/1", "round/2", "root/2"));
+        double[] values = {0, 1, -1, 0.5, 2, 3.25, -7, 1e-3};
+
+        for (int x = 0; x < 300; x++) {
+            String       name       = "generated" + (char) ('a' + x % 26) + (char) ('a' + x / 26);
+            List<String> parameters = new ArrayList<>();
+            for (int y = random.nextInt(4); y > 0; y--)
+                parameters.add("p" + (char) ('a' + parameters.size()));
+
+            String body = expression(random, parameters, callable, 4);
+            execute(String.format("func %s(%s) = %s\n", name, String.join(", ", parameters), body));
+            ConcreteCustomFunction function =
+                    (ConcreteCustomFunction) functions.get(ConcreteFunctionIdentifier.of(name, parameters.size()));
+            assertNotNull(body, compiler.compile(function, function.resolve(memory)));
+
+            for (int y = 0; y < 8; y++) {
+                double[] arguments = new double[parameters.size()];
+                for (int z = 0; z < arguments.length; z++)
+                    arguments[z] = values[random.nextInt(values.length)];
+
+                String message = body + " " + Arrays.toString(arguments);
+                assertEquals(message, outcome(interpreter, function, arguments),
+                        outcome(compiled, function, arguments));
+                assertEquals(message, 0, compiled.getTop());
+            }
+
+            callable.add(name + "/" + parameters.size());
+        }
+    }
+
+    /**
+     * Returns a random expression referencing the provided parameters, constants and functions. Functions are
+     * formatted as 'name/number of parameters'.
+     */
+    private static String expression(Random random, List<String> parameters, List<String> callable, int depth)
+    {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            switch (random.nextInt(parameters.isEmpty() ? 2 : 4)) {
+                case 0:
+                    return Double.toString((random.nextInt(40) - 20) / 4.0);
+                case 1:
+                    return new String[]{"PI", "E", "c"}[random.nextInt(3)];
+                default:
+                    return parameters.get(random.nextInt(parameters.size()));
+            }
+        }
+
+        switch (random.nextInt(3)) {
+            case 0:
+                return expression(random, parameters, callable, depth - 1) + " " + "+-*/".charAt(random.nextInt(4)) +
+                        " " + expression(random, parameters, callable, depth - 1);
+            case 1:
+                return "(" + expression(random, parameters, callable, depth - 1) + ")";
+            default:
+                String[]     function  = callable.get(random.nextInt(callable.size())).split("/");
+                List<String> arguments = new ArrayList<>();
+                for (int x = Integer.parseInt(function[1]); x > 0; x--)
+                    arguments.add(expression(random, parameters, callable, depth - 1));
+                return function[0] + "(" + String.join(", ", arguments) + ")";
+        }
+    }
+
+    /**
+     * Calls the provided function, and returns the bits of the result, or the error reported by the call.
+     */
+    private static String outcome(DoubleEvaluator evaluator, Function function, double[] arguments)
+    {
+        try {
+            double result = function.call(evaluator, arguments, 0);
+            if (evaluator.hasError()) {
+                String error = evaluator.getError();
+                evaluator.clearError();
+                return "error: " + error;
+            }
+
+            return result + " " + Long.toHexString(Double.doubleToLongBits(result));
+        } catch (RuntimeException e) {
+            evaluator.clearError();
+            return "exception: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Asserts that the custom function with the provided name compiles, and that the compiled body returns the same
+     * result as the interpreter when called with the provided arguments.
+     */
+    private void assertCompiles(String name, double... arguments)
+    {
+        FunctionIdentifier     identifier = ConcreteFunctionIdentifier.of(name, arguments.length);
+        ConcreteCustomFunction function   = (ConcreteCustomFunction) functions.get(identifier);
+        FunctionCompiler       compiler   = new FunctionCompiler(memory, functions);
+        CompiledBody           body       = compiler.compile(function, function.resolve(memory));
+        assertNotNull(String.format("'%s' was not compiled.", function.getSignature()), body);
+
+        DoubleEvaluator evaluator = new DoubleEvaluator(memory, functions);
+        double          expected  = evaluator.evaluateFrame(function.resolve(memory), arguments, 0);
+        assertEquals(null, evaluator.getError());
+        assertEquals(expected, body.call(evaluator, arguments, 0), 0);
+        assertEquals(null, evaluator.getError());
+    }
+
+    /**
+     * Returns an evaluator compiling custom functions in a copy of the memory and functions, where the constant k has
+     * been defined with the provided value.
+     */
+    private DoubleEvaluator fork(double k)
+    {
+        CalculatorMemory   memory    = this.memory.snapshot();
+        FunctionCollection functions = this.functions.snapshot();
+        DoubleEvaluator    evaluator = new DoubleEvaluator(memory, functions);
+        memory.addConstant("k", k);
+        evaluator.setCompiler(new FunctionCompiler(memory, functions));
+        return evaluator;
+    }
+
+    private void execute(String program)
+    {
+        listener.enterProgram(ProgramParser.get().parse(program, output));
+        assertEquals(Collections.emptyList(), output.errors);
+    }
+}
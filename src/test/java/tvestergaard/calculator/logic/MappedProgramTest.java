@@ -0,0 +1,91 @@
+package tvestergaard.calculator.logic;
+
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedProgramTest
+{
+
+    private static final int[] WINDOW_SIZES = {1, 7, 64, MappedProgram.DEFAULT_WINDOW_SIZE};
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void readsLinesEndingWithLineFeeds() throws IOException
+    {
+        assertLines("a = 1\nb = a * 2\n\nfunc f(x) = x + b\n   \n\t\nf(3)\n");
+    }
+
+    @Test public void readsLinesEndingWithCarriageReturns() throws IOException
+    {
+        assertLines("a = 1\r\nb = a * 2\r\n\r\n \t\r\nf(3)\r\n");
+    }
+
+    @Test public void readsLastLineWithoutLineFeed() throws IOException
+    {
+        assertLines("a = 1\nb = 2\na + b");
+        assertLines("a = 1\r\na + 1\r");
+        assertLines("a");
+    }
+
+    @Test public void skipsByteOrderMark() throws IOException
+    {
+        assertLines("\uFEFFa = 1\na + 1\n");
+        assertLines("\uFEFF\na + 1\n");
+        assertLines("\uFEFF");
+    }
+
+    @Test public void readsLinesLongerThanTheWindow() throws IOException
+    {
+        StringBuilder line = new StringBuilder("x = 1");
+        for (int x = 0; x < 200; x++)
+            line.append(" + ").append(x);
+
+        assertLines(line + "\n");
+        assertLines("a = 1\n" + line + "\r\nb = 2\n" + line);
+    }
+
+    @Test public void readsEmptyFile() throws IOException
+    {
+        assertLines("");
+        assertLines("\n\r\n  \n");
+    }
+
+    /**
+     * Checks that the lines read from a file with the provided contents using every window size are the lines that
+     * are not blank, as read by {@link Files#readAllLines(Path)}.
+     */
+    private void assertLines(String contents) throws IOException
+    {
+        Path file = folder.newFile().toPath();
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+
+        List<String> all      = Files.readAllLines(file, StandardCharsets.UTF_8);
+        List<String> expected = new ArrayList<>();
+        if (!all.isEmpty() && all.get(0).startsWith("\uFEFF"))
+            all.set(0, all.get(0).substring(1));
+        for (String line : all)
+            if (!line.trim().isEmpty())
+                expected.add(line);
+
+        for (int windowSize : WINDOW_SIZES) {
+            List<String> lines = new ArrayList<>();
+            new MappedProgram(windowSize).forEachLine(file, stream -> {
+                assertEquals('\n', stream.getText(Interval.of(stream.size() - 1, stream.size() - 1)).charAt(0));
+                lines.add(stream.getText(Interval.of(0, stream.size() - 2)));
+            });
+
+            assertEquals("window size " + windowSize, expected, lines);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package tvestergaard.calculator.logic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the errors, results and printed values of a calculator, so that tests can make assertions about them.
+ */
+public class RecordingOutput implements CalculatorOutput
+{
+
+    /**
+     * The recorded errors.
+     */
+    public final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The recorded results.
+     */
+    public final List<Double> results = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The recorded values printed using '!print'.
+     */
+    public final List<Double> values = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The recorded explanations, formatted as 'expression => explanation'.
+     */
+    public final List<String> explanations = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Removes all recorded output.
+     */
+    public void clear()
+    {
+        errors.clear();
+        results.clear();
+        values.clear();
+        explanations.clear();
+    }
+
+    @Override public void error(String error)
+    {
+        errors.add(error);
+    }
+
+    @Override public void result(Double value)
+    {
+        results.add(value);
+    }
+
+    @Override public void printFunctions(Collection<Function> functions)
+    {
+
+    }
+
+    @Override public void printVariables(Map<String, Double> variables)
+    {
+
+    }
+
+    @Override public void printConstants(Map<String, Double> constants)
+    {
+
+    }
+
+    @Override public void printValues(Double value)
+    {
+        values.add(value);
+    }
+
+    @Override public void printExplanation(String expression, String explanation)
+    {
+        explanations.add(expression + " => " + explanation);
+    }
+
+    @Override public void printCache(String signature, FunctionCache cache)
+    {
+
+    }
+
+    @Override public void printProfile(String signature, FunctionProfile profile)
+    {
+
+    }
+}